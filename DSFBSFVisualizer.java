@@ -1,8 +1,8 @@
 import java.io.File;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.LinkedList;
-import java.util.Scanner;
-import java.util.Stack;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javafx.application.Application;
 import javafx.application.Platform;
@@ -14,8 +14,10 @@ import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.RadioButton;
+import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleGroup;
 import javafx.scene.input.MouseButton;
@@ -30,37 +32,68 @@ import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
+import maze.MazeFile;
+import maze.MazeGenerator;
+import maze.MazeGrid;
+import maze.MazeListener;
+import maze.MazeSolver;
+import route.GraphLoadEvent;
+import route.SearchEvent;
+import route.SearchMetrics;
+import route.SearchStats;
+import route.SearchTrace;
 
 public class DFSBSFVisualizer extends Application {
     private static final int WIDTH = 800, HEIGHT = 800, CONTROL_WIDTH = 200;
     private static final Color WALL = Color.BLACK, VISITED = Color.DARKSEAGREEN, EMPTY = Color.WHITE,
             START = Color.RED, END = Color.BLUEVIOLET, ONPATH = Color.YELLOW;
     private static final Font textFont = Font.font("Times New Roman", 20);
+    // Delay of a visited cell at 1x
+    private static final long DFS_STEP = 50, BFS_STEP = 20, ASTAR_STEP = 30, JPS_STEP = 150, BIDIRECTIONAL_STEP = 20;
+    private static final Logger log = Logger.getLogger(DFSBSFVisualizer.class.getName());
 
     private Canvas canvas;
     private GraphicsContext gc;
-    private Node[][] maze;
+    private MazeGrid maze;
+    private MazeSolver solver;
     private int size, col, row;
     private boolean pressed = false;
-    private LinkedList<Node> selectNodes = new LinkedList<>();
+    private LinkedList<Integer> selectCells = new LinkedList<>();
 
-    private Node start, end;
     private boolean selectingS = false, selectingE = false;
     private Button selectStart, selectEnd;
     
     private Thread simulation;
     private Button[] buttonGroup;
+    // Cell colors from the simulation thread, only the last one per cell in a frame is drawn
+    private final FrameEventBus bus = new FrameEventBus();
+    // Paces the search, or records it for a replay
+    private final SimulationClock clock = new SimulationClock();
+    // Per run counts, over JMX and to the CSV log if route.metricsLog is set
+    private final SearchStats searchStats = SearchStats.create("maze");
+    // Trace of the last search, scrubbed through with the slider
+    private SearchTrace trace;
+    private File traceFile;
+    private Slider traceSlider;
+    // Last seed, file or trace error, under the controls
+    private Label status;
 
+    @Override
+    public void stop() {
+        searchStats.closeLog();
+    }
+    
     @Override
     public void start(Stage stage) throws Exception {
         BorderPane root = new BorderPane();
+        bus.start();
 
         canvas = new Canvas(WIDTH, HEIGHT);
         gc = canvas.getGraphicsContext2D();
         root.setCenter(canvas);
 
         GridPane controlBox = new GridPane();
-        buttonGroup = new Button[6];
+        buttonGroup = new Button[7];
 
         // Change Column and Row control
         Text rowT = new Text("Row:");
@@ -114,6 +147,27 @@ public class DFSBSFVisualizer extends Application {
         resetMaze.setPrefWidth(CONTROL_WIDTH);
         GridPane.setConstraints(resetMaze, 0, 3, 2, 1, HPos.CENTER, VPos.CENTER);
 
+        // Generator control, a new seed every time
+        ChoiceBox<String> generators = new ChoiceBox<>();
+        for(int g = MazeGenerator.BACKTRACKER; g <= MazeGenerator.RANDOM; g++) {
+            generators.getItems().add(MazeGenerator.generatorName(g));
+        }
+        generators.getSelectionModel().select(MazeGenerator.BACKTRACKER);
+        generators.setPrefWidth(CONTROL_WIDTH);
+        Button generate = new Button("Generate Maze");
+        generate.setOnAction(e -> {
+            if(maze == null) return;
+            long seed = System.nanoTime();
+            new MazeGenerator(seed).generate(generators.getSelectionModel().getSelectedIndex(), maze);
+            showStatus(Level.INFO, "Generated " + generators.getValue() + " maze, seed " + seed);
+            redrawPanel(row, col, size);
+        });
+        buttonGroup[6] = generate;
+        controlBox.add(generators, 0, 4, 2, 1);
+        controlBox.add(generate, 0, 5, 2, 1);
+        generate.setPrefWidth(CONTROL_WIDTH);
+        GridPane.setConstraints(generate, 0, 5, 2, 1, HPos.CENTER, VPos.CENTER);
+
         registerListeners();
 
         // Select control
@@ -130,34 +184,48 @@ public class DFSBSFVisualizer extends Application {
             selectEnd.setDisable(true);
         });
 
-        controlBox.add(selectStart, 0, 4, 2, 1);
-        controlBox.add(selectEnd, 0, 5, 2, 1);
+        controlBox.add(selectStart, 0, 6, 2, 1);
+        controlBox.add(selectEnd, 0, 7, 2, 1);
         selectStart.setPrefWidth(CONTROL_WIDTH);
         selectEnd.setPrefWidth(CONTROL_WIDTH);
         buttonGroup[0] = selectStart;
         buttonGroup[1] = selectEnd;
-        GridPane.setConstraints(selectStart, 0, 4, 2, 1, HPos.CENTER, VPos.CENTER);
-        GridPane.setConstraints(selectEnd, 0, 5, 2, 1, HPos.CENTER, VPos.CENTER);
+        GridPane.setConstraints(selectStart, 0, 6, 2, 1, HPos.CENTER, VPos.CENTER);
+        GridPane.setConstraints(selectEnd, 0, 7, 2, 1, HPos.CENTER, VPos.CENTER);
 
         // Search type control
         Text alT = new Text("Select Algorithm:");
         alT.setFont(textFont);
         ToggleGroup algorithms = new ToggleGroup();
-        RadioButton DFS = new RadioButton("DFS"), BFS = new RadioButton("BFS");
+        RadioButton DFS = new RadioButton("DFS"), BFS = new RadioButton("BFS"), aStar = new RadioButton("A*"),
+                JPS = new RadioButton("Jump Point Search"), biBFS = new RadioButton("Bidirectional BFS");
         DFS.setToggleGroup(algorithms);DFS.setFont(textFont);
         BFS.setToggleGroup(algorithms);BFS.setFont(textFont);
+        aStar.setToggleGroup(algorithms);aStar.setFont(textFont);
+        JPS.setToggleGroup(algorithms);JPS.setFont(textFont);
+        biBFS.setToggleGroup(algorithms);biBFS.setFont(textFont);
         Button start = new Button("Start Pathfinding!"), reset = new Button("Reset");
         start.setOnAction(e -> {
+            closeTrace();
             clearVisitedAndPath();
             disableButtonsAndCanvas();
             if(simulation != null && simulation.isAlive()) simulation.interrupt();
             
             switch((String)algorithms.getSelectedToggle().getUserData()) {
                 case "DFS":
-                    DFSSimulation();
+                    simulate(MazeSolver.DFS, DFS_STEP);
                     break;
                 case "BFS":
-                    BFSSimulation();
+                    simulate(MazeSolver.BFS, BFS_STEP);
+                    break;
+                case "A*":
+                    simulate(MazeSolver.ASTAR, ASTAR_STEP);
+                    break;
+                case "JPS":
+                    simulate(MazeSolver.JPS, JPS_STEP);
+                    break;
+                case "BiBFS":
+                    simulate(MazeSolver.BIDIRECTIONAL_BFS, BIDIRECTIONAL_STEP);
                     break;
             }
         });
@@ -166,11 +234,14 @@ public class DFSBSFVisualizer extends Application {
         });
         buttonGroup[2] = start;
         buttonGroup[3] = reset;
-        controlBox.add(start, 0, 8);GridPane.setConstraints(start, 0, 8, 2, 1, HPos.CENTER, VPos.CENTER);start.setPrefWidth(CONTROL_WIDTH);
-        controlBox.add(reset, 0, 9);GridPane.setConstraints(reset, 0, 9, 2, 1, HPos.CENTER, VPos.CENTER);reset.setPrefWidth(CONTROL_WIDTH);
-        controlBox.add(DFS, 0, 6);GridPane.setConstraints(DFS, 0, 6, 2, 1, HPos.LEFT, VPos.CENTER);DFS.setPadding(new Insets(0,0,0,20));
-        controlBox.add(BFS, 0, 7);GridPane.setConstraints(BFS, 0, 7, 2, 1, HPos.LEFT, VPos.CENTER);BFS.setPadding(new Insets(0,0,0,20));
-        DFS.setUserData("DFS");BFS.setUserData("BFS");
+        controlBox.add(start, 0, 13);GridPane.setConstraints(start, 0, 13, 2, 1, HPos.CENTER, VPos.CENTER);start.setPrefWidth(CONTROL_WIDTH);
+        controlBox.add(reset, 0, 14);GridPane.setConstraints(reset, 0, 14, 2, 1, HPos.CENTER, VPos.CENTER);reset.setPrefWidth(CONTROL_WIDTH);
+        controlBox.add(DFS, 0, 8);GridPane.setConstraints(DFS, 0, 8, 2, 1, HPos.LEFT, VPos.CENTER);DFS.setPadding(new Insets(0,0,0,20));
+        controlBox.add(BFS, 0, 9);GridPane.setConstraints(BFS, 0, 9, 2, 1, HPos.LEFT, VPos.CENTER);BFS.setPadding(new Insets(0,0,0,20));
+        controlBox.add(aStar, 0, 10);GridPane.setConstraints(aStar, 0, 10, 2, 1, HPos.LEFT, VPos.CENTER);aStar.setPadding(new Insets(0,0,0,20));
+        controlBox.add(JPS, 0, 11);GridPane.setConstraints(JPS, 0, 11, 2, 1, HPos.LEFT, VPos.CENTER);JPS.setPadding(new Insets(0,0,0,20));
+        controlBox.add(biBFS, 0, 12);GridPane.setConstraints(biBFS, 0, 12, 2, 1, HPos.LEFT, VPos.CENTER);biBFS.setPadding(new Insets(0,0,0,20));
+        DFS.setUserData("DFS");BFS.setUserData("BFS");aStar.setUserData("A*");JPS.setUserData("JPS");biBFS.setUserData("BiBFS");
         DFS.setSelected(true);
         
         //Save-Load file settings
@@ -183,8 +254,21 @@ public class DFSBSFVisualizer extends Application {
         loadFile.setOnAction(e -> {
             loadFile();
         });
-        controlBox.add(saveFile, 0, 10);GridPane.setConstraints(saveFile, 0, 10, 2, 1, HPos.CENTER, VPos.CENTER);saveFile.setPrefWidth(CONTROL_WIDTH);
-        controlBox.add(loadFile, 0, 11);GridPane.setConstraints(loadFile, 0, 11, 2, 1, HPos.CENTER, VPos.CENTER);loadFile.setPrefWidth(CONTROL_WIDTH);
+        controlBox.add(saveFile, 0, 15);GridPane.setConstraints(saveFile, 0, 15, 2, 1, HPos.CENTER, VPos.CENTER);saveFile.setPrefWidth(CONTROL_WIDTH);
+        controlBox.add(loadFile, 0, 16);GridPane.setConstraints(loadFile, 0, 16, 2, 1, HPos.CENTER, VPos.CENTER);loadFile.setPrefWidth(CONTROL_WIDTH);
+        controlBox.add(clock.createControls(CONTROL_WIDTH), 0, 17, 2, 1);
+        Label traceL = new Label("Scrub last search:");
+        traceSlider = new Slider();
+        traceSlider.setDisable(true);
+        traceSlider.valueProperty().addListener((o, old, value) -> {
+            if(trace != null) drawTrace(value.longValue());
+        });
+        controlBox.add(traceL, 0, 18, 2, 1);
+        controlBox.add(traceSlider, 0, 19, 2, 1);
+        status = new Label();
+        status.setWrapText(true);
+        status.setPrefWidth(CONTROL_WIDTH);
+        controlBox.add(status, 0, 20, 2, 1);
         
         // Maze Panel settings
         controlBox.setHgap(5);
@@ -203,15 +287,8 @@ public class DFSBSFVisualizer extends Application {
         if (col <= 0 || row <= 0)
             return;
         
-        start = null;
-        end = null;
-
-        maze = new Node[row][col];
-        for (int i = 0; i < row; i++) {
-            for (int j = 0; j < col; j++) {
-                maze[i][j] = new Node(i, j);
-            }
-        }
+        maze = new MazeGrid(row, col);
+        solver = new MazeSolver(maze);
 
         this.row = row;
         this.col = col;
@@ -219,6 +296,7 @@ public class DFSBSFVisualizer extends Application {
     }
 
     private void redrawPanel(int row, int col, int size) {
+        closeTrace();
         selectingS = false;
         selectingE = false;
         reableButtonsAndCanvas();
@@ -231,10 +309,8 @@ public class DFSBSFVisualizer extends Application {
         size = size <= 0 ? Math.min(width, height) : size;
         this.size = size;
         gc.setFill(Color.WHITE);
-        for (int i = 0; i < row; i++) {
-            for (int j = 0; j < col; j++) {
-                redrawNode(maze[i][j]);
-            }
+        for (int cell = 0; cell < row * col; cell++) {
+            redrawCell(cell);
         }
 
         gc.setStroke(Color.BLACK);
@@ -246,100 +322,92 @@ public class DFSBSFVisualizer extends Application {
         }
     }
 
-    private void redrawNode(Node node) {
-        Platform.runLater(() -> {
-            if (node.isWall())
+    private void redrawCell(int cell) {
+        Runnable draw = () -> {
+            if (maze.isWall(cell))
                 gc.setFill(WALL);
             else {
-                if (node.isStart())
+                if (maze.isStart(cell))
                     gc.setFill(START);
-                else if (node.isEnd())
+                else if (maze.isEnd(cell))
                     gc.setFill(END);
-                else if(node.isOnPath())
+                else if(maze.isOnPath(cell))
                     gc.setFill(ONPATH);
-                else if (node.isVisited())
+                else if (maze.isVisited(cell))
                     gc.setFill(VISITED);
                 else
                     gc.setFill(EMPTY);
             }
 
-            gc.fillRect(node.getCol() * size + 1, node.getRow() * size + 1, size - 2, size - 2);
-        });
+            gc.fillRect(maze.col(cell) * size + 1, maze.row(cell) * size + 1, size - 2, size - 2);
+        };
+        // The color is read when drawn, so a cell redrawn several times in a frame is drawn once
+        if (Platform.isFxApplicationThread())
+            draw.run();
+        else
+            bus.publish(cell, draw);
     }
     
     private void showPath() {
-        Node curr = end.getPrev();
+        int curr = maze.getPrev(maze.getEnd());
         
-        while(curr != null && curr != start) {
-            curr.setOnPath(true);
-            //System.out.print(curr + "->");
-            redrawNode(curr);
-            curr = curr.getPrev();
+        while(curr != -1 && !maze.isStart(curr)) {
+            maze.setOnPath(curr, true);
+            redrawCell(curr);
+            curr = maze.getPrev(curr);
         }
     }
     
     private void clearVisitedAndPath() {
-        for(Node[] ns: maze) {
-            for(Node n: ns) {
-                if(!n.isWall()) {
-                    n.setVisited(false);
-                    n.setOnPath(false);
-                    n.setPrev(null);
-                    redrawNode(n);
-                }
-            }
+        maze.clearSearch();
+        for(int cell = 0; cell < row * col; cell++) {
+            if(!maze.isWall(cell)) redrawCell(cell);
         }
     }
 
     private void registerListeners() {
         canvas.setOnMouseClicked(e -> {
             if (!pressed) {
-                Node currNode = maze[(int) e.getY() / size][(int) e.getX() / size];
+                int currCell = maze.index((int) e.getY() / size, (int) e.getX() / size);
                 if (selectingS) {
-                    if (currNode == end) {
+                    if (maze.isEnd(currCell)) {
                         // Empty
                     } else {
-                        if (start != null) {System.out.println("Not null");
-                            start.setStart(false);
-                            redrawNode(start);
-                        }
-                        start = currNode;
-                        start.setStart(true);
-                        start.setWall(false);
+                        int old = maze.getStart();
+                        maze.setStart(currCell);
+                        maze.setWall(currCell, false);
+                        if (old != -1) redrawCell(old);
                     }
 
                     selectStart.setDisable(false);
                     selectEnd.setDisable(false);
                     selectingS = false;
                 } else if (selectingE) {
-                    if (currNode == start) {
+                    if (maze.isStart(currCell)) {
                         // Empty
                     } else {
-                        if (end != null) {
-                            end.setEnd(false);
-                            redrawNode(end);
-                        }
-                        end = currNode;
-                        end.setEnd(true);
-                        end.setWall(false);
+                        int old = maze.getEnd();
+                        maze.setEnd(currCell);
+                        maze.setWall(currCell, false);
+                        if (old != -1) redrawCell(old);
                     }
                     selectStart.setDisable(false);
                     selectEnd.setDisable(false);
                     selectingE = false;
                 } else {
-                    if(currNode.isStart() || currNode.isEnd()) {
-                        currNode.setWall(false);
+                    if(maze.isStart(currCell) || maze.isEnd(currCell)) {
+                        maze.setWall(currCell, false);
                         return;
                     }
-                    currNode.toggleWall();
+                    maze.toggleWall(currCell);
                 }
 
-                redrawNode(currNode);
+                redrawCell(currCell);
             }
         });
 
         canvas.setOnMousePressed(e -> {
-            selectNodes.clear();
+            selectCells.clear();
             pressed = false;
         });
 
@@ -349,120 +417,202 @@ public class DFSBSFVisualizer extends Application {
             double x = e.getX() / size, y = e.getY() / size;
 
             if (e.getButton() == MouseButton.PRIMARY) {
-                Node currNode = maze[(int) y][(int) x];
-                if (!selectNodes.contains(currNode) && currNode != start && currNode != end) {
-                    currNode.setWall(true);
-                    // System.out.println("Move over " + x + " " + y);
-                    selectNodes.add(currNode);
-                    redrawNode(currNode);
+                int currCell = maze.index((int) y, (int) x);
+                if (!selectCells.contains(currCell) && !maze.isStart(currCell) && !maze.isEnd(currCell)) {
+                    maze.setWall(currCell, true);
+                    selectCells.add(currCell);
+                    redrawCell(currCell);
                 }
             } else if (e.getButton() == MouseButton.SECONDARY) {
-                Node currNode = maze[(int) y][(int) x];
-                if (!selectNodes.contains(currNode) && currNode != start && currNode != end) {
-                    currNode.setWall(false);
-                    // System.out.println("Move over " + x + " " + y);
-                    selectNodes.add(currNode);
-                    redrawNode(currNode);
+                int currCell = maze.index((int) y, (int) x);
+                if (!selectCells.contains(currCell) && !maze.isStart(currCell) && !maze.isEnd(currCell)) {
+                    maze.setWall(currCell, false);
+                    selectCells.add(currCell);
+                    redrawCell(currCell);
                 }
             }
         });
     }
 
-    private void DFSSimulation() {
+    /**
+     * Run the algorithm on the simulation thread, drawing every cell it
+     * visits.
+     *
+     * @param stepMillis delay of a visited cell at 1x
+     */
+    private void simulate(int algorithm, long stepMillis) {
         simulation = new Thread() {
             public void run() {
-                if(start == null || end == null) {
+                if(maze.getStart() == -1 || maze.getEnd() == -1) {
                     randomStartEnd();
                 }
-                Stack<Node> stack = new Stack<>();
-                stack.push(start);
-                LinkedList<Node> neighbours;
-                Node curr = null;
+                MazeTrace trace = new MazeTrace(MazeSolver.algorithmName(algorithm));
+                clock.begin();
                 
-                while(!stack.isEmpty()) {
-                    curr = stack.pop();
-                    
-                    if(curr == end) {
-                        System.out.println("Path found!");
-                        showPath();
-                        reableButtonsAndCanvas();
-                        return;
+                boolean found = solver.solve(algorithm, maze.getStart(), maze.getEnd(), new MazeListener() {
+                    @Override
+                    public void onSettle(int cell) {
+                        trace.settle(cell);
+                        // Visited cells stay visited until the path is shown after the run
+                        clock.step(() -> redrawCell(cell), stepMillis);
                     }
                     
-                    curr.setVisited(true);
-                    redrawNode(curr);
-                    
-                    neighbours = getNeighbours(curr);
-                    for(Node n: neighbours) {
-                        n.setPrev(curr);
-                        stack.push(n);
+                    @Override
+                    public void onPush(int from, int cell, int frontier) {
+                        trace.enqueue(from, cell);
                     }
-                    
-                    //System.out.println(stack);
-                    try {
-                        Thread.sleep(50);
-                    } catch(Exception ex) {return;}
-                }
+                });
                 
-                System.out.println("Unreachable");
+                clock.finish();
+                if(isInterrupted()) {trace.discard(); return;}
+                if(found) {
+                    System.out.println("Path found!");
+                    showPath();
+                } else {
+                    System.out.println("Unreachable");
+                }
+                trace.finish(found);
                 reableButtonsAndCanvas();
             }
         };
         simulation.start();
     }
     
-    private void BFSSimulation() {
-        simulation = new Thread() {
-            public void run() {
-                if(start == null || end == null) {
-                    randomStartEnd();
-                }
-                LinkedList<Node> queue = new LinkedList<>();
-                queue.add(start);
-                LinkedList<Node> neighbours;
-                Node curr = null;
-                
-                while(!queue.isEmpty()) {
-                    curr = queue.removeFirst();
-                    
-                    if(curr == end) {
-                        System.out.println("Path found!");
-                        showPath();
-                        reableButtonsAndCanvas();
-                        return;
-                    }
-                    
-                    curr.setVisited(true);
-                    redrawNode(curr);
-                    
-                    neighbours = getNeighbours(curr);
-                    for(Node n: neighbours) {
-                        n.setPrev(curr);
-                        queue.add(n);
-                    }
-                    
-                    //System.out.println(stack);
-                    try {
-                        Thread.sleep(20);
-                    } catch(Exception ex) {return;}
-                }
-                
-                System.out.println("Unreachable");
-                reableButtonsAndCanvas();
-            }
-        };
-        simulation.start();
+    /**
+     * Drop the trace of the last search, on the FX thread.
+     */
+    private void closeTrace() {
+        if(trace == null) return;
+        traceSlider.setDisable(true);
+        try {
+            trace.close();
+        } catch(IOException ex) {}
+        traceFile.delete();
+        trace = null;
+        traceFile = null;
+    }
+    
+    /**
+     * Show a message under the controls and log it, from any thread.
+     */
+    private void showStatus(Level level, String message) {
+        log.log(level, message);
+        bus.publish(() -> status.setText(message));
+    }
+    
+    /**
+     * Color the cells as they were after the given number of search events.
+     */
+    private void drawTrace(long step) {
+        try {
+            trace.seek(step);
+        } catch(IOException ex) {
+            showStatus(Level.WARNING, "Trace unreadable: " + ex.getMessage());
+            return;
+        }
+        for(int i = 0; i < row * col; i++) {
+            byte status = trace.status(i);
+            maze.setVisited(i, (status & SearchTrace.SETTLED) != 0);
+            maze.setOnPath(i, (status & SearchTrace.ON_PATH) != 0 && !maze.isStart(i) && !maze.isEnd(i));
+            redrawCell(i);
+        }
     }
     
-    private LinkedList<Node> getNeighbours(Node n) {
-        LinkedList<Node> result = new LinkedList<>();
-        int x = n.getCol(), y = n.getRow();
-        if(y-1 >= 0 && !maze[y-1][x].isWall() &&  !maze[y-1][x].isVisited() && maze[y-1][x].getPrev() == null) result.add(maze[y-1][x]);
-        if(x+1 < col && !maze[y][x+1].isWall() &&  !maze[y][x+1].isVisited() && maze[y][x+1].getPrev() == null) result.add(maze[y][x+1]);
-        if(y+1 < row && !maze[y+1][x].isWall() &&  !maze[y+1][x].isVisited() && maze[y+1][x].getPrev() == null) result.add(maze[y+1][x]);
-        if(x-1 >= 0 && !maze[y][x-1].isWall() &&  !maze[y][x-1].isVisited() && maze[y][x-1].getPrev() == null) result.add(maze[y][x-1]);
+    /**
+     * Records the running search cell by cell, so it can be scrubbed through
+     * afterwards, and reports the solver's counts of its work to searchStats
+     * and the flight recorder. Recording stops at the first write error. The
+     * time counted includes the pauses of the clock.
+     */
+    private class MazeTrace {
+        private final String algorithm;
+        private final long begin = System.nanoTime(), allocated = SearchMetrics.allocatedBytes();
+        private final SearchEvent event = new SearchEvent();
+        private File file;
+        private SearchTrace.Recorder recorder;
+        
+        MazeTrace(String algorithm) {
+            this.algorithm = algorithm;
+            event.begin();
+            try {
+                file = File.createTempFile("maze", SearchTrace.EXTENSION);
+                file.deleteOnExit();
+                recorder = new SearchTrace.Recorder(file, row * col);
+            } catch(IOException ex) {
+                fail(ex);
+            }
+        }
+        
+        void settle(int cell) {
+            if(recorder == null) return;
+            try {
+                recorder.settle(cell, maze.getPrev(cell));
+            } catch(IOException ex) {
+                fail(ex);
+            }
+        }
+        
+        void enqueue(int from, int cell) {
+            if(recorder == null) return;
+            try {
+                recorder.enqueue(from, cell);
+            } catch(IOException ex) {
+                fail(ex);
+            }
+        }
+        
+        /**
+         * Record the run's metrics, close the recording, with the path to the
+         * end if found, and let the slider scrub through it.
+         */
+        void finish(boolean found) {
+            SearchMetrics metrics = new SearchMetrics(algorithm, maze.getStart(), maze.getEnd(), found, solver.settled(),
+                    solver.relaxed(), solver.pushes(), solver.pops(), 0, solver.skippedPops(), solver.peakFrontier(),
+                    System.nanoTime() - begin,
+                    allocated < 0 ? -1 : SearchMetrics.allocatedBytes() - allocated);
+            searchStats.record(metrics);
+            if(event.shouldCommit()) {
+                event.set(metrics, maze.openCount(), maze.edgeCount());
+                event.commit();
+            }
+            
+            if(recorder == null) return;
+            try {
+                if(found) {
+                    recorder.pathFound(maze.pathTo(maze.getEnd()));
+                }
+                recorder.close();
+                recorder = null;
+                SearchTrace opened = SearchTrace.open(file);
+                File openedFile = file;
+                bus.publish(() -> {
+                    closeTrace();
+                    traceSlider.setMax(opened.eventCount());
+                    traceSlider.setValue(opened.eventCount());
+                    traceSlider.setDisable(false);
+                    // Set after the slider, the search is already drawn as it ended
+                    trace = opened;
+                    traceFile = openedFile;
+                });
+            } catch(IOException ex) {
+                fail(ex);
+            }
+        }
+        
+        void discard() {
+            if(recorder != null) {
+                try {
+                    recorder.close();
+                } catch(IOException ex) {}
+                recorder = null;
+            }
+            if(file != null) file.delete();
+        }
         
-        return result;
+        private void fail(IOException ex) {
+            showStatus(Level.WARNING, "Search not recorded: " + ex.getMessage());
+            discard();
+        }
     }
     
     private void disableButtonsAndCanvas() {
@@ -476,6 +626,11 @@ public class DFSBSFVisualizer extends Application {
     }
     
     private void reableButtonsAndCanvas() {
+        if (!Platform.isFxApplicationThread()) {
+            // After the cells the simulation already published
+            bus.publish(this::reableButtonsAndCanvas);
+            return;
+        }
         for(Button b: buttonGroup) {
             b.setDisable(false);
         }
@@ -483,15 +638,20 @@ public class DFSBSFVisualizer extends Application {
     }
     
     private void randomStartEnd() {
+        int start, end;
         do {
-            start = maze[(int)(Math.random()*row)][(int)(Math.random()*col)];
-            end = maze[(int)(Math.random()*row)][(int)(Math.random()*col)];
-        } while(start.isWall() || end.isWall() || start == end);
+            start = (int)(Math.random()*row*col);
+            end = (int)(Math.random()*row*col);
+        } while(maze.isWall(start) || maze.isWall(end) || start == end);
         
-        start.setStart(true);
-        end.setEnd(true);
-        redrawNode(start);
-        redrawNode(end);
+        // Redraw the old ones as plain cells
+        int oldStart = maze.getStart(), oldEnd = maze.getEnd();
+        maze.setStart(start);
+        maze.setEnd(end);
+        if(oldStart != -1) redrawCell(oldStart);
+        if(oldEnd != -1) redrawCell(oldEnd);
+        redrawCell(start);
+        redrawCell(end);
     }
     
     private void saveFile() {
@@ -509,25 +669,15 @@ public class DFSBSFVisualizer extends Application {
             String fileName = input.getText().trim();
             if(fileName.equals("") || !Character.isAlphabetic(fileName.charAt(0))) return;
             
-            File file = new File(input.getText().trim() + ".mz");
-            if(!file.exists()) {
-                try {file.createNewFile();}catch(Exception ex) {}
-            }
-            
-            PrintWriter pw = null;
+            // Binary if asked for by extension, text otherwise
+            boolean named = fileName.endsWith(MazeFile.BINARY_EXTENSION) || fileName.endsWith(MazeFile.TEXT_EXTENSION);
+            File file = new File(named ? fileName : fileName + MazeFile.TEXT_EXTENSION);
             try {
-                pw = new PrintWriter(file);
-                pw.println(maze.length + " " + maze[0].length + " " + size);
-                for(int i = 0; i < maze.length; i++) {
-                    for(int j = 0; j < maze[i].length; j++) {
-                        pw.print(getCode(maze[i][j]));
-                    }
-                    pw.println();
-                }
-                
-                pw.flush();
-            } catch(Exception ex) {}
-            finally {if(pw != null) pw.close();}
+                MazeFile.write(maze, file, size);
+            } catch(IOException ex) {
+                showStatus(Level.WARNING, "Maze not saved: " + ex.getMessage());
+                return;
+            }
             
             stage.close();
         });
@@ -550,7 +700,7 @@ public class DFSBSFVisualizer extends Application {
         FileChooser fileChooser = new FileChooser();
         fileChooser.setTitle("Open Maze File");
         fileChooser.getExtensionFilters().addAll(
-                new ExtensionFilter("Maze Files", "*.mz"));
+                new ExtensionFilter("Maze Files", "*" + MazeFile.TEXT_EXTENSION, "*" + MazeFile.BINARY_EXTENSION));
         fileChooser.setInitialDirectory(new File(Visualizer.class.getProtectionDomain().getCodeSource().getLocation().getPath()));
         File selectedFile = fileChooser.showOpenDialog(stage);
         if (selectedFile != null) {
@@ -560,64 +710,29 @@ public class DFSBSFVisualizer extends Application {
     }
     
     private void readFile(File file) {
-        Scanner sc = null;
-        int row = 0, col = 0, size = 0;
+        GraphLoadEvent event = new GraphLoadEvent();
+        event.begin();
+        MazeGrid loaded;
+        int size;
         try {
-            sc = new Scanner(file);
-            
-            row = Integer.parseInt(sc.next());
-            col = Integer.parseInt(sc.next());
-            size = Integer.parseInt(sc.next());
-            
-            maze = new Node[row][col];
-            
-            String temp;
-            String[] cells;
-            int j = 0;
-            while((temp = sc.next()) != null) {
-                cells = temp.split("");
-                for(int i = 0; i < maze[0].length; i++) {
-                    maze[j][i] = getNode(cells[i], j, i);
-                }
-                
-                j++;
-            }
-        } catch(Exception e) {}
-        finally {
-            if(sc != null) sc.close();
+            loaded = MazeFile.read(file);
+            size = MazeFile.cellSize(file);
+        } catch(IOException e) {
+            // Keep the maze shown
+            showStatus(Level.WARNING, "Maze file unreadable: " + e.getMessage());
+            return;
         }
 
-        this.row = row;
-        this.col = col;
+        maze = loaded;
+        solver = new MazeSolver(maze);
+        this.row = maze.rows();
+        this.col = maze.cols();
         this.size = size;
-        redrawPanel(row, col, size);
-    }
-    
-    private int getCode(Node n) {
-        if(n.isStart()) return 2;
-        else if(n.isEnd()) return 3;
-        else if(n.isWall()) return 1;
-        else if(!n.isWall()) return 0;
-        else return -1;
-    }
-    
-    private Node getNode(String i, int row, int col) {
-        Node result = new Node(row, col);
-        switch(i) {
-            case "1":
-                result.setWall(true);
-                break;
-            case "2":
-                result.setStart(true);
-                start = result;
-                break;
-            case "3":
-                result.setEnd(true);
-                end = result;
-                break;
+        if(event.shouldCommit()) {
+            event.set(file, "maze", maze.openCount(), maze.edgeCount());
+            event.commit();
         }
-        
-        return result;
+        redrawPanel(row, col, size);
     }
     
     public static void main(String[] args) {
@@ -0,0 +1,130 @@
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Hands UI updates from one simulation thread to the FX thread without
+ * Platform.runLater per update. Updates go into a lock-free single producer,
+ * single consumer ring buffer and an AnimationTimer applies them once per
+ * pulse, in order.
+ *
+ * An update published with a key replaces any earlier update with the same
+ * key that is still waiting, e.g. only the last position of a ball or the
+ * last color of a cell is drawn. Updates without a key are all applied.
+ *
+ * When the ring is full the producer waits for the next pulse, so at most a
+ * ring's worth of updates is ever behind the screen.
+ *
+ * @author Hackerry
+ *
+ */
+public class FrameEventBus {
+	public static final int NO_KEY = -1, DEFAULT_CAPACITY = 1 << 14;
+	private static final long FULL_WAIT_NANOS = 100000;
+
+	private final int mask;
+	private final int[] keys;
+	private final Runnable[] updates;
+	// Next slot to write and next slot to read, only ever increase
+	private final AtomicLong tail = new AtomicLong(), head = new AtomicLong();
+	// Latest slot of each key in the batch being applied
+	private final HashMap<Integer, Long> latest = new HashMap<>();
+	private final AnimationTimer timer;
+
+	public FrameEventBus() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity updates the ring holds, rounded up to a power of 2
+	 */
+	public FrameEventBus(int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		mask = size - 1;
+		keys = new int[size];
+		updates = new Runnable[size];
+		timer = new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				drain();
+			}
+		};
+	}
+
+	/**
+	 * Start applying updates, call on the FX thread.
+	 */
+	public void start() {
+		timer.start();
+	}
+
+	public void stop() {
+		timer.stop();
+	}
+
+	/**
+	 * Queue an update that is always applied.
+	 */
+	public void publish(Runnable update) {
+		publish(NO_KEY, update);
+	}
+
+	/**
+	 * Queue an update, only from the one producer thread. Waits while the ring
+	 * is full, an interrupted producer gives up and drops the update.
+	 *
+	 * @param key non negative to replace waiting updates of the same key, or
+	 *            NO_KEY
+	 */
+	public void publish(int key, Runnable update) {
+		long t = tail.get();
+		while (t - head.get() > mask) {
+			if (Thread.currentThread().isInterrupted())
+				return;
+			LockSupport.parkNanos(FULL_WAIT_NANOS);
+		}
+		int slot = (int) t & mask;
+		keys[slot] = key;
+		updates[slot] = update;
+		// Publish the slot after it is filled
+		tail.lazySet(t + 1);
+	}
+
+	/**
+	 * Apply every update published so far, skipping those replaced by a later
+	 * one with the same key.
+	 */
+	private void drain() {
+		long h = head.get(), t = tail.get();
+		if (h == t)
+			return;
+
+		RenderBatchEvent event = new RenderBatchEvent("FrameEventBus");
+		event.begin();
+		int skipped = 0;
+		for (long i = h; i < t; i++) {
+			int key = keys[(int) i & mask];
+			if (key != NO_KEY)
+				latest.put(key, i);
+		}
+		for (long i = h; i < t; i++) {
+			int slot = (int) i & mask;
+			Runnable update = updates[slot];
+			updates[slot] = null;
+			if (keys[slot] == NO_KEY || latest.get(keys[slot]) == i)
+				update.run();
+			else
+				skipped++;
+		}
+		latest.clear();
+		// Free the slots only after they are read
+		head.lazySet(t);
+		if (event.shouldCommit()) {
+			event.updates = (int) (t - h);
+			event.skipped = skipped;
+			event.commit();
+		}
+	}
+}
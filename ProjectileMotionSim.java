@@ -1,5 +1,4 @@
 import javafx.application.Application;
-import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Group;
@@ -46,11 +45,15 @@ public class ProjectileMotionSim extends Application {
     private boolean drawPath = true;
     private CheckBox showGrid, showPath;
     private Arrow arrow;
+    // Only the last ball position and path stroke of a frame are drawn
+    private final FrameEventBus bus = new FrameEventBus();
+    private static final int BALL_KEY = 0, STROKE_KEY = 1;
 
     @Override
     public void start(Stage stage) {
         BorderPane root = new BorderPane();
         Pane pane = new Pane();
+        bus.start();
         HBox control = new HBox(10);
         VBox data = new VBox(10);
         
@@ -185,18 +188,25 @@ public class ProjectileMotionSim extends Application {
             double time = 0;
             double initX = velocity*Math.cos(angle*Math.PI/180), initY = velocity*Math.sin(angle*Math.PI/180);
             double Ymax = canvasH, tmid = 0;
+            // Position kept here, the ball only shows it once drawn
+            double x = originX, y = originY;
             if(drawPath) {
-                gc.moveTo(originX, originY);
-                gc.beginPath();
+                bus.publish(() -> {
+                    gc.moveTo(originX, originY);
+                    gc.beginPath();
+                });
             }
             do {
                 time += timeFrame;
-                final double newX = ball.getCenterX()+initX*timeFrame*scale, 
-                        newY = ball.getCenterY()-initY*timeFrame*scale+0.5*g*Math.pow(timeFrame, 2)*scale;
+                final double newX = x+initX*timeFrame*scale, 
+                        newY = y-initY*timeFrame*scale+0.5*g*Math.pow(timeFrame, 2)*scale;
+                x = newX;
+                y = newY;
                 final double Vy = initY -= g*timeFrame, t = time;
                 if(newY < Ymax) {Ymax = newY;tmid = time;}
                 final double Ytmp = (originY-Ymax)/scale, Ttemp = tmid;
-                Platform.runLater(()-> {
+                if(drawPath) bus.publish(() -> gc.lineTo(newX, newY));
+                bus.publish(BALL_KEY, ()-> {
                     ball.setCenterX(newX);
                     ball.setCenterY(newY);
                     data[0].setText(String.format(dataFormat, "X", (newX-originX)/scale));
@@ -206,17 +216,14 @@ public class ProjectileMotionSim extends Application {
                     data[5].setText(String.format(dataFormat, "t", t));
                     data[6].setText(String.format(dataFormat, "Ymax", Ytmp));
                     data[7].setText(String.format(dataFormat, "tmid", Ttemp));
-                    if(drawPath) {
-                        gc.lineTo(newX, newY);
-                        gc.stroke();
-                    }
                 });
+                if(drawPath) bus.publish(STROKE_KEY, gc::stroke);
                 try {
                     Thread.sleep(sleep);
                 } catch(Exception ex) {return;}
-            } while(ball.getCenterY() < originY);
+            } while(y < originY);
             System.out.println("Hit ground");
-            ball.setCenterY(originY);
+            bus.publish(() -> ball.setCenterY(originY));
         }
     };
     
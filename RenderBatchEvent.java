@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of one pulse's worth of queued UI updates applied on
+ * the FX thread, committed only for pulses that had any.
+ *
+ * @author Hackerry
+ *
+ */
+@Name("simulators.RenderBatch")
+@Label("Render Batch")
+@Category({ "Simulators", "Rendering" })
+@Description("Queued UI updates applied in one pulse")
+public class RenderBatchEvent extends Event {
+	@Label("Renderer")
+	@Description("FrameEventBus or RouteCanvas")
+	String renderer;
+
+	@Label("Updates")
+	@Description("Updates taken off the queue")
+	int updates;
+
+	@Label("Skipped")
+	@Description("Updates replaced by a later one with the same key")
+	int skipped;
+
+	@Label("Repainted")
+	@Description("Canvas layers repainted")
+	int repainted;
+
+	RenderBatchEvent(String renderer) {
+		this.renderer = renderer;
+	}
+}
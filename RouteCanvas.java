@@ -0,0 +1,301 @@
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntConsumer;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+/**
+ * Draws the edges, probe lines and path lines of the route simulator onto
+ * three stacked canvases instead of one Line node per segment.
+ *
+ * Segments may be added and layers cleared from any thread. They are queued
+ * and drained once per AnimationTimer pulse, and each canvas only repaints
+ * the rectangle around what changed since the last pulse. An animated
+ * segment grows from its start to its end over the animation duration.
+ *
+ * @author Hackerry
+ *
+ */
+public class RouteCanvas extends Pane {
+	public static final int EDGES = 0, PROBES = 1, PATH = 2;
+	// Pixels around a segment that its stroke may touch, and how close a click
+	// must be to pick an edge
+	private static final double MARGIN = 2, PICK_DISTANCE = 4;
+
+	private final Layer[] layers;
+	private final ConcurrentLinkedQueue<Object> pending = new ConcurrentLinkedQueue<>();
+	private final long animationNanos;
+	private double[] dashes;
+	private IntConsumer onEdgeClicked;
+
+	/**
+	 * @param animationMillis time an animated segment takes to grow
+	 */
+	public RouteCanvas(double width, double height, long animationMillis) {
+		setPrefSize(width, height);
+		animationNanos = animationMillis * 1000000;
+		layers = new Layer[3];
+		for (int i = 0; i < layers.length; i++) {
+			layers[i] = new Layer(width, height);
+			getChildren().add(layers[i].canvas);
+		}
+
+		setOnMouseClicked(e -> {
+			if (onEdgeClicked == null)
+				return;
+			int edge = layers[EDGES].pick(e.getX(), e.getY());
+			if (edge >= 0)
+				onEdgeClicked.accept(edge);
+		});
+
+		new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				RenderBatchEvent event = new RenderBatchEvent("RouteCanvas");
+				event.begin();
+				int updates = drain(now), repainted = 0;
+				for (Layer layer : layers) {
+					if (layer.repaint(now))
+						repainted++;
+				}
+				if ((updates > 0 || repainted > 0) && event.shouldCommit()) {
+					event.updates = updates;
+					event.repainted = repainted;
+					event.commit();
+				}
+			}
+		}.start();
+	}
+
+	/**
+	 * Dash pattern of edge lines, none if null.
+	 */
+	public void setEdgeDashes(double... dashes) {
+		this.dashes = dashes;
+	}
+
+	/**
+	 * Called on the FX thread with the index of an edge clicked.
+	 */
+	public void setOnEdgeClicked(IntConsumer onEdgeClicked) {
+		this.onEdgeClicked = onEdgeClicked;
+	}
+
+	/**
+	 * Queue an edge, edges are indexed in the order added.
+	 */
+	public void addEdge(double x1, double y1, double x2, double y2, Color color, double width) {
+		pending.add(new Segment(EDGES, x1, y1, x2, y2, color, width, false));
+	}
+
+	/**
+	 * Queue a segment on the probe or path layer.
+	 *
+	 * @param animated whether it grows in instead of appearing at once
+	 */
+	public void add(int layer, double x1, double y1, double x2, double y2, Color color, double width,
+			boolean animated) {
+		pending.add(new Segment(layer, x1, y1, x2, y2, color, width, animated));
+	}
+
+	/**
+	 * Queue removing every segment of a layer, segments queued after it stay.
+	 */
+	public void clear(int layer) {
+		pending.add(layer);
+	}
+
+	/**
+	 * Queue recoloring an edge.
+	 */
+	public void setEdgeColor(int edge, Color color) {
+		pending.add(new Recolor(edge, color));
+	}
+
+	/**
+	 * Apply everything queued since the last pulse, in order.
+	 *
+	 * @return items applied
+	 */
+	private int drain(long now) {
+		int count = 0;
+		Object item;
+		while ((item = pending.poll()) != null) {
+			count++;
+			if (item instanceof Segment) {
+				Segment segment = (Segment) item;
+				segment.start = now;
+				layers[segment.layer].add(segment);
+			} else if (item instanceof Recolor) {
+				Recolor recolor = (Recolor) item;
+				layers[EDGES].recolor(recolor.edge, recolor.color);
+			} else {
+				layers[(Integer) item].clear();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * One canvas with its segments and the rectangle that needs repainting.
+	 */
+	private class Layer {
+		private final Canvas canvas;
+		private final GraphicsContext gc;
+		private final ArrayList<Segment> segments = new ArrayList<>();
+		// Segments still growing, they keep their area dirty
+		private final ArrayList<Segment> growing = new ArrayList<>();
+		private double dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY;
+		private boolean dirty = false;
+
+		Layer(double width, double height) {
+			canvas = new Canvas(width, height);
+			canvas.setMouseTransparent(true);
+			gc = canvas.getGraphicsContext2D();
+		}
+
+		void add(Segment segment) {
+			segments.add(segment);
+			if (segment.animated)
+				growing.add(segment);
+			markDirty(segment);
+		}
+
+		void clear() {
+			for (Segment segment : segments)
+				markDirty(segment);
+			segments.clear();
+			growing.clear();
+		}
+
+		void recolor(int index, Color color) {
+			Segment segment = segments.get(index);
+			segment.color = color;
+			markDirty(segment);
+		}
+
+		/**
+		 * Index of the segment closest to (x, y) within PICK_DISTANCE, or -1.
+		 */
+		int pick(double x, double y) {
+			int best = -1;
+			double bestDist = PICK_DISTANCE, dist;
+			for (int i = 0; i < segments.size(); i++) {
+				dist = segments.get(i).distanceTo(x, y);
+				if (dist <= bestDist) {
+					bestDist = dist;
+					best = i;
+				}
+			}
+			return best;
+		}
+
+		private void markDirty(Segment segment) {
+			double pad = segment.width / 2 + MARGIN;
+			double minX = Math.min(segment.x1, segment.x2) - pad, maxX = Math.max(segment.x1, segment.x2) + pad;
+			double minY = Math.min(segment.y1, segment.y2) - pad, maxY = Math.max(segment.y1, segment.y2) + pad;
+			if (!dirty) {
+				dirtyMinX = minX;
+				dirtyMinY = minY;
+				dirtyMaxX = maxX;
+				dirtyMaxY = maxY;
+				dirty = true;
+			} else {
+				dirtyMinX = Math.min(dirtyMinX, minX);
+				dirtyMinY = Math.min(dirtyMinY, minY);
+				dirtyMaxX = Math.max(dirtyMaxX, maxX);
+				dirtyMaxY = Math.max(dirtyMaxY, maxY);
+			}
+		}
+
+		/**
+		 * Clear the dirty rectangle and draw back every segment crossing it.
+		 *
+		 * @return whether anything was repainted
+		 */
+		boolean repaint(long now) {
+			for (int i = growing.size() - 1; i >= 0; i--) {
+				Segment segment = growing.get(i);
+				markDirty(segment);
+				if (now - segment.start >= animationNanos)
+					growing.remove(i);
+			}
+			if (!dirty)
+				return false;
+			dirty = false;
+
+			double w = dirtyMaxX - dirtyMinX, h = dirtyMaxY - dirtyMinY;
+			gc.save();
+			gc.beginPath();
+			gc.rect(dirtyMinX, dirtyMinY, w, h);
+			gc.clip();
+			gc.clearRect(dirtyMinX, dirtyMinY, w, h);
+			for (Segment segment : segments) {
+				if (segment.crosses(dirtyMinX, dirtyMinY, dirtyMaxX, dirtyMaxY))
+					draw(segment, now);
+			}
+			gc.restore();
+			return true;
+		}
+
+		private void draw(Segment segment, long now) {
+			double t = 1;
+			if (segment.animated && animationNanos > 0)
+				t = Math.min(1, (double) (now - segment.start) / animationNanos);
+			gc.setStroke(segment.color);
+			gc.setLineWidth(segment.width);
+			gc.setLineDashes(segment.layer == EDGES ? dashes : null);
+			gc.strokeLine(segment.x1, segment.y1, segment.x1 + (segment.x2 - segment.x1) * t,
+					segment.y1 + (segment.y2 - segment.y1) * t);
+		}
+	}
+
+	private static class Segment {
+		final int layer;
+		final double x1, y1, x2, y2, width;
+		final boolean animated;
+		Color color;
+		// Pulse it was drained on, when it started growing
+		long start;
+
+		Segment(int layer, double x1, double y1, double x2, double y2, Color color, double width, boolean animated) {
+			this.layer = layer;
+			this.x1 = x1;
+			this.y1 = y1;
+			this.x2 = x2;
+			this.y2 = y2;
+			this.color = color;
+			this.width = width;
+			this.animated = animated;
+		}
+
+		/**
+		 * Whether the padded bounding box meets the rectangle.
+		 */
+		boolean crosses(double minX, double minY, double maxX, double maxY) {
+			double pad = width / 2 + MARGIN;
+			return Math.max(x1, x2) + pad >= minX && Math.min(x1, x2) - pad <= maxX && Math.max(y1, y2) + pad >= minY
+					&& Math.min(y1, y2) - pad <= maxY;
+		}
+
+		double distanceTo(double x, double y) {
+			double dx = x2 - x1, dy = y2 - y1, lengthSq = dx * dx + dy * dy;
+			double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / lengthSq));
+			return Math.hypot(x - x1 - t * dx, y - y1 - t * dy);
+		}
+	}
+
+	private static class Recolor {
+		final int edge;
+		final Color color;
+
+		Recolor(int edge, Color color) {
+			this.edge = edge;
+			this.color = color;
+		}
+	}
+}
@@ -1,16 +1,8 @@
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.LinkedList;
-import java.util.PriorityQueue;
-import java.util.Stack;
 import java.util.logging.Logger;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.KeyValue;
-import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -20,6 +12,7 @@ import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.Control;
 import javafx.scene.control.RadioButton;
+import javafx.scene.control.Slider;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
 import javafx.scene.control.ToggleGroup;
@@ -29,7 +22,6 @@ import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
-import javafx.scene.shape.Line;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.scene.text.TextAlignment;
@@ -37,29 +29,62 @@ import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
-import javafx.util.Duration;
+
+import route.AllPairs;
+import route.ContractionHierarchy;
+import route.DynamicGraph;
+import route.Landmarks;
+import route.RouteCache;
+import route.RouteGraph;
+import route.RouteListener;
+import route.RouteResult;
+import route.RoutingEngine;
+import route.SearchMetrics;
+import route.SearchStats;
+import route.SearchTrace;
 
 public class RouteSimulators extends Application {
 	private static final int WIDTH = 1000, HEIGHT = 600, CONTROL_WIDTH = 200, SIDE_WIDTH = 200,
 			MAIN_WIDTH = WIDTH - CONTROL_WIDTH - SIDE_WIDTH, NORMAL_R = 3, BIG_R = 5, PADDING = 40, ICON_R = 7,
 			ANIME_DURATION = 50, SLEEP_DURATION = 100, PROBE_DURATION = 50, SHOW_PATH_DURATION = 200;
-	private static final int ASTAR = 0, DIJKSTRA = 1, GREEDY = 2, BFS = 3, DFS = 4;
+	private static final int ASTAR = RoutingEngine.ASTAR, DIJKSTRA = RoutingEngine.DIJKSTRA,
+			GREEDY = RoutingEngine.GREEDY, BFS = RoutingEngine.BFS, DFS = RoutingEngine.DFS,
+			BI_DIJKSTRA = RoutingEngine.BI_DIJKSTRA, BI_ASTAR = RoutingEngine.BI_ASTAR, CH = RoutingEngine.CH,
+			ALT = RoutingEngine.ALT, ALL_PAIRS = RoutingEngine.ALL_PAIRS, LPA_STAR = RoutingEngine.LPA_STAR;
 	private static final double PROBE_PATH_W = 3, SOLID_PATH_W = 3.5, EDGE_W = 1, EDGE_DASH_AMT = 5.0;
 	private static final Color EDGE_COLOR = Color.BLACK, PROB_COLOR = Color.DARKOLIVEGREEN,
-			PATH_COLOR = Color.INDIANRED;
-	private static int A_STAR_CONSTANT = 100;
+			PATH_COLOR = Color.INDIANRED, CLOSED_EDGE_COLOR = Color.ORANGERED;
+	private static final double A_STAR_CONSTANT = RoutingEngine.A_STAR_CONSTANT;
 	private ArrayList<Point> points = new ArrayList<>();
 	private ArrayList<Control> controls = new ArrayList<>();
-	private double[][] matrix;
+	private RouteGraph graph;
+	private RoutingEngine engine;
+	private File graphFile;
+	// The graph itself when it has edges to close, null for implicit ones
+	private DynamicGraph dynamicGraph;
+	private long graphFingerprint;
+	private final RouteCache routeCache = new RouteCache();
+	// Counts of every search, over JMX and to -Droute.metricsLog=file.csv
+	private final SearchStats searchStats = SearchStats.create("RouteSimulators");
 	private Pane mainPanel;
 	private TextArea sidePanel;
 	private static final Logger log = Logger.getLogger(RouteSimulators.class.getName());
 	private Point startPoint = null, endPoint = null;
 	private boolean isChoosingStart = false, isChoosingEnd = false;
 	private Thread simulation;
-	private ArrayList<Line> pathLines = new ArrayList<>(), edgeList = new ArrayList<>(), probeLines = new ArrayList<>();
+	private RouteCanvas canvas;
+	// Carries the simulation thread's updates to the FX thread
+	private final FrameEventBus bus = new FrameEventBus();
+	// Paces the engine's steps, or records them for a replay
+	private final SimulationClock clock = new SimulationClock();
+	// Trace of the last search, scrubbed through with the slider
+	private SearchTrace trace;
+	private File traceFile;
+	private Slider traceSlider;
+	private static final int CONTROLS_KEY = 0;
+	// Points at the two ends of every edge drawn, by edge index on the canvas
+	private ArrayList<int[]> edgeEnds = new ArrayList<>();
 	private boolean animationOn = true;
-	private boolean customizeEdge = false;
 	private boolean showProbe = true;
 	private Button openFileButton;
 	private String additionalArg;
@@ -67,6 +92,7 @@ public class RouteSimulators extends Application {
 	@Override
 	public void start(Stage stage) {
 		BorderPane root = new BorderPane();
+		bus.start();
 
 		layoutControlPanel(root);
 		layoutSidePanel(root);
@@ -74,6 +100,10 @@ public class RouteSimulators extends Application {
 		// Main panel stuff
 		mainPanel = new Pane();
 		mainPanel.setPrefSize(WIDTH - CONTROL_WIDTH - SIDE_WIDTH, HEIGHT);
+		canvas = new RouteCanvas(MAIN_WIDTH, HEIGHT, ANIME_DURATION);
+		canvas.setEdgeDashes(EDGE_DASH_AMT, EDGE_DASH_AMT);
+		canvas.setOnEdgeClicked(this::toggleClosure);
+		mainPanel.getChildren().add(canvas);
 		root.setCenter(mainPanel);
 
 		root.setPrefSize(WIDTH, HEIGHT);
@@ -84,6 +114,7 @@ public class RouteSimulators extends Application {
 			if (simulation != null && simulation.isAlive()) {
 				simulation.interrupt();
 			}
+			searchStats.closeLog();
 		});
 		stage.show();
 	}
@@ -96,33 +127,24 @@ public class RouteSimulators extends Application {
 	 * @param infoText    the area to display output point
 	 */
 	private void processFile(File file, Text messageText, Text infoText) {
-		BufferedReader reader = null;
 		try {
-			reader = new BufferedReader(new FileReader(file));
+			// Graph is ready before any point is made for display
+			graph = RouteGraph.read(file);
+			dynamicGraph = graph.isImplicit() ? null : new DynamicGraph(graph);
+			if (dynamicGraph != null)
+				graph = dynamicGraph;
+			engine = new RoutingEngine(graph);
+			engine.setStats(searchStats);
+			graphFile = file;
+			graphFingerprint = RouteCache.fingerprint(graph);
+			routeCache.invalidate();
 
-			String line;
-			String[] parts;
-			int lineNum = 0;
 			points.clear();
-			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = Double.MIN_VALUE, maxY = Double.MIN_VALUE;
+			double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
 			double x, y;
-			while ((line = reader.readLine()) != null) {
-				parts = line.split("\\t");
-				// System.out.println(Arrays.toString(parts));
-
-				// There are edge entries at the end
-				if (line.equals("")) {
-					customizeEdge = true;
-					break;
-				}
-
-				// Else there is a problem
-				if (parts.length != 3)
-					throw new Exception("3 input expected on line " + lineNum);
-
-				x = Double.parseDouble(parts[1]);
-				y = Double.parseDouble(parts[2]);
-
+			for (int i = 0; i < graph.vertexCount(); i++) {
+				x = graph.x(i);
+				y = graph.y(i);
 				if (x < minX)
 					minX = x;
 				if (x > maxX)
@@ -131,105 +153,73 @@ public class RouteSimulators extends Application {
 					minY = y;
 				if (y > maxY)
 					maxY = y;
-				points.add(new Point(x, y, parts[0], lineNum, infoText));
-
-				lineNum++;
+				points.add(new Point(x, y, graph.label(i), i, infoText));
 			}
 
 			// Successful read
 			Platform.runLater(() -> {
 				messageText.setText(file.getName());
 			});
-			log.info("Successful read with " + points.size() + " points");
-
-			// Initialize matrix
-			matrix = new double[points.size()][points.size()];
+			log.info("Successful read with " + points.size() + " points and " + graph.edgeCount() / 2 + " edges");
 
 			// Draw all points
 			drawPoints(minX, minY, maxX, maxY);
 
-			// Read customize edge
-			double dist;
-			if (customizeEdge) {
-				lineNum++;
-				while ((line = reader.readLine()) != null) {
-					parts = line.split("\\t");
-
-					// Add edge list
-					int point1 = Integer.parseInt(parts[0]);
-					int point2 = Integer.parseInt(parts[1]);
-
-					if (point1 < 0 || point1 >= points.size() || point2 < 0 || point2 >= points.size()) {
-						throw new Exception("Invalid index on line: " + lineNum);
-					}
-					if (point1 == point2) {
-						throw new Exception("No self loop on line: " + lineNum);
-					}
-
-					// Initialize matrix with undirected edges
-					dist = euclideanDist(points.get(point1).x, points.get(point1).y, points.get(point2).x,
-							points.get(point2).x);
-					matrix[point1][point2] = dist;
-					matrix[point2][point1] = dist;
-
-					lineNum++;
-				}
-
-				// Make all other edges to be infinity
-				for (int i = 0; i < matrix.length; i++) {
-					for (int j = 0; j < matrix.length; j++) {
-						if (matrix[i][j] == 0)
-							matrix[i][j] = Double.MAX_VALUE;
-					}
-				}
-
-				log.info("Customize edge finished");
-			} else {
-				calculateDefaultEdge();
-			}
-
-			// Draw all the edges if customized, else do nothing
-			if (customizeEdge) {
-				for (int i = 0; i < matrix.length; i++) {
-					for (int j = i + 1; j < matrix.length; j++) {
-						if (matrix[i][j] != Double.MAX_VALUE) {
-							Point point1 = points.get(i);
-							Point point2 = points.get(j);
-							Platform.runLater(() -> {
-								Line l = new Line(point1.getTranslateX(), point1.getTranslateY(),
-										point2.getTranslateX(), point2.getTranslateY());
-								l.setStroke(EDGE_COLOR);
-								l.setStrokeWidth(EDGE_W);
-								l.getStrokeDashArray().addAll(EDGE_DASH_AMT, EDGE_DASH_AMT);
-								l.setStrokeDashOffset(10);
-								edgeList.add(l);
-							});
+			// Draw all the edges if customized, else do nothing. Clicking an edge
+			// closes or reopens it. Points are placed first.
+			if (!graph.isImplicit()) {
+				Platform.runLater(() -> {
+					for (int i = 0; i < graph.vertexCount(); i++) {
+						for (int e = graph.firstEdge(i); e < graph.endEdge(i); e++) {
+							// Each undirected edge is drawn once
+							if (graph.target(e) > i) {
+								Point point1 = points.get(i), point2 = points.get(graph.target(e));
+								canvas.addEdge(point1.getTranslateX(), point1.getTranslateY(),
+										point2.getTranslateX(), point2.getTranslateY(), EDGE_COLOR, EDGE_W);
+								edgeEnds.add(new int[] { point1.id, point2.id });
+							}
 						}
 					}
-				}
+				});
 			}
-			Platform.runLater(() -> {
-				mainPanel.getChildren().addAll(edgeList);
-				// Make points being able to be selected
-				for (Line l : edgeList)
-					l.toBack();
-			});
 
 			// Set control to not disabled
 			setControlDisable(false);
 		} catch (Exception ex) {
 			messageText.setText(ex.getMessage());
-		} finally {
-			if (reader != null) {
-				try {
-					reader.close();
-				} catch (Exception e) {
-				}
-			}
-			System.out.println();
 		}
 	}
 
+	/**
+	 * Close an open edge or reopen a closed one, both ways. LPA* repairs its
+	 * last route on the next run, preprocessing of the old weights is dropped.
+	 * 
+	 * @param edge index of the edge on the canvas
+	 */
+	private void toggleClosure(int edge) {
+		// Weights only change between runs
+		if (dynamicGraph == null || (simulation != null && simulation.isAlive()))
+			return;
+
+		int from = edgeEnds.get(edge)[0], to = edgeEnds.get(edge)[1];
+		boolean closed = dynamicGraph.isClosed(dynamicGraph.findEdge(from, to));
+		for (int[] ends : new int[][] { { from, to }, { to, from } }) {
+			if (dynamicGraph.findEdge(ends[0], ends[1]) < 0)
+				continue;
+			if (closed)
+				dynamicGraph.reopen(ends[0], ends[1]);
+			else
+				dynamicGraph.close(ends[0], ends[1]);
+		}
+		canvas.setEdgeColor(edge, closed ? EDGE_COLOR : CLOSED_EDGE_COLOR);
+
+		engine.setHierarchy(null);
+		engine.setLandmarks(null);
+		engine.setAllPairs(null);
+		routeCache.invalidate();
+		log.info((closed ? "Reopened " : "Closed ") + graph.label(from) + " - " + graph.label(to));
+	}
+
 	/**
 	 * Helper method for draw points with given coordinates, fit to the given area.
 	 * 
@@ -252,34 +242,6 @@ public class RouteSimulators extends Application {
 		log.info("Finished draw points " + points.size());
 	}
 
-	/**
-	 * Calculate paths that interconnect all points.
-	 */
-	private void calculateDefaultEdge() {
-		matrix = new double[points.size()][points.size()];
-
-		double dist;
-		for (int i = 0; i < points.size(); i++) {
-			// No self-loop allowed
-			matrix[i][i] = Double.MAX_VALUE;
-			for (int j = i + 1; j < points.size(); j++) {
-				// Initialize distance
-				dist = euclideanDist(points.get(i).x, points.get(i).y, points.get(j).x, points.get(j).y);
-				matrix[i][j] = dist;
-				matrix[j][i] = dist;
-			}
-		}
-
-		log.info("Default path finished");
-	}
-
-	/**
-	 * Helper method to calculate the shortest path between two points.
-	 */
-	private double euclideanDist(double x1, double y1, double x2, double y2) {
-		return Math.pow(Math.pow(x1 - x2, 2) + Math.pow(y1 - y2, 2), 0.5);
-	}
-
 	/**
 	 * Layout all control panel components.
 	 * 
@@ -291,21 +253,39 @@ public class RouteSimulators extends Application {
 		controlPanel.setPrefSize(CONTROL_WIDTH, HEIGHT);
 		RadioButton AStarButton = new RadioButton("A*"), dijkstraButton = new RadioButton("Dijkstra"),
 				greedyButton = new RadioButton("Greedy"), BFSButton = new RadioButton("BFS"),
-				DFSButton = new RadioButton("DFS");
+				DFSButton = new RadioButton("DFS"), biDijkstraButton = new RadioButton("Bidirectional Dijkstra"),
+				biAStarButton = new RadioButton("Bidirectional A*"), CHButton = new RadioButton("Contraction Hierarchy"),
+				ALTButton = new RadioButton("ALT (landmarks)"),
+				allPairsButton = new RadioButton("All pairs (lookup)"),
+				LPAStarButton = new RadioButton("LPA* (replans)");
 		AStarButton.setUserData(ASTAR);
 		dijkstraButton.setUserData(DIJKSTRA);
 		greedyButton.setUserData(GREEDY);
 		BFSButton.setUserData(BFS);
 		DFSButton.setUserData(DFS);
+		biDijkstraButton.setUserData(BI_DIJKSTRA);
+		biAStarButton.setUserData(BI_ASTAR);
+		CHButton.setUserData(CH);
+		ALTButton.setUserData(ALT);
+		allPairsButton.setUserData(ALL_PAIRS);
+		LPAStarButton.setUserData(LPA_STAR);
 		ToggleGroup buttonGroup = new ToggleGroup();
 		greedyButton.setToggleGroup(buttonGroup);
 		dijkstraButton.setToggleGroup(buttonGroup);
 		AStarButton.setToggleGroup(buttonGroup);
 		BFSButton.setToggleGroup(buttonGroup);
 		DFSButton.setToggleGroup(buttonGroup);
+		biDijkstraButton.setToggleGroup(buttonGroup);
+		biAStarButton.setToggleGroup(buttonGroup);
+		CHButton.setToggleGroup(buttonGroup);
+		ALTButton.setToggleGroup(buttonGroup);
+		allPairsButton.setToggleGroup(buttonGroup);
+		LPAStarButton.setToggleGroup(buttonGroup);
 		greedyButton.setSelected(true);
 		controlPanel.setPadding(new Insets(10));
-		controlPanel.getChildren().addAll(greedyButton, dijkstraButton, AStarButton, BFSButton, DFSButton);
+		controlPanel.getChildren().addAll(greedyButton, dijkstraButton, AStarButton, BFSButton, DFSButton,
+				biDijkstraButton, biAStarButton, CHButton, ALTButton,
+				allPairsButton, LPAStarButton);
 
 		Button chooseStartButton = new Button("Choose start");
 		Circle startC = new Circle();
@@ -345,8 +325,16 @@ public class RouteSimulators extends Application {
 		openFileButton.setPrefWidth(CONTROL_WIDTH);
 		currFileText.setWrappingWidth(CONTROL_WIDTH);
 		infoText.setWrappingWidth(CONTROL_WIDTH);
-		controlPanel.getChildren().addAll(animationButton, showProbeButton, startButton, openFileButton, currFileText,
-				infoText);
+		Text traceText = new Text("Scrub last search:");
+		traceText.setFont(Font.font("Times New Roman", 16));
+		traceSlider = new Slider();
+		traceSlider.setDisable(true);
+		traceSlider.valueProperty().addListener((o, old, value) -> {
+			if (trace != null)
+				drawTrace(value.longValue());
+		});
+		controlPanel.getChildren().addAll(animationButton, showProbeButton, clock.createControls(CONTROL_WIDTH),
+				traceText, traceSlider, startButton, openFileButton, currFileText, infoText);
 		controlPanel.setStyle("-fx-border-width: 0 1px 0 0; -fx-border-style: solid;");
 
 		controls.add(chooseStartButton);
@@ -366,7 +354,7 @@ public class RouteSimulators extends Application {
 
 			FileChooser fileChooser = new FileChooser();
 			fileChooser.setTitle("Open Point File");
-			fileChooser.getExtensionFilters().addAll(new ExtensionFilter("Point Files", "*.tsv"));
+			fileChooser.getExtensionFilters().addAll(new ExtensionFilter("Point Files", "*.tsv", "*.rgraph"));
 			fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
 			File selectedFile = fileChooser.showOpenDialog(stage);
 			if (selectedFile != null) {
@@ -399,694 +387,326 @@ public class RouteSimulators extends Application {
 				return;
 
 			// Reset possible fields
-			ArrayList<Line> removeLines = new ArrayList<>(pathLines);
-			removeLines.addAll(probeLines);
+			closeTrace();
+			canvas.clear(RouteCanvas.PROBES);
+			canvas.clear(RouteCanvas.PATH);
 			Platform.runLater(() -> {
-				mainPanel.getChildren().removeAll(removeLines);
 				sidePanel.setText("");
 			});
-			probeLines.clear();
-			pathLines.clear();
 
 			additionalArg = arg.getText().trim();
 
 			setControlDisable(true);
-			switch (algorithm) {
-			case ASTAR:
-				runAStar();
-				break;
-			case DIJKSTRA:
-				runDijkstra();
-				break;
-			case GREEDY:
-				runGreedy();
-				break;
-			case BFS:
-				runBFS();
-				break;
-			case DFS:
-				runDFS();
-				break;
-			default:
-				break;
-			}
+			runAlgorithm(algorithm);
 		});
 
 		root.setLeft(controlPanel);
 	}
 
 	/**
-	 * Run greedy search algorithm.
+	 * Run the given algorithm on the routing engine, visualizing its steps.
+	 * 
+	 * @param algorithm one of the RoutingEngine algorithm constants
 	 */
-	private void runGreedy() {
-		simulation = new Thread(() -> {
-			// Reset all points
-			for (Point p : points)
-				p.isVisited = false;
-
-			Point currPoint = startPoint;
-			int index, id;
-			double minL;
-			double weight = 0;
-			int hop = 0;
-			int cycle = 0;
-
-			// Main loop
-			while (currPoint != endPoint) {
-				id = currPoint.id;
-				index = -1;
-				minL = Double.MAX_VALUE;
-				for (int i = 0; i < matrix[id].length; i++) {
-					if (!points.get(i).isVisited && matrix[id][i] != Double.MAX_VALUE && matrix[id][i] < minL) {
-						minL = matrix[id][i];
-						index = i;
-					}
-				}
-
-				// Unconnected graph
-				if (index == -1)
-					break;
-
-				currPoint.isVisited = true;
-				weight += minL;
-				hop++;
-
-				// Add this stop to list
-				String label = currPoint.label;
-				Platform.runLater(() -> {
-					sidePanel.appendText(label + "->\n");
-				});
-
-				// Visited next point
-				double startX = currPoint.getTranslateX();
-				double startY = currPoint.getTranslateY();
-				currPoint = points.get(index);
-				drawPathTo(startX, startY, currPoint.getTranslateX(), currPoint.getTranslateY(), PATH_COLOR,
-						SOLID_PATH_W, false);
-
-				try {
-					Thread.sleep(SLEEP_DURATION);
-				} catch (Exception e) {
-					return;
-				}
+	private void runAlgorithm(int algorithm) {
+		double constant;
+		try {
+			constant = Integer.parseInt(additionalArg);
 
-				cycle++;
-			}
+			if (constant < 0)
+				throw new Exception("Out of bounds");
+		} catch (Exception e) {
+			constant = A_STAR_CONSTANT;
+		}
 
-			// Unconnected graph
-			if (currPoint != endPoint) {
+		final double aStarConstant = constant;
+		final int start = startPoint.id, end = endPoint.id;
+		simulation = new Thread(() -> {
+			// A query asked before is shown at once instead of searched again
+			RouteResult cached = routeCache.get(graphFingerprint, algorithm, start, end, aStarConstant);
+			if (cached == null && !prepare(algorithm)) {
 				setControlDisable(false);
-				System.out.println("Graph is unconnected as far as this algorithm goes (no back track for greedy)");
 				return;
-			} else {
-				String label = currPoint.label;
-				double totalWeight = weight;
-				int totalHop = hop;
-				int totalCycle = cycle;
-				Platform.runLater(() -> {
-					sidePanel.appendText(label + "\n" + "Path total: " + totalWeight + "\nStop: " + totalHop
-							+ "\nCycles: " + totalCycle);
-				});
-				setControlDisable(false);
-
-				log.info("Path found!");
-			}
-		});
-
-		simulation.start();
-	}
-
-	/**
-	 * Run A star algorithm.
-	 */
-	private void runAStar() {
-		simulation = new Thread(() -> {
-			int constant;
-			try {
-				constant = Integer.parseInt(additionalArg);
-
-				if (constant < 0 || constant > Integer.MAX_VALUE) {
-					throw new Exception("Out of bounds");
-				}
-			} catch (Exception e) {
-				constant = A_STAR_CONSTANT;
-			}
-
-			for (Point p : points) {
-				p.isVisited = false;
-				p.weight = Double.MAX_VALUE;
-				p.prev = null;
-
-				// Calculate all node's estimate distance to end point
-				p.estimateDist = constant * euclideanDist(p.x, p.y, endPoint.x, endPoint.y);
 			}
+			RouteResult result = cached != null ? cached : search(algorithm, start, end, aStarConstant);
 
-			Point currPoint = startPoint, neighborPoint, tempPoint;
-			PriorityQueue<Point> queue = new PriorityQueue<>(new AStarComparator());
-			int id;
-			double newWeight;
-			int cycle = 0;
-
-			// Initialize starting point
-			queue.add(startPoint);
-			startPoint.weight = 0;
-
-			// Main loop
-			while (!queue.isEmpty()) {
-				currPoint = queue.poll();
-				id = currPoint.id;
-
-				// Remove current path lines
-				ArrayList<Line> removeLines = new ArrayList<>(pathLines);
-				Platform.runLater(() -> {
-					mainPanel.getChildren().removeAll(removeLines);
-				});
-				pathLines.clear();
-
-				// Draw current path in consideration
-				tempPoint = currPoint;
-				while (tempPoint.prev != null) {
-					drawPathTo(tempPoint.getTranslateX(), tempPoint.getTranslateY(), tempPoint.prev.getTranslateX(),
-							tempPoint.prev.getTranslateY(), PATH_COLOR, SOLID_PATH_W, false);
-					tempPoint = tempPoint.prev;
-				}
-				// To better visualize probe process
-				try {
-					Thread.sleep(SHOW_PATH_DURATION);
-				} catch (Exception ex) {
-				}
-
-				// Reach goal
-				if (currPoint == endPoint) {
-					System.out.println("Found route");
-					break;
-				}
-
-				// This node is done
-				if (currPoint.isVisited)
-					continue;
-
-				// Set visited
-				currPoint.isVisited = true;
-
-				// Add neighbors to queue if weight can be reduced
-				for (int i = 0; i < matrix[id].length; i++) {
-					if (!points.get(i).isVisited && matrix[id][i] != Double.MAX_VALUE) {
-						neighborPoint = points.get(i);
-
-						newWeight = currPoint.weight + matrix[id][i];
-						// Relax neighbor node and add to priority queue
-						if (newWeight < neighborPoint.weight) {
-							if (showProbe) {
-								// Draw probe line if it's the first time being probed
-								if (neighborPoint.weight == Double.MAX_VALUE) {
-									double endX = neighborPoint.getTranslateX();
-									double endY = neighborPoint.getTranslateY();
-									drawPathTo(currPoint.getTranslateX(), currPoint.getTranslateY(), endX, endY,
-											PROB_COLOR, PROBE_PATH_W, true);
-								}
-							}
-
-							// Update this vertex and priority queue
-							neighborPoint.prev = currPoint;
-							neighborPoint.weight = newWeight;
-							queue.add(neighborPoint);
-						}
-
-						// To better visualize probe process
-						try {
-							Thread.sleep(PROBE_DURATION);
-						} catch (Exception ex) {
-						}
-					}
-				}
-
-				try {
-					Thread.sleep(SLEEP_DURATION);
-				} catch (Exception e) {
-					return;
-				}
-
-				cycle++;
-			}
+			// Stopped by closing window
+			if (Thread.currentThread().isInterrupted())
+				return;
 
 			// Unconnected graph
-			if (currPoint != endPoint) {
-				System.out.println("Graph is unconnected as far as A* can tell");
+			if (result == null) {
+				System.out.println("Graph is unconnected as far as this algorithm can tell");
 				setControlDisable(false);
 				return;
-			} else {
-				double weight = 0;
-				int hop = 0;
-				Stack<Point> path = new Stack<>();
-				while (currPoint.prev != null) {
-					path.push(currPoint);
-					weight += matrix[currPoint.id][currPoint.prev.id];
-					hop++;
-					currPoint = currPoint.prev;
-				}
-
-				// Add the starting vertex
-				path.push(currPoint);
+			}
 
-				// Add path in reverse order to panel
-				while (path.size() > 1) {
-					currPoint = path.pop();
+			// Add path to panel, greedy has already added its stops
+			int[] path = result.getPath();
+			for (int i = 0; i < path.length - 1; i++) {
+				Point currPoint = points.get(path[i]), nextPoint = points.get(path[i + 1]);
+				if (algorithm != GREEDY || cached != null) {
 					String label = currPoint.label;
-					Platform.runLater(() -> {
-						sidePanel.appendText(label + "->\n");
-					});
+					bus.publish(() -> sidePanel.appendText(label + "->\n"));
 				}
 
-				currPoint = path.pop();
-				String label = currPoint.label;
-				double totalWeight = weight;
-				int totalHop = hop;
-				int totalCycle = cycle;
-				Platform.runLater(() -> {
-					sidePanel.appendText(label + "\n" + "Path total: " + totalWeight + "\nStop: " + totalHop
-							+ "\nCycles: " + totalCycle);
-				});
-
-				setControlDisable(false);
-				log.info("Path found!");
+				// BFS and DFS only probed, the others only showed parts or nothing, draw
+				// the path found. Nothing was shown for a cached one.
+				if (cached != null || algorithm == BFS || algorithm == DFS || algorithm == BI_DIJKSTRA
+						|| algorithm == BI_ASTAR || algorithm == CH || algorithm == ALL_PAIRS)
+					drawPathTo(currPoint.getTranslateX(), currPoint.getTranslateY(), nextPoint.getTranslateX(),
+							nextPoint.getTranslateY(), PATH_COLOR, SOLID_PATH_W, false);
 			}
+
+			String label = endPoint.label;
+			long hits = routeCache.hits(), misses = routeCache.misses();
+			// Time includes the pauses of the visualization
+			SearchMetrics metrics = cached == null ? engine.getLastMetrics() : null;
+			bus.publish(() -> sidePanel.appendText(label + "\n" + "Path total: " + result.getWeight() + "\nStop: "
+					+ result.getHops() + "\nCycles: " + result.getCycles() + "\nCache: " + hits + " hits, " + misses
+					+ " misses" + (metrics == null ? "" : "\n" + metrics)));
+			setControlDisable(false);
+
+			log.info("Path found!");
 		});
 
 		simulation.start();
 	}
 
 	/**
-	 * Run Dijkstra algorithm.
+	 * Make the tables the algorithm needs on first use, or load them from next
+	 * to the file. What is saved there is for the file's weights, not for
+	 * edited ones.
+	 * 
+	 * @return false if the graph is too large for them, which is reported in
+	 *         the side panel
 	 */
-	private void runDijkstra() {
-		simulation = new Thread(() -> {
-			for (Point p : points) {
-				p.isVisited = false;
-				p.weight = Double.MAX_VALUE;
-				p.prev = null;
-			}
-
-			Point currPoint = startPoint, neighborPoint, tempPoint;
-			PriorityQueue<Point> queue = new PriorityQueue<>(new DijkstraComparator());
-			int id;
-			double newWeight;
-			int cycle = 0;
-
-			// Initialize starting point
-			queue.add(startPoint);
-			startPoint.weight = 0;
-
-			// Main loop
-			while (!queue.isEmpty()) {
-				currPoint = queue.poll();
-				id = currPoint.id;
-
-				// Remove current path lines
-				ArrayList<Line> removeLines = new ArrayList<>(pathLines);
-				Platform.runLater(() -> {
-					mainPanel.getChildren().removeAll(removeLines);
-				});
-				pathLines.clear();
-
-				// Draw current path in consideration
-				tempPoint = currPoint;
-				while (tempPoint.prev != null) {
-					drawPathTo(tempPoint.getTranslateX(), tempPoint.getTranslateY(), tempPoint.prev.getTranslateX(),
-							tempPoint.prev.getTranslateY(), PATH_COLOR, SOLID_PATH_W, false);
-					tempPoint = tempPoint.prev;
-				}
-				// To better visualize probe process
-				try {
-					Thread.sleep(SHOW_PATH_DURATION);
-				} catch (Exception ex) {
-				}
-
-				// Reach goal
-				if (currPoint == endPoint) {
-					System.out.println("Found route");
-					break;
-				}
-
-				// This node is done
-				if (currPoint.isVisited)
-					continue;
-
-				// Set visited
-				currPoint.isVisited = true;
-
-				// Add neighbors to queue if weight can be reduced
-				for (int i = 0; i < matrix[id].length; i++) {
-					if (!points.get(i).isVisited && matrix[id][i] != Double.MAX_VALUE) {
-						neighborPoint = points.get(i);
-
-						newWeight = currPoint.weight + matrix[id][i];
-						// Relax neighbor node and add to priority queue
-						if (newWeight < neighborPoint.weight) {
-							if (showProbe) {
-								// Draw probe line if it's the first time being probed
-								if (neighborPoint.weight == Double.MAX_VALUE) {
-									double endX = neighborPoint.getTranslateX();
-									double endY = neighborPoint.getTranslateY();
-									drawPathTo(currPoint.getTranslateX(), currPoint.getTranslateY(), endX, endY,
-											PROB_COLOR, PROBE_PATH_W, true);
-								}
-							}
-
-							// Update this vertex and priority queue
-							neighborPoint.prev = currPoint;
-							neighborPoint.weight = newWeight;
-							queue.add(neighborPoint);
-						}
-
-						// To better visualize probe process
-						try {
-							Thread.sleep(PROBE_DURATION);
-						} catch (Exception ex) {
-						}
-					}
-				}
-
-				try {
-					Thread.sleep(SLEEP_DURATION);
-				} catch (Exception e) {
-					return;
-				}
-
-				cycle++;
-			}
-
-			// Unconnected graph
-			if (currPoint != endPoint) {
-				System.out.println("Graph is unconnected as far as Dijkstra can tell");
-				setControlDisable(false);
-				return;
-			} else {
-				double weight = 0;
-				int hop = 0;
-				Stack<Point> path = new Stack<>();
-				while (currPoint.prev != null) {
-					path.push(currPoint);
-					weight += matrix[currPoint.id][currPoint.prev.id];
-					hop++;
-					currPoint = currPoint.prev;
-				}
-
-				// Add the starting vertex
-				path.push(currPoint);
-
-				// Add path in reverse order to panel
-				while (path.size() > 1) {
-					currPoint = path.pop();
-					String label = currPoint.label;
-					Platform.runLater(() -> {
-						sidePanel.appendText(label + "->\n");
-					});
-				}
-
-				currPoint = path.pop();
-				String label = currPoint.label;
-				double totalWeight = weight;
-				int totalHop = hop;
-				int totalCycle = cycle;
-				Platform.runLater(() -> {
-					sidePanel.appendText(label + "\n" + "Path total: " + totalWeight + "\nStop: " + totalHop
-							+ "\nCycles: " + totalCycle);
-				});
-
-				setControlDisable(false);
-				log.info("Path found!");
-			}
-		});
-
-		simulation.start();
+	private boolean prepare(int algorithm) {
+		boolean edited = dynamicGraph != null && dynamicGraph.version() > 0;
+		try {
+			if (algorithm == CH && engine.getHierarchy() == null)
+				engine.setHierarchy(edited ? ContractionHierarchy.build(graph)
+						: ContractionHierarchy.loadOrBuild(graphFile, graph));
+			if (algorithm == ALT && engine.getLandmarks() == null)
+				engine.setLandmarks(Landmarks.select(graph, Landmarks.DEFAULT_COUNT));
+			if (algorithm == ALL_PAIRS && engine.getAllPairs() == null)
+				engine.setAllPairs(edited ? AllPairs.compute(graph) : AllPairs.loadOrCompute(graphFile, graph));
+			return true;
+		} catch (IllegalArgumentException | OutOfMemoryError e) {
+			String message = RoutingEngine.algorithmName(algorithm) + " can't run on this graph: "
+					+ (e instanceof OutOfMemoryError ? "not enough memory" : e.getMessage());
+			log.warning(message);
+			bus.publish(() -> sidePanel.appendText(message + "\n"));
+			return false;
+		}
 	}
 
 	/**
-	 * Run BFS.
+	 * Search on the routing engine, visualizing its steps, and cache the route
+	 * found.
+	 * 
+	 * @return the route, or null if unconnected or interrupted
 	 */
-	private void runBFS() {
-		simulation = new Thread(() -> {
-			// Reset all points
-			for (Point p : points) {
-				p.isVisited = false;
-				p.prev = null;
-			}
-
-			Point currPoint = startPoint, neighborPoint;
-			int id;
-			int cycle = 0;
-			LinkedList<Point> queue = new LinkedList<>();
-
-			// Enqueue first node
-			queue.add(startPoint);
-			startPoint.isVisited = true;
-
-			// Main loop
-			while (!queue.isEmpty()) {
-				currPoint = queue.removeFirst();
-				id = currPoint.id;
-
-				// Reach goal
-				if (currPoint == endPoint) {
-					System.out.println("Found route");
-					break;
-				}
-
-				// Add all unvisited neighbors to queue
-				for (int i = 0; i < matrix[id].length; i++) {
-					if (!points.get(i).isVisited && matrix[id][i] != Double.MAX_VALUE) {
-						neighborPoint = points.get(i);
-						queue.addLast(neighborPoint);
-
-						// To ensure every node is enqueued only once
-						neighborPoint.isVisited = true;
-						neighborPoint.prev = currPoint;
-
-						// Draw all lines to the neighbors
-						double endX = neighborPoint.getTranslateX();
-						double endY = neighborPoint.getTranslateY();
-						drawPathTo(currPoint.getTranslateX(), currPoint.getTranslateY(), endX, endY, PROB_COLOR,
-								PROBE_PATH_W, true);
-
-						// To better visualize probe process
-						try {
-							Thread.sleep(PROBE_DURATION);
-						} catch (Exception ex) {
-						}
-
-					}
-				}
+	private RouteResult search(int algorithm, int start, int end, double aStarConstant) {
+		// Record the search so it can be scrubbed through afterwards
+		SearchTrace.Recorder recorder = null;
+		File file = null;
+		try {
+			file = File.createTempFile("route", SearchTrace.EXTENSION);
+			file.deleteOnExit();
+			recorder = new SearchTrace.Recorder(file, graph.vertexCount());
+		} catch (IOException e) {
+			log.warning("Search not recorded: " + e.getMessage());
+		}
 
-				try {
-					Thread.sleep(SLEEP_DURATION);
-				} catch (Exception e) {
-					return;
-				}
+		clock.begin();
+		RouteResult result = engine.route(algorithm, start, end, aStarConstant,
+				new SimulationListener(algorithm, recorder));
+		clock.finish();
+		if (recorder != null)
+			finishTrace(recorder, file, result);
+		if (result != null && !Thread.currentThread().isInterrupted())
+			routeCache.put(graphFingerprint, algorithm, start, end, aStarConstant, result);
+		return result;
+	}
 
-				cycle++;
+	/**
+	 * Close a search's recording and hand it to the FX thread to be scrubbed
+	 * through. An interrupted search's recording is dropped.
+	 */
+	private void finishTrace(SearchTrace.Recorder recorder, File file, RouteResult result) {
+		SearchTrace opened = null;
+		try {
+			try (SearchTrace.Recorder closing = recorder) {
+				if (result != null)
+					closing.pathFound(result.getPath());
 			}
+			if (!Thread.currentThread().isInterrupted())
+				opened = SearchTrace.open(file);
+		} catch (IOException e) {
+			log.warning("Search not recorded: " + e.getMessage());
+		}
 
-			// Unconnected graph
-			if (currPoint != endPoint) {
-				System.out.println("Graph is unconnected as far as BFS can tell");
-				setControlDisable(false);
-				return;
-			} else {
-				double weight = 0;
-				int hop = 0;
-				Stack<Point> path = new Stack<>();
-				while (currPoint.prev != null) {
-					path.push(currPoint);
-					weight += matrix[currPoint.id][currPoint.prev.id];
-					hop++;
-					currPoint = currPoint.prev;
-				}
-
-				// Add the starting vertex
-				path.push(currPoint);
-
-				// Add path in reverse order to panel
-				while (path.size() > 1) {
-					currPoint = path.pop();
-					String label = currPoint.label;
-					Platform.runLater(() -> {
-						sidePanel.appendText(label + "->\n");
-					});
-
-					drawPathTo(currPoint.getTranslateX(), currPoint.getTranslateY(), path.peek().getTranslateX(),
-							path.peek().getTranslateY(), PATH_COLOR, SOLID_PATH_W, false);
-				}
-
-				currPoint = path.pop();
-				String label = currPoint.label;
-				double totalWeight = weight;
-				int totalHop = hop;
-				int totalCycle = cycle;
-				Platform.runLater(() -> {
-					sidePanel.appendText(label + "\n" + "Path total: " + totalWeight + "\nStop: " + totalHop
-							+ "\nCycles: " + totalCycle);
-				});
-
-				setControlDisable(false);
-				log.info("Path found!");
-			}
+		if (opened == null) {
+			file.delete();
+			return;
+		}
+		SearchTrace shown = opened;
+		bus.publish(() -> {
+			closeTrace();
+			traceSlider.setMax(shown.eventCount());
+			traceSlider.setValue(shown.eventCount());
+			traceSlider.setDisable(false);
+			// Set after the slider, the search is already drawn as it ended
+			trace = shown;
+			traceFile = file;
 		});
-
-		simulation.start();
 	}
 
 	/**
-	 * Run DFS.
+	 * Drop the trace of the last search, on the FX thread.
 	 */
-	private void runDFS() {
-		simulation = new Thread(() -> {
-			// Reset all points
-			for (Point p : points) {
-				p.isVisited = false;
-				p.prev = null;
-			}
+	private void closeTrace() {
+		if (trace == null)
+			return;
+		traceSlider.setDisable(true);
+		try {
+			trace.close();
+		} catch (IOException e) {
+			log.warning("Trace not closed: " + e.getMessage());
+		}
+		traceFile.delete();
+		trace = null;
+		traceFile = null;
+	}
 
-			Point currPoint = startPoint, neighborPoint;
-			int id;
-			Stack<Point> stack = new Stack<>();
-			int cycle = 0;
+	/**
+	 * Draw the last search as it was after the given number of events: a probe
+	 * line to every point reached, the path found so far and the path to the
+	 * point settled last.
+	 */
+	private void drawTrace(long step) {
+		try {
+			trace.seek(step);
+		} catch (IOException e) {
+			log.warning("Trace unreadable: " + e.getMessage());
+			return;
+		}
 
-			// Enqueue first node
-			stack.push(startPoint);
-			startPoint.isVisited = true;
+		canvas.clear(RouteCanvas.PROBES);
+		canvas.clear(RouteCanvas.PATH);
+		int parent;
+		for (int v = 0; v < trace.vertexCount(); v++) {
+			parent = trace.parent(v);
+			if (parent < 0)
+				continue;
+			Point fromPoint = points.get(parent), toPoint = points.get(v);
+			if ((trace.status(v) & trace.status(parent) & SearchTrace.ON_PATH) != 0)
+				canvas.add(RouteCanvas.PATH, fromPoint.getTranslateX(), fromPoint.getTranslateY(),
+						toPoint.getTranslateX(), toPoint.getTranslateY(), PATH_COLOR, SOLID_PATH_W, false);
+			else if (showProbe)
+				canvas.add(RouteCanvas.PROBES, fromPoint.getTranslateX(), fromPoint.getTranslateY(),
+						toPoint.getTranslateX(), toPoint.getTranslateY(), PROB_COLOR, PROBE_PATH_W, false);
+		}
 
-			// Main loop
-			while (!stack.isEmpty()) {
-				currPoint = stack.pop();
-				id = currPoint.id;
+		// Parents only ever point at points settled earlier, the bound is a guard
+		int hops = 0;
+		for (int v = trace.current(); v >= 0 && trace.parent(v) >= 0 && hops < trace.vertexCount(); hops++) {
+			Point tempPoint = points.get(v), prevPoint = points.get(trace.parent(v));
+			canvas.add(RouteCanvas.PATH, tempPoint.getTranslateX(), tempPoint.getTranslateY(),
+					prevPoint.getTranslateX(), prevPoint.getTranslateY(), PATH_COLOR, SOLID_PATH_W, false);
+			v = trace.parent(v);
+		}
+	}
 
-				// Reach goal
-				if (currPoint == endPoint) {
-					System.out.println("Found route");
-					break;
-				}
+	/**
+	 * Draws the engine's steps onto the main panel, paced by the clock. What a
+	 * step draws is worked out when it happens, so it can be replayed later.
+	 * Every event also goes to the trace recorder, if any.
+	 * 
+	 * @author Hackerry
+	 *
+	 */
+	private class SimulationListener implements RouteListener {
+		private final int algorithm;
+		private final SearchTrace.Recorder recorder;
 
-				// Add all unvisited neighbors to queue
-				for (int i = 0; i < matrix[id].length; i++) {
-					if (!points.get(i).isVisited && matrix[id][i] != Double.MAX_VALUE) {
-						neighborPoint = points.get(i);
-						stack.push(neighborPoint);
-
-						// To ensure every node is enqueued only once
-						neighborPoint.isVisited = true;
-						neighborPoint.prev = currPoint;
-
-						// Draw all lines to the neighbors
-						double endX = neighborPoint.getTranslateX();
-						double endY = neighborPoint.getTranslateY();
-						drawPathTo(currPoint.getTranslateX(), currPoint.getTranslateY(), endX, endY, PROB_COLOR,
-								PROBE_PATH_W, true);
-
-						// To better visualize probe process
-						try {
-							Thread.sleep(PROBE_DURATION);
-						} catch (Exception ex) {
-						}
-					}
-				}
+		SimulationListener(int algorithm, SearchTrace.Recorder recorder) {
+			this.algorithm = algorithm;
+			this.recorder = recorder;
+		}
 
-				try {
-					Thread.sleep(SLEEP_DURATION);
-				} catch (Exception e) {
-					return;
-				}
+		@Override
+		public void onExpand(int vertex, int[] prev) {
+			if (recorder != null)
+				recorder.onExpand(vertex, prev);
+
+			// Current path in consideration, prev changes as the engine goes on
+			ArrayList<Point> path = new ArrayList<>();
+			for (int v = vertex; v != -1; v = prev[v])
+				path.add(points.get(v));
+
+			clock.step(() -> {
+				// Replace current path lines
+				canvas.clear(RouteCanvas.PATH);
+				for (int i = 0; i < path.size() - 1; i++) {
+					Point tempPoint = path.get(i), prevPoint = path.get(i + 1);
+					drawPathTo(tempPoint.getTranslateX(), tempPoint.getTranslateY(), prevPoint.getTranslateX(),
+							prevPoint.getTranslateY(), PATH_COLOR, SOLID_PATH_W, false);
+				}
+			}, SHOW_PATH_DURATION);
+		}
 
-				cycle++;
+		@Override
+		public void onProbe(int from, int to, boolean discovered) {
+			if (recorder != null)
+				recorder.onProbe(from, to, discovered);
+
+			// Draw probe line if it's the first time being probed, BFS, DFS and CH always probe
+			Runnable draw = null;
+			if (discovered && (showProbe || algorithm == BFS || algorithm == DFS || algorithm == CH)) {
+				Point fromPoint = points.get(from), toPoint = points.get(to);
+				draw = () -> drawPathTo(fromPoint.getTranslateX(), fromPoint.getTranslateY(),
+						toPoint.getTranslateX(), toPoint.getTranslateY(), PROB_COLOR, PROBE_PATH_W, true);
 			}
 
-			// Unconnected graph
-			if (currPoint != endPoint) {
-				System.out.println("Graph is unconnected as far as DFS can tell");
-				setControlDisable(false);
-				return;
-			} else {
-				double weight = 0;
-				int hop = 0;
-				Stack<Point> path = new Stack<>();
-				while (currPoint.prev != null) {
-					path.push(currPoint);
-					weight += matrix[currPoint.id][currPoint.prev.id];
-					hop++;
-					currPoint = currPoint.prev;
-				}
-
-				// Add the starting vertex
-				path.push(currPoint);
-
-				// Add path in reverse order to panel
-				while (path.size() > 1) {
-					currPoint = path.pop();
-					String label = currPoint.label;
-					Platform.runLater(() -> {
-						sidePanel.appendText(label + "->\n");
-					});
+			// To better visualize probe process
+			clock.step(draw, PROBE_DURATION);
+		}
 
-					drawPathTo(currPoint.getTranslateX(), currPoint.getTranslateY(), path.peek().getTranslateX(),
-							path.peek().getTranslateY(), PATH_COLOR, SOLID_PATH_W, false);
-				}
+		@Override
+		public void onAdvance(int from, int to) {
+			if (recorder != null)
+				recorder.onAdvance(from, to);
 
-				currPoint = path.pop();
-				String label = currPoint.label;
-				double totalWeight = weight;
-				int totalHop = hop;
-				int totalCycle = cycle;
-				Platform.runLater(() -> {
-					sidePanel.appendText(label + "\n" + "Path total: " + totalWeight + "\nStop: " + totalHop
-							+ "\nCycles: " + totalCycle);
-				});
+			// Add this stop to list
+			Point fromPoint = points.get(from), toPoint = points.get(to);
+			String label = fromPoint.label;
+			clock.step(() -> {
+				bus.publish(() -> sidePanel.appendText(label + "->\n"));
 
-				setControlDisable(false);
-				log.info("Path found!");
-			}
-		});
+				// Visited next point
+				drawPathTo(fromPoint.getTranslateX(), fromPoint.getTranslateY(), toPoint.getTranslateX(),
+						toPoint.getTranslateY(), PATH_COLOR, SOLID_PATH_W, false);
+			}, 0);
+		}
 
-		simulation.start();
+		@Override
+		public void onCycleEnd(int cycle) {
+			clock.step(null, SLEEP_DURATION);
+		}
 	}
 
 	/**
-	 * Helper method to draw an edge between two points.
+	 * Helper method to draw an edge between two points. Segments are queued on
+	 * the canvas, which draws them on its next frame.
 	 * 
 	 * @param probe whether this is a explore path or a path that has been taken.
 	 */
 	private void drawPathTo(final double startX, final double startY, final double endX, final double endY, Color c,
 			double strokeWidth, boolean probe) {
-		// Draw line
-		Line line = new Line(startX, startY, startX, startY);
-		line.setStroke(c);
-		line.setStrokeWidth(strokeWidth);
-		if (probe)
-			probeLines.add(line);
-		else
-			pathLines.add(line);
-
-		if (animationOn) {
-			Timeline t = new Timeline();
-			KeyValue kv1 = new KeyValue(line.endXProperty(), endX), kv2 = new KeyValue(line.endYProperty(), endY);
-			KeyFrame kf1 = new KeyFrame(Duration.millis(ANIME_DURATION), kv1),
-					kf2 = new KeyFrame(Duration.millis(ANIME_DURATION), kv2);
-
-			t.getKeyFrames().addAll(kf1, kf2);
-			Platform.runLater(() -> {
-				mainPanel.getChildren().add(line);
-				if (probe)
-					line.toBack();
-				t.play();
-			});
-		} else {
-			Platform.runLater(() -> {
-				line.setEndX(endX);
-				line.setEndY(endY);
-				mainPanel.getChildren().add(line);
-				if (probe)
-					line.toBack();
-			});
-		}
+		canvas.add(probe ? RouteCanvas.PROBES : RouteCanvas.PATH, startX, startY, endX, endY, c, strokeWidth,
+				animationOn);
 	}
 
 	/**
@@ -1094,9 +714,10 @@ public class RouteSimulators extends Application {
 	 */
 	private void resetMainPanel() {
 		setControlDisable(true);
-		edgeList.clear();
-		pathLines.clear();
-		probeLines.clear();
+		closeTrace();
+		edgeEnds.clear();
+		for (int layer : new int[] { RouteCanvas.EDGES, RouteCanvas.PROBES, RouteCanvas.PATH })
+			canvas.clear(layer);
 		points.clear();
 		startPoint = null;
 		endPoint = null;
@@ -1104,7 +725,7 @@ public class RouteSimulators extends Application {
 		isChoosingEnd = false;
 
 		Platform.runLater(() -> {
-			mainPanel.getChildren().clear();
+			mainPanel.getChildren().setAll(canvas);
 			openFileButton.setDisable(false);
 		});
 	}
@@ -1124,15 +745,20 @@ public class RouteSimulators extends Application {
 	}
 
 	/**
-	 * Helper method to (un)disable all control areas.
+	 * Helper method to (un)disable all control areas. From the simulation
+	 * thread it goes through the event bus, only the last state counts.
 	 * 
 	 * @param stat disable or not
 	 */
 	private void setControlDisable(boolean stat) {
-		Platform.runLater(() -> {
+		Runnable update = () -> {
 			for (Control c : controls)
 				c.setDisable(stat);
-		});
+		};
+		if (Platform.isFxApplicationThread())
+			Platform.runLater(update);
+		else
+			bus.publish(CONTROLS_KEY, update);
 	}
 
 	/**
@@ -1152,10 +778,7 @@ public class RouteSimulators extends Application {
 		private String label;
 		private double x, y;
 		private int id;
-		private boolean isStart = false, isEnd = false, isVisited = false;
-		private Point prev;
-		private double weight;
-		private double estimateDist;
+		private boolean isStart = false, isEnd = false;
 
 		Point(double x, double y, String label, int id, Text infoText) {
 			this.x = x;
@@ -1165,9 +788,6 @@ public class RouteSimulators extends Application {
 			this.setCenterY(0);
 			this.setRadius(NORMAL_R);
 			this.label = label;
-			this.prev = null;
-			this.weight = Double.MAX_VALUE;
-			this.estimateDist = Double.MAX_VALUE;
 			this.setOnMouseEntered(e -> {
 				Platform.runLater(() -> {
 					infoText.setText(label);
@@ -1237,20 +857,4 @@ public class RouteSimulators extends Application {
 			});
 		}
 	}
-
-	private class DijkstraComparator implements Comparator<Point> {
-		@Override
-		public int compare(Point p1, Point p2) {
-			return p1.weight < p2.weight ? -1 : (p1.weight > p2.weight ? 1 : 0);
-		}
-	}
-
-	private class AStarComparator implements Comparator<Point> {
-		@Override
-		public int compare(Point p1, Point p2) {
-			double p1Weight = p1.weight + p1.estimateDist;
-			double p2Weight = p2.weight + p2.estimateDist;
-			return p1Weight < p2Weight ? -1 : (p1Weight > p2Weight ? 1 : 0);
-		}
-	}
 }
\ No newline at end of file
@@ -0,0 +1,202 @@
+import java.util.ArrayList;
+
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Spinner;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Font;
+import javafx.scene.text.Text;
+
+/**
+ * Paces a simulation thread instead of fixed sleeps, so a visualization can
+ * be sped up, slowed down or played back after the algorithm is done.
+ *
+ * Each step is what the UI shows for it and the delay it nominally takes.
+ * Three ways to play the steps:
+ * <ul>
+ * <li>Paced: every delay is divided by the speed multiplier, Turbo skips
+ * them.</li>
+ * <li>Steps per frame: delays are ignored and the thread waits a frame after
+ * every so many steps.</li>
+ * <li>Replay: the algorithm runs at full speed while its steps are recorded,
+ * then they are shown in one of the two ways above.</li>
+ * </ul>
+ * Speed and steps per frame may be changed while running, the replay mode is
+ * read when a run begins.
+ *
+ * @author Hackerry
+ *
+ */
+public class SimulationClock {
+	public static final double TURBO = Double.POSITIVE_INFINITY;
+	private static final long FRAME_NANOS = 1000000000L / 60;
+	// Shorter delays are added up rather than slept one by one
+	private static final long MIN_SLEEP_NANOS = 1000000;
+	private static final String[] SPEED_NAMES = { "0.25x", "0.5x", "1x", "2x", "4x", "10x", "100x", "Turbo" };
+	private static final double[] SPEEDS = { 0.25, 0.5, 1, 2, 4, 10, 100, TURBO };
+
+	private volatile double speed = 1;
+	private volatile int stepsPerFrame = 0;
+	private volatile boolean replay = false;
+
+	// Of the current run, only touched by the simulation thread
+	private final ArrayList<Step> recorded = new ArrayList<>();
+	private boolean recording = false;
+	private long owedNanos = 0;
+	private int stepsThisFrame = 0;
+
+	/**
+	 * @param speed multiplier of the step delays, TURBO for none
+	 */
+	public void setSpeed(double speed) {
+		if (!(speed > 0))
+			throw new IllegalArgumentException("Invalid speed " + speed);
+		this.speed = speed;
+	}
+
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * @param stepsPerFrame steps shown before waiting a frame, 0 to pace by the
+	 *                      step delays
+	 */
+	public void setStepsPerFrame(int stepsPerFrame) {
+		if (stepsPerFrame < 0)
+			throw new IllegalArgumentException("Invalid steps per frame " + stepsPerFrame);
+		this.stepsPerFrame = stepsPerFrame;
+	}
+
+	public int getStepsPerFrame() {
+		return stepsPerFrame;
+	}
+
+	/**
+	 * @param replay whether runs record their steps and show them when done
+	 */
+	public void setReplay(boolean replay) {
+		this.replay = replay;
+	}
+
+	public boolean isReplay() {
+		return replay;
+	}
+
+	/**
+	 * Start a run, called by the simulation thread before its first step.
+	 */
+	public void begin() {
+		recorded.clear();
+		recording = replay;
+		owedNanos = 0;
+		stepsThisFrame = 0;
+	}
+
+	/**
+	 * Show a step and wait for it, or record it during a replay run.
+	 *
+	 * @param show   what the UI shows for the step, may be null. It must not
+	 *               read state the algorithm changes later.
+	 * @param millis delay of the step at 1x
+	 */
+	public void step(Runnable show, long millis) {
+		if (recording)
+			recorded.add(new Step(show, millis));
+		else
+			play(show, millis);
+	}
+
+	/**
+	 * End a run, replaying the recorded steps if it was a replay run. Stops
+	 * early when the thread is interrupted, the interrupt is kept.
+	 */
+	public void finish() {
+		if (!recording)
+			return;
+		recording = false;
+		for (Step step : recorded) {
+			if (Thread.currentThread().isInterrupted())
+				break;
+			play(step.show, step.millis);
+		}
+		recorded.clear();
+	}
+
+	private void play(Runnable show, long millis) {
+		if (show != null)
+			show.run();
+
+		int perFrame = stepsPerFrame;
+		if (perFrame > 0) {
+			if (++stepsThisFrame >= perFrame) {
+				stepsThisFrame = 0;
+				sleep(FRAME_NANOS);
+			}
+			return;
+		}
+
+		double currSpeed = speed;
+		if (currSpeed == TURBO)
+			return;
+		owedNanos += (long) (millis * 1000000 / currSpeed);
+		if (owedNanos >= MIN_SLEEP_NANOS) {
+			sleep(owedNanos);
+			owedNanos = 0;
+		}
+	}
+
+	/**
+	 * Sleep that keeps an interrupt on the thread, so the algorithm stops at
+	 * its next check.
+	 */
+	private static void sleep(long nanos) {
+		try {
+			Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Speed, steps per frame and replay controls bound to this clock. They stay
+	 * usable during a run, a change of replay counts from the next run.
+	 */
+	public VBox createControls(double width) {
+		Font font = Font.font("Times New Roman", 16);
+
+		ComboBox<String> speedBox = new ComboBox<>();
+		speedBox.getItems().addAll(SPEED_NAMES);
+		speedBox.getSelectionModel().select("1x");
+		speedBox.setOnAction(e -> setSpeed(SPEEDS[speedBox.getSelectionModel().getSelectedIndex()]));
+		Text speedText = new Text("Speed: ");
+		speedText.setFont(font);
+		HBox speedRow = new HBox(5, speedText, speedBox);
+
+		Spinner<Integer> stepsSpinner = new Spinner<>(0, 100000, 0, 10);
+		stepsSpinner.setEditable(true);
+		stepsSpinner.setPrefWidth(width / 2);
+		stepsSpinner.valueProperty().addListener((o, old, value) -> setStepsPerFrame(value));
+		Text stepsText = new Text("Steps/frame: ");
+		stepsText.setFont(font);
+		HBox stepsRow = new HBox(5, stepsText, stepsSpinner);
+
+		CheckBox replayButton = new CheckBox("Run, then replay");
+		replayButton.setOnAction(e -> setReplay(replayButton.isSelected()));
+
+		VBox box = new VBox(5, speedRow, stepsRow, replayButton);
+		box.setPrefWidth(width);
+		return box;
+	}
+
+	private static class Step {
+		final Runnable show;
+		final long millis;
+
+		Step(Runnable show, long millis) {
+			this.show = show;
+			this.millis = millis;
+		}
+	}
+}
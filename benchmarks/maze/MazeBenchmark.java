@@ -0,0 +1,106 @@
+package maze;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of solving a square maze from start to end, with the
+ * sequential MazeSolver and with ParallelBfs on 1 to 8 threads. Mazes come
+ * from a seeded MazeGenerator.
+ *
+ * @author Hackerry
+ *
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MazeBenchmark {
+    private static final long SEED = 42;
+
+    @State(Scope.Benchmark)
+    public static class MazeState {
+        /**
+         * Cells per side.
+         */
+        @Param({ "1000", "4000", "10000" })
+        public int side;
+
+        /**
+         * A MazeGenerator name.
+         */
+        @Param({ "random" })
+        public String generator;
+
+        /**
+         * Percent of cells that are walls in random mazes.
+         */
+        @Param({ "0", "20", "35" })
+        public int wallPercent;
+
+        @Param({ "1", "2", "4", "8" })
+        public int threads;
+
+        MazeGrid grid;
+        MazeSolver solver;
+        ParallelBfs parallel;
+        ForkJoinPool pool;
+
+        @Setup(Level.Trial)
+        public void create() {
+            grid = new MazeGrid(side, side);
+            MazeGenerator mazes = new MazeGenerator(SEED);
+            mazes.setWallDensity(wallPercent / 100.0);
+            mazes.generate(MazeGenerator.generator(generator), grid);
+
+            solver = new MazeSolver(grid);
+            pool = new ForkJoinPool(threads);
+            parallel = new ParallelBfs(grid, pool);
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * One thread whatever the threads parameter, compare with threads=1 only.
+     */
+    @Benchmark
+    public boolean sequential(MazeState state) {
+        return state.solver.solve(MazeSolver.BFS, state.grid.getStart(), state.grid.getEnd(), null);
+    }
+
+    @Benchmark
+    public int parallel(MazeState state) {
+        return state.parallel.solve(state.grid.getStart(), state.grid.getEnd());
+    }
+
+    /**
+     * Any JMH command line option is accepted, e.g. -p side=4000 -p threads=4
+     * -p generator=kruskal.
+     */
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+                .include(MazeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
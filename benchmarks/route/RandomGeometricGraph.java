@@ -0,0 +1,84 @@
+package route;
+
+import java.util.Random;
+
+/**
+ * Generates random geometric graphs: points spread uniformly over a square,
+ * every pair closer than a radius joined by an undirected edge weighted by
+ * its length. The radius is picked for a given expected degree.
+ *
+ * @author Hackerry
+ *
+ */
+public class RandomGeometricGraph {
+	public static final double SIDE = 1000;
+	public static final double DEFAULT_DEGREE = 8;
+
+	private RandomGeometricGraph() {
+	}
+
+	public static CSRGraph generate(int n, long seed) {
+		return generate(n, DEFAULT_DEGREE, seed);
+	}
+
+	/**
+	 * @param n      number of vertices
+	 * @param degree expected number of neighbors per vertex
+	 * @param seed   random seed, same seed gives the same graph
+	 */
+	public static CSRGraph generate(int n, double degree, long seed) {
+		Random random = new Random(seed);
+		double[] x = new double[n], y = new double[n];
+		for (int i = 0; i < n; i++) {
+			x[i] = random.nextDouble() * SIDE;
+			y[i] = random.nextDouble() * SIDE;
+		}
+
+		// Expected neighbors = n * PI * r^2 / SIDE^2
+		double radius = SIDE * Math.sqrt(degree / (Math.PI * n));
+
+		// Bucket points into a grid of radius sized cells
+		int cells = Math.max(1, (int) (SIDE / radius));
+		double cellSize = SIDE / cells;
+		int[] cellStart = new int[cells * cells + 1];
+		int[] cellOf = new int[n];
+		for (int i = 0; i < n; i++) {
+			cellOf[i] = cell(x[i], cellSize, cells) * cells + cell(y[i], cellSize, cells);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cells * cells; c++)
+			cellStart[c + 1] += cellStart[c];
+		int[] fill = cellStart.clone();
+		int[] members = new int[n];
+		for (int i = 0; i < n; i++)
+			members[fill[cellOf[i]]++] = i;
+
+		// Join pairs within radius, only neighbor cells can hold them
+		CSRGraph.Builder builder = new CSRGraph.Builder(x, y);
+		double dist;
+		int cx, cy, c, j;
+		for (int i = 0; i < n; i++) {
+			cx = cellOf[i] / cells;
+			cy = cellOf[i] % cells;
+			for (int nx = Math.max(cx - 1, 0); nx <= Math.min(cx + 1, cells - 1); nx++) {
+				for (int ny = Math.max(cy - 1, 0); ny <= Math.min(cy + 1, cells - 1); ny++) {
+					c = nx * cells + ny;
+					for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+						j = members[k];
+						if (j <= i)
+							continue;
+						dist = CSRGraph.euclideanDist(x[i], y[i], x[j], y[j]);
+						if (dist <= radius)
+							builder.addUndirectedEdge(i, j, dist);
+					}
+				}
+			}
+		}
+
+		return builder.build();
+	}
+
+	private static int cell(double coordinate, double cellSize, int cells) {
+		return Math.min((int) (coordinate / cellSize), cells - 1);
+	}
+}
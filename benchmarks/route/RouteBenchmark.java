@@ -0,0 +1,162 @@
+package route;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * JMH benchmarks of the five route algorithms on the bundled point files and
+ * on random geometric graphs of 1k to 1M vertices. Queries run on the
+ * headless RoutingEngine, so there is no animation or sleeping.
+ *
+ * Every invocation answers the next of a fixed, seeded list of random
+ * (start, end) pairs.
+ *
+ * @author Hackerry
+ *
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RouteBenchmark {
+	private static final int QUERIES = 1024;
+	private static final long SEED = 42;
+
+	@State(Scope.Benchmark)
+	public static class GraphState {
+		/**
+		 * A point file, or rgg-N for a random geometric graph of N vertices.
+		 */
+		@Param({ "city.tsv", "ucsd.tsv", "rgg-1000", "rgg-10000", "rgg-100000", "rgg-1000000" })
+		public String graphName;
+
+		RouteGraph graph;
+		ContractionHierarchy hierarchy;
+		Landmarks landmarks;
+		AllPairs allPairs;
+		int[] starts = new int[QUERIES], ends = new int[QUERIES];
+
+		@Setup(Level.Trial)
+		public void load() throws IOException {
+			if (graphName.startsWith("rgg-"))
+				graph = RandomGeometricGraph.generate(Integer.parseInt(graphName.substring(4)), SEED);
+			else
+				graph = RouteGraph.read(new File(graphName));
+
+			Random random = new Random(SEED);
+			int n = graph.vertexCount();
+			for (int i = 0; i < QUERIES; i++) {
+				starts[i] = random.nextInt(n);
+				do {
+					ends[i] = random.nextInt(n);
+				} while (n > 1 && ends[i] == starts[i]);
+			}
+		}
+
+		/**
+		 * Contract the graph once for all CH engines, preprocessing is not
+		 * measured.
+		 */
+		synchronized ContractionHierarchy hierarchy() {
+			if (hierarchy == null)
+				hierarchy = ContractionHierarchy.build(graph);
+			return hierarchy;
+		}
+
+		/**
+		 * Landmark tables for all ALT engines, also not measured.
+		 */
+		synchronized Landmarks landmarks() {
+			if (landmarks == null)
+				landmarks = Landmarks.select(graph, Landmarks.DEFAULT_COUNT);
+			return landmarks;
+		}
+
+		/**
+		 * All pairs tables for all ALLPAIRS engines, also not measured. Graphs
+		 * over AllPairs.MAX_VERTICES points fail their setup and are skipped.
+		 */
+		synchronized AllPairs allPairs() {
+			if (allPairs == null)
+				allPairs = AllPairs.compute(graph);
+			return allPairs;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class EngineState {
+		@Param({ "ASTAR", "DIJKSTRA", "GREEDY", "BFS", "DFS", "BIDIJKSTRA", "BIASTAR", "CH", "ALT", "ALLPAIRS" })
+		public String algorithmName;
+
+		RoutingEngine engine;
+		int algorithm;
+		int next = 0;
+
+		@Setup(Level.Trial)
+		public void create(GraphState graphState) {
+			engine = new RoutingEngine(graphState.graph);
+			algorithm = RoutingEngine.parseAlgorithm(algorithmName);
+			if (algorithm == RoutingEngine.CH)
+				engine.setHierarchy(graphState.hierarchy());
+			else if (algorithm == RoutingEngine.ALT)
+				engine.setLandmarks(graphState.landmarks());
+			else if (algorithm == RoutingEngine.ALL_PAIRS)
+				engine.setAllPairs(graphState.allPairs());
+		}
+	}
+
+	/**
+	 * Queries per second.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public RouteResult throughput(GraphState graphState, EngineState engineState) {
+		return query(graphState, engineState);
+	}
+
+	/**
+	 * Sampled query latency, JMH reports the percentiles.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public RouteResult latency(GraphState graphState, EngineState engineState) {
+		return query(graphState, engineState);
+	}
+
+	private RouteResult query(GraphState graphState, EngineState engineState) {
+		int i = engineState.next;
+		engineState.next = (i + 1) % QUERIES;
+		// A* runs with an admissible estimate so every algorithm is measured
+		// on the query it would answer correctly
+		return engineState.engine.route(engineState.algorithm, graphState.starts[i], graphState.ends[i], 1, null);
+	}
+
+	/**
+	 * Run with the GC profiler attached, any JMH command line option is
+	 * accepted, e.g. -p graphName=ucsd.tsv -p algorithmName=ASTAR.
+	 */
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().parent(new CommandLineOptions(args))
+				.include(RouteBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+	}
+}
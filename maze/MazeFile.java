@@ -0,0 +1,291 @@
+package maze;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Maze files, in one of two formats picked by extension.
+ *
+ * Text files (.mz) are the visualizer's: a line "rows cols size", size being
+ * the pixels per cell or 0 to fit the canvas, then a line per row with a
+ * digit per cell, 0 open, 1 wall, 2 start and 3 end. An end that is also
+ * the start is lost.
+ *
+ * Binary files (.mzb) are little-endian: int magic, int version, int rows,
+ * int cols, long start cell, long end cell (-1 for none), then the walls of
+ * each row as (cols + 63) / 64 longs, bit c of word c / 64 set for a wall in
+ * column c.
+ *
+ * A Writer takes a row at a time, so mazes bigger than memory can be
+ * streamed into either format. Only mazes of up to MazeGrid.MAX_CELLS cells
+ * can be read back.
+ *
+ * @author Hackerry
+ *
+ */
+public class MazeFile {
+    public static final String TEXT_EXTENSION = ".mz", BINARY_EXTENSION = ".mzb";
+    static final int MAGIC = 0x425A414D, VERSION = 1, HEADER_SIZE = 32;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private MazeFile() {
+    }
+
+    /**
+     * Start writing a maze of the given size, the format picked by the
+     * file's extension.
+     *
+     * @param start the start cell, row * cols + col, -1 for none
+     * @param end   the end cell, -1 for none
+     */
+    public static Writer create(File file, int rows, int cols, long start, long end) throws IOException {
+        return new Writer(file, rows, cols, start, end, 0);
+    }
+
+    public static void write(MazeGrid grid, File file) throws IOException {
+        write(grid, file, 0);
+    }
+
+    /**
+     * @param cellSize pixels per cell kept in a text file, 0 to fit the
+     *                 canvas
+     */
+    public static void write(MazeGrid grid, File file, int cellSize) throws IOException {
+        int cols = grid.cols();
+        long[] walls = new long[(cols + 63) >>> 6];
+        try (Writer writer = new Writer(file, grid.rows(), cols, grid.getStart(), grid.getEnd(), cellSize)) {
+            for (int row = 0, base = 0; row < grid.rows(); row++, base += cols) {
+                Arrays.fill(walls, 0);
+                for (int col = 0; col < cols; col++) {
+                    if (grid.isWall(base + col))
+                        walls[col >>> 6] |= 1L << col;
+                }
+                writer.writeRow(walls);
+            }
+        }
+    }
+
+    /**
+     * Read a maze, the format picked by the file's extension.
+     *
+     * @throws IOException if the file can't be read, is malformed or has too
+     *                     many cells for a MazeGrid
+     */
+    public static MazeGrid read(File file) throws IOException {
+        return file.getName().endsWith(BINARY_EXTENSION) ? readBinary(file) : readText(file);
+    }
+
+    /**
+     * Pixels per cell a text file asks for, 0 to fit the canvas. Binary files
+     * keep none.
+     */
+    public static int cellSize(File file) throws IOException {
+        if (file.getName().endsWith(BINARY_EXTENSION))
+            return 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line = in.readLine();
+            String[] header = line == null ? new String[0] : line.trim().split("\\s+");
+            int size = header.length < 3 ? 0 : Integer.parseInt(header[2]);
+            if (size < 0)
+                throw new IOException("Invalid cell size " + size + ": " + file.getName());
+            return size;
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a maze file: " + file.getName());
+        }
+    }
+
+    private static MazeGrid readText(File file) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line = in.readLine();
+            String[] header = line == null ? new String[0] : line.trim().split("\\s+");
+            if (header.length < 2)
+                throw new IOException("Not a maze file: " + file.getName());
+            MazeGrid grid = create(file, Integer.parseInt(header[0]), Integer.parseInt(header[1]));
+
+            int cols = grid.cols();
+            for (int row = 0, base = 0; row < grid.rows(); row++, base += cols) {
+                line = in.readLine();
+                if (line == null || line.length() < cols)
+                    throw new IOException("Row " + row + " too short: " + file.getName());
+                for (int col = 0; col < cols; col++) {
+                    switch (line.charAt(col)) {
+                    case '0':
+                        break;
+                    case '1':
+                        grid.setWall(base + col, true);
+                        break;
+                    case '2':
+                        grid.setStart(base + col);
+                        break;
+                    case '3':
+                        grid.setEnd(base + col);
+                        break;
+                    default:
+                        throw new IOException("Invalid cell '" + line.charAt(col) + "' at row " + row + ", column "
+                                + col + ": " + file.getName());
+                    }
+                }
+            }
+            return grid;
+        } catch (NumberFormatException e) {
+            throw new IOException("Not a maze file: " + file.getName());
+        }
+    }
+
+    private static MazeGrid readBinary(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.limit(0);
+            fill(channel, buffer, HEADER_SIZE, file);
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a maze file: " + file.getName());
+            if (buffer.getInt() != VERSION)
+                throw new IOException("Unsupported maze file version: " + file.getName());
+            int rows = buffer.getInt(), cols = buffer.getInt();
+            long start = buffer.getLong(), end = buffer.getLong();
+            MazeGrid grid = create(file, rows, cols);
+            long cells = (long) rows * cols;
+            if (start < -1 || start >= cells || end < -1 || end >= cells)
+                throw new IOException("Invalid endpoints " + start + " -> " + end + ": " + file.getName());
+            grid.setStart((int) start);
+            grid.setEnd((int) end);
+
+            int words = (cols + 63) >>> 6;
+            long lastMask = (cols & 63) == 0 ? -1L : (1L << cols) - 1;
+            long bits;
+            for (int row = 0, base = 0; row < rows; row++, base += cols) {
+                for (int w = 0; w < words; w++) {
+                    fill(channel, buffer, 8, file);
+                    bits = buffer.getLong();
+                    // Bits past the last column would set walls in the next row
+                    if (w == words - 1 && (bits & ~lastMask) != 0)
+                        throw new IOException("Invalid row padding in row " + row + ": " + file.getName());
+                    for (; bits != 0; bits &= bits - 1)
+                        grid.setWall(base + (w << 6) + Long.numberOfTrailingZeros(bits), true);
+                }
+            }
+            return grid;
+        }
+    }
+
+    private static MazeGrid create(File file, int rows, int cols) throws IOException {
+        if (rows <= 0 || cols <= 0)
+            throw new IOException("Invalid maze size " + rows + " x " + cols + ": " + file.getName());
+        if ((long) rows * cols > MazeGrid.MAX_CELLS)
+            throw new IOException(rows + " x " + cols + " maze too large to load: " + file.getName());
+        return new MazeGrid(rows, cols);
+    }
+
+    /**
+     * Make sure the buffer has at least the given number of bytes left to
+     * get, reading more from the channel if not.
+     */
+    private static void fill(FileChannel channel, ByteBuffer buffer, int bytes, File file) throws IOException {
+        if (buffer.remaining() >= bytes)
+            return;
+        buffer.compact();
+        while (buffer.position() < bytes) {
+            if (channel.read(buffer) < 0)
+                throw new IOException("Truncated maze file: " + file.getName());
+        }
+        buffer.flip();
+    }
+
+    /**
+     * Writes a maze row by row, buffered. Closing checks that every row was
+     * written.
+     */
+    public static class Writer implements MazeRowWriter, Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private final boolean binary;
+        private final int rows, cols, words;
+        private final long start, end, lastMask;
+        private int row = 0;
+
+        private Writer(File file, int rows, int cols, long start, long end, int cellSize) throws IOException {
+            if (rows <= 0 || cols <= 0)
+                throw new IllegalArgumentException("Invalid maze size " + rows + " x " + cols);
+            if (cellSize < 0)
+                throw new IllegalArgumentException("Invalid cell size " + cellSize);
+            long cells = (long) rows * cols;
+            if (start < -1 || start >= cells || end < -1 || end >= cells)
+                throw new IllegalArgumentException("Invalid endpoints " + start + " -> " + end);
+            this.rows = rows;
+            this.cols = cols;
+            this.start = start;
+            this.end = end;
+            words = (cols + 63) >>> 6;
+            lastMask = (cols & 63) == 0 ? -1L : (1L << cols) - 1;
+            binary = file.getName().endsWith(BINARY_EXTENSION);
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            if (binary)
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(cols).putLong(start).putLong(end);
+            else
+                buffer.put((rows + " " + cols + " " + cellSize).getBytes(StandardCharsets.US_ASCII)).put(NEWLINE);
+        }
+
+        @Override
+        public void writeRow(long[] walls) throws IOException {
+            if (row == rows)
+                throw new IllegalStateException("All " + rows + " rows written");
+            if (binary) {
+                for (int w = 0; w < words; w++)
+                    ensure(8).putLong(w == words - 1 ? walls[w] & lastMask : walls[w]);
+            } else {
+                long first = (long) row * cols;
+                byte code;
+                for (int col = 0; col < cols; col++) {
+                    if (first + col == start)
+                        code = '2';
+                    else if (first + col == end)
+                        code = '3';
+                    else
+                        code = (walls[col >>> 6] & 1L << col) != 0 ? (byte) '1' : (byte) '0';
+                    ensure(1).put(code);
+                }
+                ensure(NEWLINE.length).put(NEWLINE);
+            }
+            row++;
+        }
+
+        private ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+            return buffer;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        /**
+         * @throws IOException also if fewer rows than the maze has were
+         *                     written
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+            if (row < rows)
+                throw new IOException("Only " + row + " of " + rows + " rows written");
+        }
+    }
+}
@@ -0,0 +1,408 @@
+package maze;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded maze generators, the same seed and size always give the same maze.
+ * Perfect mazes have rooms at even rows and columns, and open the walls
+ * between just enough of them that every room is reached from every other
+ * in exactly one way. With an even number of rows or columns the last one
+ * stays wall. They start in the top left room and end in the bottom right
+ * one.
+ * <ul>
+ * <li>Recursive backtracker: a random depth first walk, backing up on an
+ * explicit stack. Long winding corridors.</li>
+ * <li>Kruskal: walls opened in random order unless the rooms on both sides
+ * are joined already, tracked with union-find. Many short dead ends.</li>
+ * <li>Eller: a row of rooms at a time, only keeping which rooms of the row
+ * are joined, so any number of rows takes memory for one.</li>
+ * <li>Random: every cell a wall with the wall density, from the top left to
+ * the bottom right corner. Not a perfect maze and maybe unsolvable.</li>
+ * </ul>
+ * Eller and random mazes can be streamed a row at a time to a file, see
+ * main().
+ *
+ * @author Hackerry
+ *
+ */
+public class MazeGenerator {
+    public static final int BACKTRACKER = 0, KRUSKAL = 1, ELLER = 2, RANDOM = 3;
+    public static final double DEFAULT_WALL_DENSITY = 0.3;
+    private static final String[] NAMES = { "backtracker", "kruskal", "eller", "random" };
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final SplittableRandom random;
+    private double wallDensity = DEFAULT_WALL_DENSITY;
+    // Coin flips of Eller's algorithm, drawn 64 at a time
+    private long flips;
+    private int flipsLeft = 0;
+
+    public MazeGenerator(long seed) {
+        random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Name of a generator, as on the command line.
+     */
+    public static String generatorName(int generator) {
+        if (generator < 0 || generator >= NAMES.length)
+            throw new IllegalArgumentException("Unknown generator " + generator);
+        return NAMES[generator];
+    }
+
+    /**
+     * The generator of a name, ignoring case.
+     */
+    public static int generator(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equalsIgnoreCase(name))
+                return i;
+        }
+        throw new IllegalArgumentException("Unknown generator " + name);
+    }
+
+    /**
+     * Whether the generator can stream, it needs the whole maze in memory
+     * otherwise.
+     */
+    public static boolean canStream(int generator) {
+        return generator == ELLER || generator == RANDOM;
+    }
+
+    /**
+     * The end cell of the generator's mazes of a size.
+     */
+    public static long endCell(int generator, int rows, int cols) {
+        if (generator == RANDOM)
+            return (long) rows * cols - 1;
+        return (long) ((rows - 1) & ~1) * cols + ((cols - 1) & ~1);
+    }
+
+    public double getWallDensity() {
+        return wallDensity;
+    }
+
+    /**
+     * @param wallDensity chance of a cell being a wall in random mazes
+     */
+    public void setWallDensity(double wallDensity) {
+        if (!(wallDensity >= 0 && wallDensity <= 1))
+            throw new IllegalArgumentException("Invalid wall density " + wallDensity);
+        this.wallDensity = wallDensity;
+    }
+
+    /**
+     * Replace the walls, start and end of a grid with a new maze, forgetting
+     * its last search.
+     */
+    public void generate(int generator, MazeGrid grid) {
+        generatorName(generator);
+        grid.clearSearch();
+        switch (generator) {
+        case BACKTRACKER:
+            backtracker(grid);
+            break;
+        case KRUSKAL:
+            kruskal(grid);
+            break;
+        default:
+            try {
+                stream(generator, grid.rows(), grid.cols(), into(grid));
+            } catch (IOException e) {
+                // Writing into the grid doesn't throw
+                throw new IllegalStateException(e);
+            }
+        }
+        grid.setStart(0);
+        grid.setEnd((int) endCell(generator, grid.rows(), grid.cols()));
+    }
+
+    /**
+     * Generate a maze into a writer, a row at a time, in memory for a few
+     * rows only. Its start is cell 0 and its end endCell().
+     *
+     * @throws IllegalArgumentException if the generator can't stream
+     */
+    public void stream(int generator, int rows, int cols, MazeRowWriter out) throws IOException {
+        if (!canStream(generator))
+            throw new IllegalArgumentException(generatorName(generator) + " mazes can't be streamed");
+        if (rows <= 0 || cols <= 0)
+            throw new IllegalArgumentException("Invalid maze size " + rows + " x " + cols);
+        if (generator == ELLER)
+            eller(rows, cols, out);
+        else
+            randomWalls(rows, cols, out);
+    }
+
+    private void backtracker(MazeGrid grid) {
+        grid.fillWalls(true);
+        int[] stack = new int[INITIAL_CAPACITY], directions = new int[4];
+        int size = 0, cell, count, wall, room;
+        grid.setWall(0, false);
+        stack[size++] = 0;
+        while (size > 0) {
+            cell = stack[size - 1];
+            // Rooms still walled in haven't been reached
+            count = 0;
+            for (int direction = MazeGrid.UP; direction <= MazeGrid.LEFT; direction++) {
+                wall = grid.neighbour(cell, direction);
+                if (wall >= 0 && (room = grid.neighbour(wall, direction)) >= 0 && grid.isWall(room))
+                    directions[count++] = direction;
+            }
+            if (count == 0) {
+                size--;
+                continue;
+            }
+
+            int direction = directions[random.nextInt(count)];
+            wall = grid.neighbour(cell, direction);
+            room = grid.neighbour(wall, direction);
+            grid.setWall(wall, false);
+            grid.setWall(room, false);
+            if (size == stack.length)
+                stack = Arrays.copyOf(stack, size << 1);
+            stack[size++] = room;
+        }
+    }
+
+    private void kruskal(MazeGrid grid) {
+        grid.fillWalls(true);
+        int cols = grid.cols(), roomRows = (grid.rows() + 1) / 2, roomCols = (cols + 1) / 2;
+        int rooms = roomRows * roomCols;
+        // Walls between rooms side by side come first, then those between
+        // rooms above one another
+        int across = roomRows * (roomCols - 1);
+        int[] walls = new int[across + (roomRows - 1) * roomCols], sets = new int[rooms];
+        for (int i = 0; i < walls.length; i++)
+            walls[i] = i;
+        for (int i = walls.length - 1, j, temp; i > 0; i--) {
+            j = random.nextInt(i + 1);
+            temp = walls[i];
+            walls[i] = walls[j];
+            walls[j] = temp;
+        }
+        for (int room = 0; room < rooms; room++) {
+            sets[room] = room;
+            grid.setWall(roomCell(room, roomCols, cols), false);
+        }
+
+        int a, b, joins = 0;
+        for (int i = 0; i < walls.length && joins < rooms - 1; i++) {
+            if (walls[i] < across) {
+                a = walls[i] / (roomCols - 1) * roomCols + walls[i] % (roomCols - 1);
+                b = a + 1;
+            } else {
+                a = walls[i] - across;
+                b = a + roomCols;
+            }
+            int setA = find(sets, a), setB = find(sets, b);
+            if (setA == setB)
+                continue;
+            sets[setA] = setB;
+            joins++;
+            // The wall is halfway between the rooms
+            grid.setWall((roomCell(a, roomCols, cols) + roomCell(b, roomCols, cols)) >>> 1, false);
+        }
+    }
+
+    private static int roomCell(int room, int roomCols, int cols) {
+        return 2 * (room / roomCols) * cols + 2 * (room % roomCols);
+    }
+
+    /**
+     * Eller's algorithm. Each row of rooms joins some neighbours that aren't
+     * joined yet, all of them in the last row, then opens at least one
+     * passage down from every set of joined rooms. Rooms below a passage
+     * stay in its set, the others start their own. Sets are union-find over
+     * the columns of the row.
+     */
+    private void eller(int rows, int cols, MazeRowWriter out) throws IOException {
+        int roomRows = (rows + 1) / 2, roomCols = (cols + 1) / 2;
+        long[] line = new long[(cols + 63) >>> 6];
+        int[] sets = new int[roomCols], next = new int[roomCols], firstDown = new int[roomCols], temp;
+        boolean[] down = new boolean[roomCols], hasDown = new boolean[roomCols];
+        for (int col = 0; col < roomCols; col++)
+            sets[col] = col;
+
+        for (int row = 0; row < roomRows - 1; row++) {
+            joinAcross(sets, false, line, cols);
+            out.writeRow(line);
+            passagesDown(sets, down, hasDown, line, cols);
+            out.writeRow(line);
+            carryDown(sets, down, firstDown, next);
+            temp = sets;
+            sets = next;
+            next = temp;
+        }
+        joinAcross(sets, true, line, cols);
+        out.writeRow(line);
+        // An even number of rows ends with one of walls
+        if (2 * roomRows - 1 < rows) {
+            fillWalls(line, cols);
+            out.writeRow(line);
+        }
+    }
+
+    /**
+     * Open the rooms of a row into line, and the walls between those joined.
+     *
+     * @param all join every neighbour not joined yet
+     */
+    private void joinAcross(int[] sets, boolean all, long[] line, int cols) {
+        fillWalls(line, cols);
+        for (int col = 0; col < sets.length; col++)
+            open(line, 2 * col);
+        for (int col = 0, a, b; col < sets.length - 1; col++) {
+            a = find(sets, col);
+            b = find(sets, col + 1);
+            if (a != b && (all || flip())) {
+                // Under the left root, so joining along the row keeps every
+                // room next to its root
+                sets[b] = a;
+                open(line, 2 * col + 1);
+            }
+        }
+    }
+
+    /**
+     * Pick the passages down from a row into down and line, at random but
+     * at least the last one of every set.
+     */
+    private void passagesDown(int[] sets, boolean[] down, boolean[] hasDown, long[] line, int cols) {
+        Arrays.fill(hasDown, false);
+        for (int col = 0; col < sets.length; col++) {
+            down[col] = flip();
+            if (down[col])
+                hasDown[find(sets, col)] = true;
+        }
+        for (int col = sets.length - 1, root; col >= 0; col--) {
+            root = find(sets, col);
+            if (!hasDown[root]) {
+                down[col] = true;
+                hasDown[root] = true;
+            }
+        }
+        fillWalls(line, cols);
+        for (int col = 0; col < sets.length; col++) {
+            if (down[col])
+                open(line, 2 * col);
+        }
+    }
+
+    /**
+     * The sets of the next row into next. The first room below a set's
+     * passages is the root of its set.
+     */
+    private static void carryDown(int[] sets, boolean[] down, int[] firstDown, int[] next) {
+        Arrays.fill(firstDown, -1);
+        for (int col = 0, root; col < sets.length; col++) {
+            if (!down[col]) {
+                next[col] = col;
+                continue;
+            }
+            root = find(sets, col);
+            if (firstDown[root] < 0)
+                firstDown[root] = col;
+            next[col] = firstDown[root];
+        }
+    }
+
+    private boolean flip() {
+        if (flipsLeft == 0) {
+            flips = random.nextLong();
+            flipsLeft = 64;
+        }
+        flipsLeft--;
+        boolean heads = (flips & 1) != 0;
+        flips >>>= 1;
+        return heads;
+    }
+
+    private void randomWalls(int rows, int cols, MazeRowWriter out) throws IOException {
+        long[] line = new long[(cols + 63) >>> 6];
+        for (int row = 0; row < rows; row++) {
+            Arrays.fill(line, 0);
+            for (int col = 0; col < cols; col++) {
+                if (random.nextDouble() < wallDensity)
+                    line[col >>> 6] |= 1L << col;
+            }
+            if (row == 0)
+                open(line, 0);
+            if (row == rows - 1)
+                open(line, cols - 1);
+            out.writeRow(line);
+        }
+    }
+
+    /**
+     * Root of an element's set, halving the path on the way.
+     */
+    private static int find(int[] sets, int i) {
+        while (sets[i] != i) {
+            sets[i] = sets[sets[i]];
+            i = sets[i];
+        }
+        return i;
+    }
+
+    private static void fillWalls(long[] line, int cols) {
+        Arrays.fill(line, -1L);
+        if ((cols & 63) != 0)
+            line[line.length - 1] = (1L << cols) - 1;
+    }
+
+    private static void open(long[] line, int col) {
+        line[col >>> 6] &= ~(1L << col);
+    }
+
+    /**
+     * A writer setting the walls of a grid, row after row.
+     */
+    private static MazeRowWriter into(MazeGrid grid) {
+        return new MazeRowWriter() {
+            private int first = 0;
+
+            @Override
+            public void writeRow(long[] walls) {
+                for (int col = 0; col < grid.cols(); col++)
+                    grid.setWall(first + col, (walls[col >>> 6] & 1L << col) != 0);
+                first += grid.cols();
+            }
+        };
+    }
+
+    /**
+     * Driver method, writes a maze to a .mz or .mzb file. Eller and random
+     * mazes are streamed to it, so can be bigger than memory.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.err.println("Usage: MazeGenerator <backtracker|kruskal|eller|random> <rows> <cols> "
+                    + "<maze.mz|maze.mzb> [seed] [wall density]");
+            System.exit(1);
+        }
+
+        int generator = generator(args[0]), rows = Integer.parseInt(args[1]), cols = Integer.parseInt(args[2]);
+        File file = new File(args[3]);
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+        MazeGenerator mazes = new MazeGenerator(seed);
+        if (args.length > 5)
+            mazes.setWallDensity(Double.parseDouble(args[5]));
+
+        long begin = System.nanoTime();
+        if (canStream(generator)) {
+            try (MazeFile.Writer writer = MazeFile.create(file, rows, cols, 0, endCell(generator, rows, cols))) {
+                mazes.stream(generator, rows, cols, writer);
+            }
+        } else {
+            MazeGrid grid = new MazeGrid(rows, cols);
+            mazes.generate(generator, grid);
+            MazeFile.write(grid, file);
+        }
+        System.err.println(rows + " x " + cols + " " + NAMES[generator] + " maze, seed " + seed + ", in "
+                + (System.nanoTime() - begin) / 1000000 + " ms");
+    }
+}
@@ -0,0 +1,306 @@
+package maze;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * A rectangular maze of cells addressed by linear index, row * cols + col.
+ * Walls, visited cells, cells given a predecessor and cells on the path are
+ * bitsets, and each predecessor is the 2 bit direction it lies in, so a cell
+ * takes 6 bits instead of a Node object. Mazes of up to MAX_CELLS cells fit.
+ *
+ * Not synchronized. A search may write its flags while another thread reads
+ * them for drawing, which then sees some of them late. Only the package's
+ * parallel search writes from several threads, through claim().
+ *
+ * @author Hackerry
+ *
+ */
+public class MazeGrid {
+    public static final int UP = 0, RIGHT = 1, DOWN = 2, LEFT = 3;
+    public static final int MAX_CELLS = Integer.MAX_VALUE;
+    // Atomic access to the words of a bitset, for searches on several threads
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int rows, cols, cells;
+    private final long[] walls, visited, seen, path;
+    // 32 directions per long, only meaningful where seen is set
+    private final long[] prev;
+    private int start = -1, end = -1;
+
+    /**
+     * An empty maze, no walls and no start or end.
+     *
+     * @throws IllegalArgumentException if a side isn't positive or there are
+     *                                  more than MAX_CELLS cells
+     */
+    public MazeGrid(int rows, int cols) {
+        if (rows <= 0 || cols <= 0 || (long) rows * cols > MAX_CELLS)
+            throw new IllegalArgumentException("Invalid maze size " + rows + " x " + cols);
+        this.rows = rows;
+        this.cols = cols;
+        cells = rows * cols;
+        int words = (int) ((cells + 63L) >>> 6);
+        walls = new long[words];
+        visited = new long[words];
+        seen = new long[words];
+        path = new long[words];
+        prev = new long[(int) ((cells + 31L) >>> 5)];
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public int cellCount() {
+        return cells;
+    }
+
+    public int index(int row, int col) {
+        return row * cols + col;
+    }
+
+    public int row(int cell) {
+        return cell / cols;
+    }
+
+    public int col(int cell) {
+        return cell % cols;
+    }
+
+    /**
+     * The cell next to a cell in a direction, -1 past the border.
+     */
+    public int neighbour(int cell, int direction) {
+        switch (direction) {
+        case UP:
+            return cell >= cols ? cell - cols : -1;
+        case RIGHT:
+            return cell % cols < cols - 1 ? cell + 1 : -1;
+        case DOWN:
+            return cell < cells - cols ? cell + cols : -1;
+        case LEFT:
+            return cell % cols > 0 ? cell - 1 : -1;
+        default:
+            throw new IllegalArgumentException("Invalid direction " + direction);
+        }
+    }
+
+    public boolean isWall(int cell) {
+        return get(walls, cell);
+    }
+
+    public void setWall(int cell, boolean wall) {
+        set(walls, cell, wall);
+    }
+
+    public void toggleWall(int cell) {
+        walls[cell >>> 6] ^= 1L << cell;
+    }
+
+    /**
+     * Make every cell a wall, or none.
+     */
+    void fillWalls(boolean wall) {
+        Arrays.fill(walls, wall ? -1L : 0);
+        if (wall && (cells & 63) != 0)
+            walls[walls.length - 1] = (1L << cells) - 1;
+    }
+
+    public boolean isVisited(int cell) {
+        return get(visited, cell);
+    }
+
+    public void setVisited(int cell, boolean isVisited) {
+        set(visited, cell, isVisited);
+    }
+
+    public boolean isOnPath(int cell) {
+        return get(path, cell);
+    }
+
+    public void setOnPath(int cell, boolean onPath) {
+        set(path, cell, onPath);
+    }
+
+    public boolean hasPrev(int cell) {
+        return get(seen, cell);
+    }
+
+    /**
+     * The cell a search reached this one from, -1 if none.
+     */
+    public int getPrev(int cell) {
+        return hasPrev(cell) ? neighbour(cell, prevDirection(cell)) : -1;
+    }
+
+    /**
+     * Direction of the predecessor, only meaningful if hasPrev.
+     */
+    public int prevDirection(int cell) {
+        return (int) (prev[cell >>> 5] >>> ((cell & 31) << 1)) & 3;
+    }
+
+    /**
+     * @param from a cell next to this one, or -1 to clear the predecessor
+     * @throws IllegalArgumentException if from isn't next to the cell
+     */
+    public void setPrev(int cell, int from) {
+        if (from < 0) {
+            set(seen, cell, false);
+            return;
+        }
+        for (int direction = UP; direction <= LEFT; direction++) {
+            if (neighbour(cell, direction) == from) {
+                setPrevDirection(cell, direction);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("Cell " + from + " isn't next to " + cell);
+    }
+
+    /**
+     * Set the predecessor to the neighbour in a direction, which must exist.
+     */
+    public void setPrevDirection(int cell, int direction) {
+        int shift = (cell & 31) << 1;
+        prev[cell >>> 5] = prev[cell >>> 5] & ~(3L << shift) | (long) direction << shift;
+        set(seen, cell, true);
+    }
+
+    /**
+     * Whether a search may still push the cell: not a wall, not visited and
+     * not reached yet. One word of each bitset is read.
+     */
+    boolean isFree(int cell) {
+        int word = cell >>> 6;
+        return ((walls[word] | visited[word] | seen[word]) & 1L << cell) == 0;
+    }
+
+    /**
+     * Mark the cell visited, reached from its neighbour in a direction, unless
+     * it is visited already. Safe to call from several threads at once, as
+     * long as none sets flags another way meanwhile.
+     *
+     * @return whether this call marked it
+     */
+    boolean claim(int cell, int direction) {
+        long bit = 1L << cell;
+        if (((long) WORDS.getAndBitwiseOr(visited, cell >>> 6, bit) & bit) != 0)
+            return false;
+        // Predecessors were cleared with the search, so the bits can be or-ed in
+        WORDS.getAndBitwiseOr(prev, cell >>> 5, (long) direction << ((cell & 31) << 1));
+        WORDS.getAndBitwiseOr(seen, cell >>> 6, bit);
+        return true;
+    }
+
+    /**
+     * The cells of a bitset word that are neither walls nor visited. Bits
+     * past the last cell are set too.
+     */
+    long unvisitedWord(int word) {
+        return ~(walls[word] | visited[word]);
+    }
+
+    /**
+     * The cells from the first one without a predecessor to the given one,
+     * following predecessors back.
+     */
+    public int[] pathTo(int cell) {
+        int length = 1;
+        for (int curr = cell; hasPrev(curr); curr = getPrev(curr))
+            length++;
+        int[] path = new int[length];
+        for (int i = length - 1, curr = cell; i >= 0; i--, curr = getPrev(curr))
+            path[i] = curr;
+        return path;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    /**
+     * @param start the start cell, -1 for none
+     */
+    public void setStart(int start) {
+        this.start = start;
+    }
+
+    public boolean isStart(int cell) {
+        return cell == start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * @param end the end cell, -1 for none
+     */
+    public void setEnd(int end) {
+        this.end = end;
+    }
+
+    public boolean isEnd(int cell) {
+        return cell == end;
+    }
+
+    /**
+     * Forget the visited cells, predecessors and path of the last search.
+     */
+    public void clearSearch() {
+        Arrays.fill(visited, 0);
+        Arrays.fill(seen, 0);
+        Arrays.fill(prev, 0);
+        Arrays.fill(path, 0);
+    }
+
+    /**
+     * Cells that aren't walls, the vertices of the maze as a graph.
+     */
+    public int openCount() {
+        int count = cells;
+        for (long word : walls)
+            count -= Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * Moves between neighbouring open cells, both ways, the edges of the maze
+     * as a graph.
+     */
+    public long edgeCount() {
+        long count = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (isWall(cell))
+                continue;
+            if (cell % cols < cols - 1 && !isWall(cell + 1))
+                count += 2;
+            if (cell < cells - cols && !isWall(cell + cols))
+                count += 2;
+        }
+        return count;
+    }
+
+    private static boolean get(long[] bits, int i) {
+        return (bits[i >>> 6] & 1L << i) != 0;
+    }
+
+    private static void set(long[] bits, int i, boolean value) {
+        if (value)
+            bits[i >>> 6] |= 1L << i;
+        else
+            bits[i >>> 6] &= ~(1L << i);
+    }
+
+    @Override
+    public String toString() {
+        return rows + " x " + cols + " maze";
+    }
+}
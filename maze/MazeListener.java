@@ -0,0 +1,25 @@
+package maze;
+
+/**
+ * Subscriber of the step events a MazeSolver emits while searching. All
+ * callbacks run on the searching thread and default to doing nothing.
+ *
+ * @author Hackerry
+ *
+ */
+public interface MazeListener {
+    /**
+     * A cell was taken off the frontier and marked visited.
+     */
+    default void onSettle(int cell) {
+    }
+
+    /**
+     * A cell was reached for the first time and put on the frontier.
+     *
+     * @param from     the settled cell it was reached from
+     * @param frontier cells on the frontier after pushing it
+     */
+    default void onPush(int from, int cell, int frontier) {
+    }
+}
@@ -0,0 +1,18 @@
+package maze;
+
+import java.io.IOException;
+
+/**
+ * Receives a maze a row at a time, top to bottom, so a generator can hand
+ * it to a file without the whole maze ever being in memory.
+ *
+ * @author Hackerry
+ *
+ */
+public interface MazeRowWriter {
+    /**
+     * @param walls bit c of word c / 64 is set if column c is a wall. Only
+     *              valid during the call, the array is reused.
+     */
+    void writeRow(long[] walls) throws IOException;
+}
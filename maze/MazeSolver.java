@@ -0,0 +1,609 @@
+package maze;
+
+import java.util.Arrays;
+
+/**
+ * Searches over a MazeGrid without allocating per step:
+ * <ul>
+ * <li>BFS and DFS, with an int[] of cell indices as frontier, a ring buffer
+ * for BFS and a stack for DFS.</li>
+ * <li>A* with the Manhattan distance to the end, on a binary heap of
+ * cells.</li>
+ * <li>Jump point search, A* over the cells where a shortest path may have
+ * to turn. Paths go sideways first and turn from up or down to sideways
+ * only past the corner of a wall, so straight runs through open space are
+ * jumped over instead of pushed.</li>
+ * <li>Bidirectional BFS, a level at a time from whichever end has the
+ * smaller frontier, until the two meet.</li>
+ * </ul>
+ * Buffers are kept between runs and only grown when full. Neighbours are
+ * expanded up, right, down, left, and searches leave their visited cells
+ * and predecessors in the grid, every cell of the path included.
+ *
+ * Not thread safe, use one solver per thread and grid.
+ *
+ * @author Hackerry
+ *
+ */
+public class MazeSolver {
+    public static final int BFS = 0, DFS = 1, ASTAR = 2, JPS = 3, BIDIRECTIONAL_BFS = 4;
+    private static final String[] NAMES = { "bfs", "dfs", "astar", "jps", "bibfs" };
+    private static final int INITIAL_CAPACITY = 1024, MAX_CAPACITY = 1 << 30;
+    private static final MazeListener NO_LISTENER = new MazeListener() {
+    };
+
+    private final MazeGrid grid;
+    private int[] frontier = new int[INITIAL_CAPACITY];
+    // Ring buffer of BFS: next cell to take and number of cells in it
+    private int head, size;
+    // A* and JPS: best distance found to each cell, made when first needed,
+    // and a heap of cells ordered by f then larger g, keys packed as
+    // f << 32 | ~g. Cells are pushed again when their distance drops and
+    // the stale entries skipped.
+    private int[] distance;
+    // JPS: directions each cell was pushed from at its best distance, 4 bits
+    // per cell
+    private long[] arrivals;
+    private long[] heapKeys = new long[INITIAL_CAPACITY];
+    private int[] heapCells = new int[INITIAL_CAPACITY], heapParents = new int[INITIAL_CAPACITY];
+    private int end, endRow, endCol;
+    private boolean jumping;
+    // Bidirectional BFS: levels of both sides, the cells reached from the end
+    // and the direction each was reached from, made when first needed
+    private int[] forward, forwardNext, backward, backwardNext;
+    private long[] backwardSeen, backwardPrev;
+    // Counts of the last run
+    private long settled, relaxed, pushes, pops, skippedPops;
+    private int peakFrontier;
+
+    public MazeSolver(MazeGrid grid) {
+        this.grid = grid;
+    }
+
+    public MazeGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Short name of an algorithm, as used in metrics.
+     */
+    public static String algorithmName(int algorithm) {
+        if (algorithm < 0 || algorithm >= NAMES.length)
+            throw new IllegalArgumentException("Unknown algorithm " + algorithm);
+        return NAMES[algorithm];
+    }
+
+    /**
+     * Search from start to end, forgetting the last search of the grid first.
+     *
+     * @param algorithm BFS, DFS, ASTAR, JPS or BIDIRECTIONAL_BFS
+     * @param listener  receives step events, may be null
+     * @return whether end was reached. Its predecessors lead back to start
+     *         then, along a shortest path unless the search was DFS. False if
+     *         unreachable or the thread got interrupted.
+     */
+    public boolean solve(int algorithm, int start, int end, MazeListener listener) {
+        if (algorithm < 0 || algorithm >= NAMES.length)
+            throw new IllegalArgumentException("Unknown algorithm " + algorithm);
+        if (start < 0 || start >= grid.cellCount() || end < 0 || end >= grid.cellCount())
+            throw new IllegalArgumentException("Invalid endpoints " + start + " -> " + end);
+        if (listener == null)
+            listener = NO_LISTENER;
+
+        grid.clearSearch();
+        settled = relaxed = pops = skippedPops = 0;
+        pushes = 1;
+        peakFrontier = 1;
+        switch (algorithm) {
+        case ASTAR:
+        case JPS:
+            return bestFirst(algorithm == JPS, start, end, listener);
+        case BIDIRECTIONAL_BFS:
+            return bidirectional(start, end, listener);
+        default:
+            return firstSearch(algorithm == BFS, start, end, listener);
+        }
+    }
+
+    private boolean firstSearch(boolean breadthFirst, int start, int end, MazeListener listener) {
+        head = 0;
+        size = 0;
+        push(start);
+
+        int cols = grid.cols(), cells = grid.cellCount(), curr, col, n;
+        while (size > 0) {
+            curr = breadthFirst ? pollFirst() : pollLast();
+            pops++;
+            if (curr == end)
+                return true;
+
+            grid.setVisited(curr, true);
+            settled++;
+            listener.onSettle(curr);
+
+            col = curr % cols;
+            if (curr >= cols) {
+                relaxed++;
+                n = curr - cols;
+                if (grid.isFree(n)) {
+                    grid.setPrevDirection(n, MazeGrid.DOWN);
+                    reach(curr, n, listener);
+                }
+            }
+            if (col < cols - 1) {
+                relaxed++;
+                n = curr + 1;
+                if (grid.isFree(n)) {
+                    grid.setPrevDirection(n, MazeGrid.LEFT);
+                    reach(curr, n, listener);
+                }
+            }
+            if (curr < cells - cols) {
+                relaxed++;
+                n = curr + cols;
+                if (grid.isFree(n)) {
+                    grid.setPrevDirection(n, MazeGrid.UP);
+                    reach(curr, n, listener);
+                }
+            }
+            if (col > 0) {
+                relaxed++;
+                n = curr - 1;
+                if (grid.isFree(n)) {
+                    grid.setPrevDirection(n, MazeGrid.RIGHT);
+                    reach(curr, n, listener);
+                }
+            }
+
+            if (Thread.currentThread().isInterrupted())
+                return false;
+        }
+        return false;
+    }
+
+    private void reach(int from, int cell, MazeListener listener) {
+        push(cell);
+        pushes++;
+        if (size > peakFrontier)
+            peakFrontier = size;
+        listener.onPush(from, cell, size);
+    }
+
+    /**
+     * Add a cell after the last one, growing the buffer if full. BFS takes
+     * from the front of the ring and DFS from the back, which is this end.
+     */
+    private void push(int cell) {
+        if (size == frontier.length)
+            grow();
+        frontier[(head + size++) & (frontier.length - 1)] = cell;
+    }
+
+    private int pollFirst() {
+        int cell = frontier[head];
+        head = (head + 1) & (frontier.length - 1);
+        size--;
+        return cell;
+    }
+
+    private int pollLast() {
+        return frontier[(head + --size) & (frontier.length - 1)];
+    }
+
+    /**
+     * Double the buffer, unrolling the ring so it starts at 0.
+     */
+    private void grow() {
+        if (frontier.length == MAX_CAPACITY)
+            throw new IllegalStateException("Frontier of more than " + MAX_CAPACITY + " cells");
+        int[] larger = new int[frontier.length << 1];
+        int first = Math.min(size, frontier.length - head);
+        System.arraycopy(frontier, head, larger, 0, first);
+        System.arraycopy(frontier, 0, larger, first, size - first);
+        frontier = larger;
+        head = 0;
+    }
+
+    /**
+     * A*, or jump point search, where the cells pushed are jump points and
+     * the cells between those on the path get their predecessors once the
+     * end is reached.
+     */
+    private boolean bestFirst(boolean jump, int start, int end, MazeListener listener) {
+        if (distance == null)
+            distance = new int[grid.cellCount()];
+        Arrays.fill(distance, Integer.MAX_VALUE);
+        if (jump) {
+            if (arrivals == null)
+                arrivals = new long[(int) ((grid.cellCount() + 15L) >>> 4)];
+            else
+                Arrays.fill(arrivals, 0);
+        }
+        this.end = end;
+        jumping = jump;
+        endRow = grid.row(end);
+        endCol = grid.col(end);
+        size = 0;
+        distance[start] = 0;
+        offer(start, start, 0);
+
+        int cols = grid.cols(), cells = grid.cellCount(), curr, parent, g, col;
+        while (size > 0) {
+            curr = heapCells[0];
+            parent = heapParents[0];
+            g = ~(int) heapKeys[0];
+            poll();
+            pops++;
+            if (g > distance[curr] || grid.isVisited(curr) && !jump) {
+                skippedPops++;
+                continue;
+            }
+            if (grid.isVisited(curr)) {
+                // Reached again as near, but in another direction, which
+                // the successors of a jump point depend on
+                jumpFrom(curr, travel(parent, curr), g, listener);
+                continue;
+            }
+            if (curr != start)
+                grid.setPrevDirection(curr, opposite(travel(parent, curr)));
+            if (curr == end) {
+                if (jump)
+                    fillPath(start, end);
+                return true;
+            }
+
+            grid.setVisited(curr, true);
+            settled++;
+            listener.onSettle(curr);
+
+            if (jump) {
+                jumpFrom(curr, curr == start ? -1 : travel(parent, curr), g, listener);
+            } else {
+                col = curr % cols;
+                if (curr >= cols) {
+                    relaxed++;
+                    relax(curr, curr - cols, g + 1, listener);
+                }
+                if (col < cols - 1) {
+                    relaxed++;
+                    relax(curr, curr + 1, g + 1, listener);
+                }
+                if (curr < cells - cols) {
+                    relaxed++;
+                    relax(curr, curr + cols, g + 1, listener);
+                }
+                if (col > 0) {
+                    relaxed++;
+                    relax(curr, curr - 1, g + 1, listener);
+                }
+            }
+
+            if (Thread.currentThread().isInterrupted())
+                return false;
+        }
+        return false;
+    }
+
+    /**
+     * Push the jump points reached from a settled one.
+     *
+     * @param travel direction the jump point was reached in, -1 for the start
+     */
+    private void jumpFrom(int cell, int travel, int g, MazeListener listener) {
+        for (int direction = MazeGrid.UP; direction <= MazeGrid.LEFT; direction++) {
+            if (travel >= 0 && direction == opposite(travel))
+                continue;
+            // From up or down go on straight, or sideways past a wall corner
+            if ((travel == MazeGrid.UP || travel == MazeGrid.DOWN) && direction != travel
+                    && !forced(cell, travel, direction))
+                continue;
+            int point = jump(cell, direction);
+            if (point >= 0)
+                relax(cell, point, g + Math.abs(grid.row(point) - grid.row(cell))
+                        + Math.abs(grid.col(point) - grid.col(cell)), listener);
+        }
+    }
+
+    /**
+     * The next jump point from a cell in a direction, -1 if a wall or the
+     * border comes first. Up and down stop at the end or a cell with a
+     * forced side; sideways stops at the end or a cell from which up or down
+     * finds a jump point.
+     */
+    private int jump(int cell, int direction) {
+        boolean vertical = direction == MazeGrid.UP || direction == MazeGrid.DOWN;
+        int next;
+        while (true) {
+            next = grid.neighbour(cell, direction);
+            if (next < 0 || grid.isWall(next))
+                return -1;
+            relaxed++;
+            if (next == end)
+                return next;
+            if (vertical) {
+                if (forced(next, direction, MazeGrid.LEFT) || forced(next, direction, MazeGrid.RIGHT))
+                    return next;
+            } else if (jump(next, MazeGrid.UP) >= 0 || jump(next, MazeGrid.DOWN) >= 0) {
+                return next;
+            }
+            cell = next;
+        }
+    }
+
+    /**
+     * Whether a cell reached going up or down has to turn to a side: that
+     * side is open but the side of the cell before it isn't, so no path
+     * could have gone sideways earlier.
+     */
+    private boolean forced(int cell, int travel, int side) {
+        int open = grid.neighbour(cell, side);
+        if (open < 0 || grid.isWall(open))
+            return false;
+        int behind = grid.neighbour(grid.neighbour(cell, opposite(travel)), side);
+        return behind < 0 || grid.isWall(behind);
+    }
+
+    /**
+     * Push the cell if reached nearer than before, or for JPS as near from
+     * a direction it wasn't reached from yet.
+     */
+    private void relax(int from, int cell, int g, MazeListener listener) {
+        if (g > distance[cell] || grid.isWall(cell))
+            return;
+        if (jumping) {
+            int shift = (cell & 15) << 2;
+            long bit = 1L << (travel(from, cell) + shift);
+            if (g < distance[cell])
+                arrivals[cell >>> 4] &= ~(15L << shift);
+            else if ((arrivals[cell >>> 4] & bit) != 0)
+                return;
+            arrivals[cell >>> 4] |= bit;
+        } else if (g == distance[cell]) {
+            return;
+        }
+        distance[cell] = g;
+        offer(cell, from, g);
+        pushes++;
+        if (size > peakFrontier)
+            peakFrontier = size;
+        listener.onPush(from, cell, size);
+    }
+
+    /**
+     * Give the cells between the jump points of the path to the end their
+     * predecessors, settled jump points only have one. Going back from a
+     * jump point, any settled cell as much nearer as it is steps away does
+     * for the one before it. The cells passed were maybe settled from
+     * elsewhere, but are only read before being written.
+     */
+    private void fillPath(int start, int end) {
+        int direction, from, steps;
+        for (int curr = end; curr != start; curr = from) {
+            direction = grid.prevDirection(curr);
+            from = curr;
+            steps = 0;
+            do {
+                from = grid.neighbour(from, direction);
+                steps++;
+            } while (from != start && !(grid.isVisited(from) && distance[from] == distance[curr] - steps));
+            for (int cell = curr; cell != from; cell = grid.neighbour(cell, direction))
+                grid.setPrevDirection(cell, direction);
+        }
+    }
+
+    /**
+     * Direction of a straight line from one cell to another.
+     */
+    private int travel(int from, int cell) {
+        if (grid.row(from) == grid.row(cell))
+            return cell > from ? MazeGrid.RIGHT : MazeGrid.LEFT;
+        return cell > from ? MazeGrid.DOWN : MazeGrid.UP;
+    }
+
+    private static int opposite(int direction) {
+        return (direction + 2) & 3;
+    }
+
+    private void offer(int cell, int parent, int g) {
+        if (size == heapKeys.length) {
+            if (size == MAX_CAPACITY)
+                throw new IllegalStateException("Frontier of more than " + MAX_CAPACITY + " cells");
+            heapKeys = Arrays.copyOf(heapKeys, size << 1);
+            heapCells = Arrays.copyOf(heapCells, size << 1);
+            heapParents = Arrays.copyOf(heapParents, size << 1);
+        }
+        // f fits 32 bits as both terms are under MAX_CELLS
+        long f = (long) g + Math.abs(grid.row(cell) - endRow) + Math.abs(grid.col(cell) - endCol);
+        long key = f << 32 | (~g & 0xFFFFFFFFL);
+        int i = size++, parentSlot;
+        while (i > 0 && heapKeys[parentSlot = (i - 1) >>> 1] > key) {
+            heapKeys[i] = heapKeys[parentSlot];
+            heapCells[i] = heapCells[parentSlot];
+            heapParents[i] = heapParents[parentSlot];
+            i = parentSlot;
+        }
+        heapKeys[i] = key;
+        heapCells[i] = cell;
+        heapParents[i] = parent;
+    }
+
+    /**
+     * Remove the top of the heap.
+     */
+    private void poll() {
+        if (--size == 0)
+            return;
+        long key = heapKeys[size];
+        int i = 0, child;
+        while ((child = 2 * i + 1) < size) {
+            if (child + 1 < size && heapKeys[child + 1] < heapKeys[child])
+                child++;
+            if (heapKeys[child] >= key)
+                break;
+            heapKeys[i] = heapKeys[child];
+            heapCells[i] = heapCells[child];
+            heapParents[i] = heapParents[child];
+            i = child;
+        }
+        heapKeys[i] = key;
+        heapCells[i] = heapCells[size];
+        heapParents[i] = heapParents[size];
+    }
+
+    /**
+     * BFS from both ends. Stopping at the first cell reached from both is
+     * enough for a shortest path, as the sides were disjoint before the
+     * level that reached it. The predecessors of the end's side are then
+     * turned around to lead from the end back to that cell.
+     */
+    private boolean bidirectional(int start, int end, MazeListener listener) {
+        if (start == end)
+            return true;
+        int words = (int) ((grid.cellCount() + 63L) >>> 6);
+        if (backwardSeen == null) {
+            backwardSeen = new long[words];
+            backwardPrev = new long[(int) ((grid.cellCount() + 31L) >>> 5)];
+            forward = new int[INITIAL_CAPACITY];
+            forwardNext = new int[INITIAL_CAPACITY];
+            backward = new int[INITIAL_CAPACITY];
+            backwardNext = new int[INITIAL_CAPACITY];
+        } else {
+            Arrays.fill(backwardSeen, 0);
+        }
+        backwardSeen[end >>> 6] |= 1L << end;
+        forward[0] = start;
+        backward[0] = end;
+        pushes = 2;
+        peakFrontier = 2;
+
+        int forwardSize = 1, backwardSize = 1, nextSize, curr, n, meet = -1;
+        boolean fromStart;
+        int[] temp;
+        while (forwardSize > 0 && backwardSize > 0) {
+            fromStart = forwardSize <= backwardSize;
+            int[] level = fromStart ? forward : backward;
+            int levelSize = fromStart ? forwardSize : backwardSize, otherSize = fromStart ? backwardSize : forwardSize;
+            nextSize = 0;
+            for (int i = 0; i < levelSize && meet < 0; i++) {
+                curr = level[i];
+                pops++;
+                grid.setVisited(curr, true);
+                settled++;
+                listener.onSettle(curr);
+
+                for (int direction = MazeGrid.UP; direction <= MazeGrid.LEFT; direction++) {
+                    n = grid.neighbour(curr, direction);
+                    if (n < 0)
+                        continue;
+                    relaxed++;
+                    if (grid.isWall(n))
+                        continue;
+                    if (fromStart) {
+                        if (n == start || grid.hasPrev(n))
+                            continue;
+                        grid.setPrevDirection(n, opposite(direction));
+                        if ((backwardSeen[n >>> 6] & 1L << n) != 0) {
+                            meet = n;
+                            break;
+                        }
+                        forwardNext = ensure(forwardNext, nextSize + 1);
+                        forwardNext[nextSize++] = n;
+                    } else {
+                        if ((backwardSeen[n >>> 6] & 1L << n) != 0)
+                            continue;
+                        backwardSeen[n >>> 6] |= 1L << n;
+                        int shift = (n & 31) << 1;
+                        backwardPrev[n >>> 5] = backwardPrev[n >>> 5] & ~(3L << shift)
+                                | (long) opposite(direction) << shift;
+                        if (n == start || grid.hasPrev(n)) {
+                            meet = n;
+                            break;
+                        }
+                        backwardNext = ensure(backwardNext, nextSize + 1);
+                        backwardNext[nextSize++] = n;
+                    }
+                    pushes++;
+                    peakFrontier = Math.max(peakFrontier, levelSize - i - 1 + nextSize + otherSize);
+                    listener.onPush(curr, n, levelSize - i - 1 + nextSize + otherSize);
+                }
+
+                if (Thread.currentThread().isInterrupted())
+                    return false;
+            }
+            if (meet >= 0)
+                break;
+
+            if (fromStart) {
+                temp = forward;
+                forward = forwardNext;
+                forwardNext = temp;
+                forwardSize = nextSize;
+            } else {
+                temp = backward;
+                backward = backwardNext;
+                backwardNext = temp;
+                backwardSize = nextSize;
+            }
+        }
+        if (meet < 0)
+            return false;
+
+        int direction;
+        for (curr = meet; curr != end; curr = n) {
+            direction = (int) (backwardPrev[curr >>> 5] >>> ((curr & 31) << 1)) & 3;
+            n = grid.neighbour(curr, direction);
+            grid.setPrevDirection(n, opposite(direction));
+        }
+        return true;
+    }
+
+    /**
+     * The array, or a larger copy if it holds fewer than needed.
+     */
+    private static int[] ensure(int[] array, int needed) {
+        if (array.length >= needed)
+            return array;
+        if (array.length == MAX_CAPACITY)
+            throw new IllegalStateException("Frontier of more than " + MAX_CAPACITY + " cells");
+        return Arrays.copyOf(array, array.length << 1);
+    }
+
+    /**
+     * Cells taken off the frontier and expanded in the last run.
+     */
+    public long settled() {
+        return settled;
+    }
+
+    /**
+     * Neighbours inside the maze looked at in the last run, and for JPS the
+     * open cells stepped on while jumping.
+     */
+    public long relaxed() {
+        return relaxed;
+    }
+
+    /**
+     * Cells put on the frontier in the last run, the start, and for
+     * bidirectional BFS the end, included.
+     */
+    public long pushes() {
+        return pushes;
+    }
+
+    public long pops() {
+        return pops;
+    }
+
+    /**
+     * Stale heap entries of A* and JPS popped in the last run, for cells
+     * settled already or since reached by a shorter path.
+     */
+    public long skippedPops() {
+        return skippedPops;
+    }
+
+    public int peakFrontier() {
+        return peakFrontier;
+    }
+}
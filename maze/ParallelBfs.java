@@ -0,0 +1,324 @@
+package maze;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Level synchronous breadth first search over a MazeGrid on a fork join pool,
+ * for mazes too large for one core. Every level is expanded one of two ways,
+ * whichever looks at fewer cells:
+ * <ul>
+ * <li>Top-down: the frontier is a list of cells, split into chunks that
+ * claim their unvisited neighbours atomically.</li>
+ * <li>Bottom-up: the frontier is a bitset, and every unvisited cell looks for
+ * a neighbour in it. Workers take stripes of rows cut at bitset words, so
+ * none writes a word another one does and no atomics are needed.</li>
+ * </ul>
+ * The search goes bottom-up once the frontier is large next to the
+ * unvisited cells, and back once it shrinks, as in Beamer's direction
+ * optimizing BFS. Levels with a small frontier run on the calling thread.
+ *
+ * Distances are those of a sequential BFS. Which of two equally near cells
+ * becomes a cell's predecessor depends on timing. Searches leave the cells
+ * reached visited, with their predecessors, in the grid.
+ *
+ * Not thread safe, use one search per grid at a time.
+ *
+ * @author Hackerry
+ *
+ */
+public class ParallelBfs {
+    // Bottom-up once the frontier is over 1/ALPHA of the unvisited cells and
+    // growing, top-down again once under 1/BETA of the open cells and shrinking
+    private static final int ALPHA = 14, BETA = 24;
+    // Frontier cells per top-down task, rows and at least words per stripe
+    private static final int CHUNK = 2048, STRIPE_ROWS = 8, MIN_STRIPE_WORDS = 64;
+
+    private final MazeGrid grid;
+    private final ForkJoinPool pool;
+    private final int words, stripeWords;
+    // Frontier of a top-down level and the cells it reaches
+    private int[] frontier = new int[CHUNK], next = new int[4 * CHUNK];
+    private int frontierSize;
+    // Frontier of a bottom-up level and the cells it reaches, made when first
+    // needed
+    private long[] frontierBits, nextBits;
+    // Cells reached by each task of a level
+    private int[] counts = new int[64];
+    // Of the last search
+    private int levels, bottomUpLevels;
+
+    /**
+     * Search on the common pool.
+     */
+    public ParallelBfs(MazeGrid grid) {
+        this(grid, ForkJoinPool.commonPool());
+    }
+
+    public ParallelBfs(MazeGrid grid, ForkJoinPool pool) {
+        this.grid = grid;
+        this.pool = pool;
+        words = (int) ((grid.cellCount() + 63L) >>> 6);
+        stripeWords = (int) Math.max(MIN_STRIPE_WORDS, ((long) grid.cols() * STRIPE_ROWS + 63) >>> 6);
+    }
+
+    public MazeGrid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Search from start until end is reached, forgetting the last search of
+     * the grid first.
+     *
+     * @param end the cell to stop at, or -1 to reach every cell connected to
+     *            start
+     * @return the distance from start to end, -1 if unreachable or the thread
+     *         got interrupted
+     */
+    public int solve(int start, int end) {
+        if (start < 0 || start >= grid.cellCount() || end < -1 || end >= grid.cellCount())
+            throw new IllegalArgumentException("Invalid endpoints " + start + " -> " + end);
+
+        grid.clearSearch();
+        levels = bottomUpLevels = 0;
+        grid.setVisited(start, true);
+        if (start == end)
+            return 0;
+
+        frontier[0] = start;
+        frontierSize = 1;
+        boolean bottomUp = false;
+        long open = grid.openCount(), unvisited = open - 1;
+        int previous = 0, size;
+        while (frontierSize > 0) {
+            if (Thread.currentThread().isInterrupted())
+                return -1;
+
+            size = frontierSize;
+            if (!bottomUp && (long) size * ALPHA > unvisited && size > previous) {
+                toBits();
+                bottomUp = true;
+            } else if (bottomUp && (long) size * BETA < open && size < previous) {
+                toList();
+                bottomUp = false;
+            }
+            frontierSize = bottomUp ? bottomUpLevel() : topDownLevel();
+            previous = size;
+            unvisited -= frontierSize;
+            levels++;
+            if (bottomUp)
+                bottomUpLevels++;
+
+            if (end >= 0 && grid.isVisited(end))
+                return levels;
+        }
+        return -1;
+    }
+
+    /**
+     * Levels the last search expanded, its depth if it wasn't stopped early.
+     */
+    public int levels() {
+        return levels;
+    }
+
+    /**
+     * Levels of the last search expanded bottom-up.
+     */
+    public int bottomUpLevels() {
+        return bottomUpLevels;
+    }
+
+    /**
+     * Expand the frontier list, in chunks on the pool unless it is one chunk.
+     * Chunk c writes what it reaches from 4 * c * CHUNK on, no cell reaches
+     * more than 4, then the chunks are packed together.
+     *
+     * @return size of the new frontier
+     */
+    private int topDownLevel() {
+        int size = frontierSize;
+        next = ensure(next, 4L * size);
+        int count;
+        if (size <= CHUNK) {
+            count = expand(0, size, 0);
+        } else {
+            int chunks = (size + CHUNK - 1) / CHUNK;
+            counts = ensure(counts, chunks);
+            pool.invoke(new RangeTask(0, chunks, 1,
+                    c -> counts[c] = expand(c * CHUNK, Math.min(size, (c + 1) * CHUNK), 4 * c * CHUNK)));
+            count = counts[0];
+            for (int c = 1; c < chunks; c++) {
+                System.arraycopy(next, 4 * c * CHUNK, next, count, counts[c]);
+                count += counts[c];
+            }
+        }
+
+        int[] temp = frontier;
+        frontier = next;
+        next = temp;
+        return count;
+    }
+
+    /**
+     * Claim the unvisited neighbours of frontier[from..to) into next from out
+     * on.
+     *
+     * @return cells claimed
+     */
+    private int expand(int from, int to, int out) {
+        int cols = grid.cols(), cells = grid.cellCount(), first = out, cell, col, n;
+        for (int i = from; i < to; i++) {
+            cell = frontier[i];
+            col = cell % cols;
+            // Bits only ever get set during a search, so a stale read is only a
+            // wasted claim
+            if (cell >= cols && !grid.isWall(n = cell - cols) && !grid.isVisited(n) && grid.claim(n, MazeGrid.DOWN))
+                next[out++] = n;
+            if (col < cols - 1 && !grid.isWall(n = cell + 1) && !grid.isVisited(n) && grid.claim(n, MazeGrid.LEFT))
+                next[out++] = n;
+            if (cell < cells - cols && !grid.isWall(n = cell + cols) && !grid.isVisited(n)
+                    && grid.claim(n, MazeGrid.UP))
+                next[out++] = n;
+            if (col > 0 && !grid.isWall(n = cell - 1) && !grid.isVisited(n) && grid.claim(n, MazeGrid.RIGHT))
+                next[out++] = n;
+        }
+        return out - first;
+    }
+
+    /**
+     * Let every unvisited cell look for a neighbour in the frontier bitset, a
+     * stripe of rows per task.
+     *
+     * @return size of the new frontier
+     */
+    private int bottomUpLevel() {
+        int stripes = (words + stripeWords - 1) / stripeWords;
+        int count = 0;
+        if (stripes == 1) {
+            count = bottomUpStripe(0);
+        } else {
+            counts = ensure(counts, stripes);
+            pool.invoke(new RangeTask(0, stripes, 1, s -> counts[s] = bottomUpStripe(s)));
+            for (int s = 0; s < stripes; s++)
+                count += counts[s];
+        }
+
+        long[] temp = frontierBits;
+        frontierBits = nextBits;
+        nextBits = temp;
+        return count;
+    }
+
+    /**
+     * Bottom-up over the cells of words stripe * stripeWords on. Only writes
+     * words of those cells.
+     *
+     * @return cells reached
+     */
+    private int bottomUpStripe(int stripe) {
+        int cols = grid.cols(), cells = grid.cellCount();
+        int firstWord = stripe * stripeWords, endWord = Math.min(words, firstWord + stripeWords);
+        Arrays.fill(nextBits, firstWord, endWord, 0);
+
+        int count = 0, cell, col, direction;
+        long candidates;
+        for (int w = firstWord; w < endWord; w++) {
+            candidates = grid.unvisitedWord(w);
+            if (w == words - 1 && (cells & 63) != 0)
+                candidates &= (1L << cells) - 1;
+            while (candidates != 0) {
+                cell = (w << 6) + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+                col = cell % cols;
+                if (cell >= cols && inFrontier(cell - cols))
+                    direction = MazeGrid.UP;
+                else if (col < cols - 1 && inFrontier(cell + 1))
+                    direction = MazeGrid.RIGHT;
+                else if (cell < cells - cols && inFrontier(cell + cols))
+                    direction = MazeGrid.DOWN;
+                else if (col > 0 && inFrontier(cell - 1))
+                    direction = MazeGrid.LEFT;
+                else
+                    continue;
+
+                grid.setVisited(cell, true);
+                grid.setPrevDirection(cell, direction);
+                nextBits[w] |= 1L << cell;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean inFrontier(int cell) {
+        return (frontierBits[cell >>> 6] & 1L << cell) != 0;
+    }
+
+    /**
+     * Turn the frontier list into the frontier bitset.
+     */
+    private void toBits() {
+        if (frontierBits == null) {
+            frontierBits = new long[words];
+            nextBits = new long[words];
+        } else {
+            Arrays.fill(frontierBits, 0);
+        }
+        for (int i = 0; i < frontierSize; i++)
+            frontierBits[frontier[i] >>> 6] |= 1L << frontier[i];
+    }
+
+    /**
+     * Turn the frontier bitset into the frontier list.
+     */
+    private void toList() {
+        frontier = ensure(frontier, frontierSize);
+        int i = 0;
+        long bits;
+        for (int w = 0; w < words; w++) {
+            for (bits = frontierBits[w]; bits != 0; bits &= bits - 1)
+                frontier[i++] = (w << 6) + Long.numberOfTrailingZeros(bits);
+        }
+    }
+
+    /**
+     * The array, or a larger one if it holds fewer than needed. Contents are
+     * not kept.
+     */
+    private static int[] ensure(int[] array, long needed) {
+        if (array.length >= needed)
+            return array;
+        return new int[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * array.length))];
+    }
+
+    /**
+     * Splits an index range in halves until at most grain indices are left.
+     */
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int from, to, grain;
+        private final IntConsumer body;
+
+        RangeTask(int from, int to, int grain, IntConsumer body) {
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                for (int i = from; i < to; i++)
+                    body.accept(i);
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, mid, grain, body), new RangeTask(mid, to, grain, body));
+        }
+    }
+}
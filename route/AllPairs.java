@@ -0,0 +1,383 @@
+package route;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Shortest distances and next hops between every pair of vertices, so a query
+ * is a table lookup. Meant for small to medium graphs that answer many
+ * queries, the tables take 12 * n * n bytes.
+ *
+ * Dense graphs are solved by Floyd-Warshall in BLOCK x BLOCK tiles: for each
+ * diagonal tile the tile itself is relaxed first, then the tiles in its row
+ * and column, then all the others, and the tiles of each of the last two
+ * rounds run in parallel. Sparse graphs run Dijkstra from every source in
+ * parallel instead.
+ *
+ * Saved files (.apsp) are little-endian: int magic, int version, int
+ * vertexCount, int edgeCount of the graph, long RouteCache.fingerprint of the
+ * graph, then the distance and next hop tables row by row. A file whose
+ * fingerprint differs from the graph's is stale and computed again.
+ *
+ * @author Hackerry
+ *
+ */
+public class AllPairs {
+	public static final String EXTENSION = ".apsp";
+	public static final int MAX_VERTICES = 8192;
+	static final int MAGIC = 0x50535041, VERSION = 2, HEADER_SIZE = 24;
+	private static final double UNREACHABLE = Double.MAX_VALUE;
+	// Tile side of the blocked Floyd-Warshall, 3 tiles of doubles fit in L2
+	private static final int BLOCK = 64;
+	// Floyd-Warshall once at least one in DENSE_RATIO vertex pairs is an edge
+	private static final int DENSE_RATIO = 8;
+	// Sources per Dijkstra task
+	private static final int SOURCES_PER_TASK = 16;
+
+	private final int vertexCount, graphEdgeCount;
+	private final long graphFingerprint;
+	// dist[s * n + t] and next[s * n + t], the vertex after s on the way to t
+	private final double[] dist;
+	private final int[] next;
+
+	private AllPairs(int vertexCount, int graphEdgeCount, long graphFingerprint, double[] dist, int[] next) {
+		this.vertexCount = vertexCount;
+		this.graphEdgeCount = graphEdgeCount;
+		this.graphFingerprint = graphFingerprint;
+		this.dist = dist;
+		this.next = next;
+	}
+
+	/**
+	 * Solve with one thread per processor.
+	 */
+	public static AllPairs compute(RouteGraph graph) {
+		return compute(graph, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param parallelism number of worker threads
+	 * @throws IllegalArgumentException if the graph has more than MAX_VERTICES
+	 *                                  vertices
+	 */
+	public static AllPairs compute(RouteGraph graph, int parallelism) {
+		int n = graph.vertexCount();
+		if (n > MAX_VERTICES)
+			throw new IllegalArgumentException(n + " vertices is too many for all pairs, at most " + MAX_VERTICES);
+
+		GraphBuildEvent event = new GraphBuildEvent("all pairs");
+		event.begin();
+		double[] dist = new double[n * n];
+		int[] next = new int[n * n];
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			if (isDense(graph))
+				floydWarshall(graph, dist, next, pool);
+			else
+				pool.invoke(new RangeTask(0, n, SOURCES_PER_TASK, new DijkstraRows(graph, dist, next)));
+		} finally {
+			pool.shutdown();
+		}
+		event.set(n, graph.edgeCount());
+		event.commit();
+		return new AllPairs(n, graph.edgeCount(), RouteCache.fingerprint(graph), dist, next);
+	}
+
+	/**
+	 * Load the tables saved next to a graph file, or compute them and try to
+	 * save them there for next time.
+	 *
+	 * @param graphFile file the graph was read from
+	 */
+	public static AllPairs loadOrCompute(File graphFile, RouteGraph graph) {
+		File file = new File(graphFile.getPath() + EXTENSION);
+		if (file.isFile()) {
+			try {
+				return load(file, graph);
+			} catch (IOException e) {
+				// Stale or broken, compute again
+			}
+		}
+
+		AllPairs allPairs = compute(graph);
+		try {
+			allPairs.save(file);
+		} catch (IOException e) {
+			// Read only location, keep it in memory only
+		}
+		return allPairs;
+	}
+
+	public int vertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * Shortest distance from s to t.
+	 *
+	 * @return the distance or Double.MAX_VALUE if t is unreachable
+	 */
+	public double distance(int s, int t) {
+		return dist[s * vertexCount + t];
+	}
+
+	/**
+	 * Vertex after s on a shortest route to t.
+	 *
+	 * @return the next vertex, t itself if adjacent, or -1 if unreachable
+	 */
+	public int nextHop(int s, int t) {
+		return next[s * vertexCount + t];
+	}
+
+	/**
+	 * Shortest route from s to t, read off the next hop table.
+	 *
+	 * @return the route, or null if t is unreachable
+	 */
+	public RouteResult route(int s, int t) {
+		if (next[s * vertexCount + t] < 0)
+			return null;
+
+		int hops = 0;
+		for (int v = s; v != t; v = next[v * vertexCount + t])
+			hops++;
+		int[] path = new int[hops + 1];
+		path[0] = s;
+		for (int i = 1, v = s; i <= hops; i++) {
+			v = next[v * vertexCount + t];
+			path[i] = v;
+		}
+		return new RouteResult(path, dist[s * vertexCount + t], 0);
+	}
+
+	/**
+	 * Write the tables to a file.
+	 */
+	public void save(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(vertexCount).putInt(graphEdgeCount).putLong(graphFingerprint);
+			for (double value : dist)
+				RGraphFile.ensure(channel, buffer, 8).putDouble(value);
+			for (int value : next)
+				RGraphFile.ensure(channel, buffer, 4).putInt(value);
+
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Read tables saved for the given graph.
+	 *
+	 * @throws IOException if the file can't be read or belongs to another graph
+	 */
+	public static AllPairs load(File file, RouteGraph graph) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("Not an all pairs file: " + file.getName());
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC)
+				throw new IOException("Not an all pairs file: " + file.getName());
+			if (header.getInt() != VERSION)
+				throw new IOException("Unsupported all pairs file version: " + file.getName());
+			int n = header.getInt(), m = header.getInt();
+			long fingerprint = header.getLong();
+			if (n != graph.vertexCount() || m != graph.edgeCount() || fingerprint != RouteCache.fingerprint(graph))
+				throw new IOException("All pairs file belongs to another graph: " + file.getName());
+			if (channel.size() != HEADER_SIZE + 12L * n * n)
+				throw new IOException("All pairs file is truncated: " + file.getName());
+
+			double[] dist = new double[n * n];
+			int[] next = new int[n * n];
+			channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, 8L * n * n).order(ByteOrder.LITTLE_ENDIAN)
+					.asDoubleBuffer().get(dist);
+			channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + 8L * n * n, 4L * n * n)
+					.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(next);
+			return new AllPairs(n, m, fingerprint, dist, next);
+		}
+	}
+
+	private static boolean isDense(RouteGraph graph) {
+		long n = graph.vertexCount();
+		return (long) graph.edgeCount() * DENSE_RATIO >= n * n;
+	}
+
+	/**
+	 * Blocked Floyd-Warshall, see the class comment for the order of tiles.
+	 */
+	private static void floydWarshall(RouteGraph graph, double[] dist, int[] next, ForkJoinPool pool) {
+		int n = graph.vertexCount();
+		Arrays.fill(dist, UNREACHABLE);
+		Arrays.fill(next, -1);
+		for (int u = 0; u < n; u++) {
+			dist[u * n + u] = 0;
+			next[u * n + u] = u;
+			for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+				int v = graph.target(e);
+				if (graph.weight(e) < dist[u * n + v]) {
+					dist[u * n + v] = graph.weight(e);
+					next[u * n + v] = v;
+				}
+			}
+		}
+
+		int blocks = (n + BLOCK - 1) / BLOCK;
+		for (int kb = 0; kb < blocks; kb++) {
+			final int k0 = kb * BLOCK, kBlock = kb;
+			relaxTile(dist, next, n, k0, k0, k0);
+
+			// Tiles sharing a row or a column with the diagonal tile
+			pool.invoke(new RangeTask(0, 2 * blocks, 1, b -> {
+				int other = b >> 1;
+				if (other == kBlock)
+					return;
+				if ((b & 1) == 0)
+					relaxTile(dist, next, n, k0, other * BLOCK, k0);
+				else
+					relaxTile(dist, next, n, other * BLOCK, k0, k0);
+			}));
+
+			// Every other tile, a row of tiles per task
+			pool.invoke(new RangeTask(0, blocks, 1, ib -> {
+				if (ib == kBlock)
+					return;
+				for (int jb = 0; jb < blocks; jb++) {
+					if (jb != kBlock)
+						relaxTile(dist, next, n, ib * BLOCK, jb * BLOCK, k0);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Relax the tile at rows i0.., columns j0.. through the vertices k0.. of one
+	 * block.
+	 */
+	private static void relaxTile(double[] dist, int[] next, int n, int i0, int j0, int k0) {
+		int iEnd = Math.min(i0 + BLOCK, n), jEnd = Math.min(j0 + BLOCK, n), kEnd = Math.min(k0 + BLOCK, n);
+		int kRow, iRow, hop;
+		double dik, d;
+		for (int k = k0; k < kEnd; k++) {
+			kRow = k * n;
+			for (int i = i0; i < iEnd; i++) {
+				iRow = i * n;
+				dik = dist[iRow + k];
+				if (dik == UNREACHABLE)
+					continue;
+				hop = next[iRow + k];
+				for (int j = j0; j < jEnd; j++) {
+					d = dik + dist[kRow + j];
+					if (d < dist[iRow + j]) {
+						dist[iRow + j] = d;
+						next[iRow + j] = hop;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Dijkstra from one source into its rows of the tables. Each worker thread
+	 * keeps its own heap.
+	 */
+	private static class DijkstraRows implements IntConsumer {
+		private final RouteGraph graph;
+		private final double[] dist;
+		private final int[] next;
+		private final ThreadLocal<IndexedHeap> heaps;
+
+		DijkstraRows(RouteGraph graph, double[] dist, int[] next) {
+			this.graph = graph;
+			this.dist = dist;
+			this.next = next;
+			heaps = ThreadLocal.withInitial(() -> new IndexedHeap(graph.vertexCount()));
+		}
+
+		@Override
+		public void accept(int source) {
+			int n = graph.vertexCount(), row = source * n, curr, neighbor;
+			double newDist;
+			Arrays.fill(dist, row, row + n, UNREACHABLE);
+			Arrays.fill(next, row, row + n, -1);
+			IndexedHeap heap = heaps.get();
+			heap.clear();
+			dist[row + source] = 0;
+			next[row + source] = source;
+			heap.insert(source, 0);
+			while (!heap.isEmpty()) {
+				curr = heap.poll();
+				for (int e = graph.firstEdge(curr); e < graph.endEdge(curr); e++) {
+					neighbor = graph.target(e);
+					newDist = dist[row + curr] + graph.weight(e);
+					if (newDist < dist[row + neighbor]) {
+						dist[row + neighbor] = newDist;
+						// First step of the route is inherited from curr
+						next[row + neighbor] = curr == source ? neighbor : next[row + curr];
+						heap.insertOrDecrease(neighbor, newDist);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Splits an index range in halves until at most grain indices are left.
+	 */
+	private static class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int from, to, grain;
+		private final IntConsumer body;
+
+		RangeTask(int from, int to, int grain, IntConsumer body) {
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= grain) {
+				for (int i = from; i < to; i++)
+					body.accept(i);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new RangeTask(from, mid, grain, body), new RangeTask(mid, to, grain, body));
+		}
+	}
+
+	/**
+	 * Driver method, computes the tables of a graph file and saves them next to
+	 * it.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: AllPairs <graph.tsv|graph.rgraph> [threads]");
+			System.exit(1);
+		}
+
+		File graphFile = new File(args[0]);
+		RouteGraph graph = RouteGraph.read(graphFile);
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long begin = System.nanoTime();
+		AllPairs allPairs = compute(graph, threads);
+		allPairs.save(new File(graphFile.getPath() + EXTENSION));
+		System.err.println(graph.vertexCount() + " points, all pairs in " + (System.nanoTime() - begin) / 1000000
+				+ " ms");
+	}
+}
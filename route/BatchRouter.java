@@ -0,0 +1,245 @@
+package route;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Answers many (start, end) queries against one graph in parallel. Queries
+ * are read and answered in blocks on a fork-join pool, every worker thread
+ * searching with its own RoutingEngine so no scratch array is shared. Results
+ * are streamed out as TSV in the order of the queries.
+ *
+ * Each query line holds a tab separated start and end, either point labels or
+ * point indices. Each output line holds start, end, path (labels joined by
+ * "->"), path total and stops. An unreachable end gets an empty path, total
+ * Infinity and -1 stops.
+ *
+ * @author Hackerry
+ *
+ */
+public class BatchRouter implements AutoCloseable {
+	public static final int BLOCK_SIZE = 4096;
+	private static final int SPLIT_SIZE = 16;
+
+	private final RouteGraph graph;
+	private final int algorithm;
+	private final double constant;
+	private final ForkJoinPool pool;
+	private final ThreadLocal<RoutingEngine> engines;
+	private volatile SearchStats stats;
+	private HashMap<String, Integer> labelIndex;
+
+	/**
+	 * @param graph       graph to answer queries on
+	 * @param algorithm   one of the RoutingEngine algorithm constants
+	 * @param constant    multiplier of the A* distance estimate
+	 * @param parallelism number of worker threads
+	 */
+	public BatchRouter(RouteGraph graph, int algorithm, double constant, int parallelism) {
+		this(graph, algorithm == RoutingEngine.CH ? ContractionHierarchy.build(graph) : null,
+				algorithm == RoutingEngine.ALT ? Landmarks.select(graph, Landmarks.DEFAULT_COUNT) : null,
+				algorithm == RoutingEngine.ALL_PAIRS ? AllPairs.compute(graph, parallelism) : null, algorithm,
+				constant, parallelism);
+	}
+
+	/**
+	 * @param hierarchy hierarchy shared by all workers for CH queries, may be
+	 *                  null for other algorithms
+	 * @param landmarks landmark tables shared by all workers for ALT queries,
+	 *                  may be null for other algorithms
+	 * @param allPairs  tables shared by all workers for ALL_PAIRS queries, may
+	 *                  be null for other algorithms
+	 */
+	public BatchRouter(RouteGraph graph, ContractionHierarchy hierarchy, Landmarks landmarks, AllPairs allPairs,
+			int algorithm, double constant, int parallelism) {
+		this.graph = graph;
+		this.algorithm = algorithm;
+		this.constant = constant;
+		pool = new ForkJoinPool(parallelism);
+		engines = ThreadLocal.withInitial(() -> {
+			RoutingEngine engine = new RoutingEngine(graph);
+			engine.setHierarchy(hierarchy);
+			engine.setLandmarks(landmarks);
+			engine.setAllPairs(allPairs);
+			engine.setStats(stats);
+			return engine;
+		});
+	}
+
+	/**
+	 * Record the metrics of every query, set before the first run.
+	 */
+	public void setStats(SearchStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * Answer every query read from in and write the results to out.
+	 *
+	 * @return number of queries answered
+	 * @throws IOException if reading or writing fails or a query is malformed
+	 */
+	public long run(BufferedReader in, Writer out) throws IOException {
+		int[] starts = new int[BLOCK_SIZE], ends = new int[BLOCK_SIZE];
+		String[] rows = new String[BLOCK_SIZE];
+		String line;
+		String[] parts;
+		long total = 0;
+		int lineNum = 0, count = 0;
+
+		while (true) {
+			line = in.readLine();
+			if (line != null && !line.isEmpty()) {
+				parts = line.split("\\t");
+				if (parts.length != 2)
+					throw new IOException("2 input expected on line " + lineNum);
+				starts[count] = resolve(parts[0], lineNum);
+				ends[count] = resolve(parts[1], lineNum);
+				count++;
+			}
+			lineNum++;
+
+			// Answer a full block, or what is left at the end
+			if (count == BLOCK_SIZE || (line == null && count > 0)) {
+				pool.invoke(new QueryTask(starts, ends, rows, 0, count));
+				for (int i = 0; i < count; i++)
+					out.write(rows[i]);
+				out.flush();
+				total += count;
+				count = 0;
+			}
+			if (line == null)
+				return total;
+		}
+	}
+
+	/**
+	 * Turn a label, or failing that an index, into a point index.
+	 */
+	private int resolve(String token, int lineNum) throws IOException {
+		if (labelIndex == null) {
+			labelIndex = new HashMap<>();
+			for (int v = graph.vertexCount() - 1; v >= 0; v--)
+				labelIndex.put(graph.label(v), v);
+		}
+
+		Integer v = labelIndex.get(token);
+		if (v != null)
+			return v;
+		try {
+			int index = Integer.parseInt(token);
+			if (index >= 0 && index < graph.vertexCount())
+				return index;
+		} catch (NumberFormatException e) {
+		}
+		throw new IOException("Unknown point " + token + " on line " + lineNum);
+	}
+
+	/**
+	 * Format one result row.
+	 */
+	private String answer(int start, int end) {
+		StringBuilder row = new StringBuilder();
+		row.append(graph.label(start)).append('\t').append(graph.label(end)).append('\t');
+
+		// Already there
+		if (start == end)
+			return row.append(graph.label(start)).append("\t0.0\t0\n").toString();
+
+		RouteResult result = engines.get().route(algorithm, start, end, constant, null);
+		if (result == null) {
+			row.append("\tInfinity\t-1");
+		} else {
+			int[] path = result.getPath();
+			for (int i = 0; i < path.length; i++) {
+				if (i > 0)
+					row.append("->");
+				row.append(graph.label(path[i]));
+			}
+			row.append('\t').append(result.getWeight()).append('\t').append(result.getHops());
+		}
+		return row.append('\n').toString();
+	}
+
+	@Override
+	public void close() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Splits a block of queries in halves until small enough to answer.
+	 */
+	private class QueryTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] starts, ends;
+		private final String[] rows;
+		private final int from, to;
+
+		QueryTask(int[] starts, int[] ends, String[] rows, int from, int to) {
+			this.starts = starts;
+			this.ends = ends;
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= SPLIT_SIZE) {
+				for (int i = from; i < to; i++)
+					rows[i] = answer(starts[i], ends[i]);
+				return;
+			}
+
+			int mid = (from + to) >>> 1;
+			invokeAll(new QueryTask(starts, ends, rows, from, mid), new QueryTask(starts, ends, rows, mid, to));
+		}
+	}
+
+	/**
+	 * Driver method.
+	 *
+	 * Usage: BatchRouter graph.tsv|graph.rgraph queries.tsv [algorithm]
+	 * [threads]. Results go to standard output.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: BatchRouter <graph.tsv|graph.rgraph> <queries.tsv>"
+					+ " [astar|dijkstra|greedy|bfs|dfs|bidijkstra|biastar|ch|alt|allpairs] [threads]");
+			System.exit(1);
+		}
+
+		File graphFile = new File(args[0]);
+		RouteGraph graph = RouteGraph.read(graphFile);
+		int algorithm = args.length > 2 ? RoutingEngine.parseAlgorithm(args[2]) : RoutingEngine.DIJKSTRA;
+		int threads = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		ContractionHierarchy hierarchy = algorithm == RoutingEngine.CH
+				? ContractionHierarchy.loadOrBuild(graphFile, graph)
+				: null;
+		Landmarks landmarks = algorithm == RoutingEngine.ALT ? Landmarks.select(graph, Landmarks.DEFAULT_COUNT) : null;
+		AllPairs allPairs = algorithm == RoutingEngine.ALL_PAIRS ? AllPairs.loadOrCompute(graphFile, graph) : null;
+
+		// Watched over JMX, and logged per query with -Droute.metricsLog=file.csv
+		SearchStats stats = SearchStats.create("BatchRouter");
+		long begin = System.nanoTime(), total;
+		try (BatchRouter router = new BatchRouter(graph, hierarchy, landmarks, allPairs, algorithm,
+				RoutingEngine.A_STAR_CONSTANT, threads);
+				BufferedReader in = new BufferedReader(new FileReader(args[1]));
+				Writer out = new BufferedWriter(new OutputStreamWriter(System.out))) {
+			router.setStats(stats);
+			total = router.run(in, out);
+		} finally {
+			stats.closeLog();
+		}
+		System.err.println(total + " queries in " + (System.nanoTime() - begin) / 1000000 + " ms, " + stats.getSettled()
+				+ " settled, " + stats.getRelaxed() + " edges relaxed");
+	}
+}
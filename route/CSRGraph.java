@@ -0,0 +1,330 @@
+package route;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Compressed sparse row (CSR) graph held in heap arrays. The neighbors of
+ * vertex v are stored in targets[offsets[v]] .. targets[offsets[v + 1] - 1]
+ * with the matching edge weights at the same positions, sorted by target
+ * index.
+ *
+ * @author Hackerry
+ *
+ */
+public class CSRGraph implements RouteGraph {
+	private final int vertexCount;
+	private final int[] offsets, targets;
+	private final double[] weights;
+	private final double[] x, y;
+	private final boolean implicit;
+	private LabelTable labels;
+
+	private CSRGraph(int[] offsets, int[] targets, double[] weights, double[] x, double[] y, boolean implicit) {
+		this.vertexCount = offsets.length - 1;
+		this.implicit = implicit;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * Build the graph in which every pair of distinct points is connected by an
+	 * edge of their euclidean distance.
+	 *
+	 * @param x x coordinate of every vertex
+	 * @param y y coordinate of every vertex
+	 */
+	public static CSRGraph complete(double[] x, double[] y) {
+		GraphBuildEvent event = new GraphBuildEvent("complete");
+		event.begin();
+		int n = x.length;
+		int[] offsets = new int[n + 1];
+		int[] targets = new int[Math.multiplyExact(n, Math.max(n - 1, 0))];
+		double[] weights = new double[targets.length];
+
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			offsets[i] = e;
+			for (int j = 0; j < n; j++) {
+				// No self-loop allowed
+				if (i == j)
+					continue;
+				targets[e] = j;
+				weights[e] = euclideanDist(x[i], y[i], x[j], y[j]);
+				e++;
+			}
+		}
+		offsets[n] = e;
+
+		return built(event, new CSRGraph(offsets, targets, weights, x, y, true));
+	}
+
+	/**
+	 * Build the graph connecting every point to its k closest points, in both
+	 * directions, weighted by euclidean distance. Memory grows with n * k rather
+	 * than n * n.
+	 *
+	 * @param x x coordinate of every vertex
+	 * @param y y coordinate of every vertex
+	 * @param k neighbors looked up per point
+	 */
+	public static CSRGraph nearestNeighbors(double[] x, double[] y, int k) {
+		GraphBuildEvent event = new GraphBuildEvent("nearest neighbors");
+		event.begin();
+		SpatialGrid grid = new SpatialGrid(x, y);
+		Builder builder = new Builder(x, y);
+		for (int i = 0; i < x.length; i++) {
+			int self = i;
+			IntPredicate others = v -> v != self;
+			for (int j : grid.nearest(x[i], y[i], k, others))
+				builder.addUndirectedEdge(i, j, euclideanDist(x[i], y[i], x[j], y[j]));
+		}
+		return built(event, builder.build(true));
+	}
+
+	/**
+	 * Build the graph connecting every pair of points at most radius apart,
+	 * weighted by euclidean distance.
+	 *
+	 * @param x      x coordinate of every vertex
+	 * @param y      y coordinate of every vertex
+	 * @param radius longest edge
+	 */
+	public static CSRGraph withinRadius(double[] x, double[] y, double radius) {
+		GraphBuildEvent event = new GraphBuildEvent("within radius");
+		event.begin();
+		SpatialGrid grid = new SpatialGrid(x, y);
+		Builder builder = new Builder(x, y);
+		for (int i = 0; i < x.length; i++) {
+			int self = i;
+			grid.forEachWithin(x[i], y[i], radius, j -> {
+				if (j != self)
+					builder.addEdge(self, j, euclideanDist(x[self], y[self], x[j], y[j]));
+			});
+		}
+		return built(event, builder.build(true));
+	}
+
+	/**
+	 * Commit the event of building the graph.
+	 */
+	private static CSRGraph built(GraphBuildEvent event, CSRGraph graph) {
+		event.set(graph.vertexCount(), graph.edgeCount());
+		event.commit();
+		return graph;
+	}
+
+	@Override
+	public int vertexCount() {
+		return vertexCount;
+	}
+
+	@Override
+	public int edgeCount() {
+		return targets.length;
+	}
+
+	@Override
+	public int firstEdge(int v) {
+		return offsets[v];
+	}
+
+	@Override
+	public int endEdge(int v) {
+		return offsets[v + 1];
+	}
+
+	@Override
+	public int target(int edge) {
+		return targets[edge];
+	}
+
+	@Override
+	public double weight(int edge) {
+		return weights[edge];
+	}
+
+	@Override
+	public double x(int v) {
+		return x[v];
+	}
+
+	@Override
+	public double y(int v) {
+		return y[v];
+	}
+
+	@Override
+	public boolean isImplicit() {
+		return implicit;
+	}
+
+	/**
+	 * Name of vertex v, its index if no labels were attached.
+	 */
+	@Override
+	public String label(int v) {
+		return labels == null ? String.valueOf(v) : labels.get(v);
+	}
+
+	public LabelTable getLabels() {
+		return labels;
+	}
+
+	/**
+	 * Attach a name to every vertex.
+	 */
+	public void setLabels(LabelTable labels) {
+		if (labels != null && labels.size() != vertexCount)
+			throw new IllegalArgumentException("Expected " + vertexCount + " labels");
+		this.labels = labels;
+	}
+
+	/**
+	 * Helper method to calculate the straight line distance between two points.
+	 */
+	public static double euclideanDist(double x1, double y1, double x2, double y2) {
+		double dx = x1 - x2, dy = y1 - y2;
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	/**
+	 * Collects an edge list and packs it into a CSRGraph. Duplicate edges are
+	 * merged, the last weight added wins.
+	 */
+	public static class Builder {
+		private final double[] x, y;
+		private int[] from = new int[16], to = new int[16];
+		private double[] weight = new double[16];
+		private int size = 0;
+
+		/**
+		 * @param x x coordinate of every vertex
+		 * @param y y coordinate of every vertex
+		 */
+		public Builder(double[] x, double[] y) {
+			if (x.length != y.length)
+				throw new IllegalArgumentException("Coordinate arrays differ in length");
+			this.x = x;
+			this.y = y;
+		}
+
+		/**
+		 * Add a directed edge.
+		 */
+		public Builder addEdge(int u, int v, double w) {
+			if (u < 0 || u >= x.length || v < 0 || v >= x.length)
+				throw new IllegalArgumentException("Invalid edge " + u + " -> " + v);
+			if (size == from.length) {
+				int capacity = size + (size >> 1);
+				from = Arrays.copyOf(from, capacity);
+				to = Arrays.copyOf(to, capacity);
+				weight = Arrays.copyOf(weight, capacity);
+			}
+			from[size] = u;
+			to[size] = v;
+			weight[size] = w;
+			size++;
+			return this;
+		}
+
+		/**
+		 * Add an edge in both directions.
+		 */
+		public Builder addUndirectedEdge(int u, int v, double w) {
+			addEdge(u, v, w);
+			return addEdge(v, u, w);
+		}
+
+		/**
+		 * Pack edges into CSR form: place every edge in its source row, then sort
+		 * each row by target. Sorting is stable so the later of two duplicates is
+		 * the one kept.
+		 */
+		public CSRGraph build() {
+			GraphBuildEvent event = new GraphBuildEvent("csr");
+			event.begin();
+			return built(event, build(false));
+		}
+
+		private CSRGraph build(boolean implicit) {
+			int n = x.length;
+
+			// Bucket edges by source
+			int[] offsets = new int[n + 1];
+			for (int i = 0; i < size; i++)
+				offsets[from[i] + 1]++;
+			for (int v = 0; v < n; v++)
+				offsets[v + 1] += offsets[v];
+			int[] fill = Arrays.copyOf(offsets, n);
+			int[] targets = new int[size];
+			double[] weights = new double[size];
+			for (int i = 0; i < size; i++) {
+				targets[fill[from[i]]] = to[i];
+				weights[fill[from[i]]++] = weight[i];
+			}
+
+			// Sort every row, then squeeze out duplicates
+			int e = 0, rowStart;
+			for (int v = 0; v < n; v++) {
+				sortRow(targets, weights, offsets[v], offsets[v + 1]);
+				rowStart = e;
+				for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+					if (e > rowStart && targets[e - 1] == targets[i]) {
+						// Merge duplicate, keep the later weight
+						weights[e - 1] = weights[i];
+						continue;
+					}
+					targets[e] = targets[i];
+					weights[e] = weights[i];
+					e++;
+				}
+				offsets[v] = rowStart;
+			}
+			offsets[n] = e;
+
+			if (e < size) {
+				targets = Arrays.copyOf(targets, e);
+				weights = Arrays.copyOf(weights, e);
+			}
+			return new CSRGraph(offsets, targets, weights, x, y, implicit);
+		}
+
+		/**
+		 * Stable sort of targets[from..to) by target, weights move along.
+		 */
+		private void sortRow(int[] targets, double[] weights, int from, int to) {
+			int t;
+			double w;
+			if (to - from <= 32) {
+				// Insertion sort for the usual short row
+				for (int i = from + 1, j; i < to; i++) {
+					t = targets[i];
+					w = weights[i];
+					for (j = i - 1; j >= from && targets[j] > t; j--) {
+						targets[j + 1] = targets[j];
+						weights[j + 1] = weights[j];
+					}
+					targets[j + 1] = t;
+					weights[j + 1] = w;
+				}
+				return;
+			}
+
+			// Target in the high bits, position in the low bits keeps it stable
+			long[] keys = new long[to - from];
+			for (int i = from; i < to; i++)
+				keys[i - from] = (long) targets[i] << 32 | (i - from);
+			Arrays.sort(keys);
+			double[] sorted = new double[keys.length];
+			for (int i = 0; i < keys.length; i++) {
+				sorted[i] = weights[from + (int) keys[i]];
+				targets[from + i] = (int) (keys[i] >>> 32);
+			}
+			System.arraycopy(sorted, 0, weights, from, sorted.length);
+		}
+	}
+}
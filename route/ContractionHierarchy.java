@@ -0,0 +1,649 @@
+package route;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Contraction hierarchy over a RouteGraph for fast repeated queries on a
+ * graph that does not change. Vertices are contracted one by one, least
+ * important first by edge difference. Shortcuts keep the distances between
+ * the remaining vertices unless a witness search finds another path as short.
+ * Contracting a vertex only updates the cheap terms of its neighbors'
+ * priorities, the shortcut count is simulated again when a vertex comes up.
+ * Complete graphs and graphs above MAX_AVERAGE_DEGREE are refused.
+ *
+ * A query is a Dijkstra from both ends that only climbs to higher ranked
+ * vertices, see RoutingEngine.CH. Up edges of v lead to higher ranked targets,
+ * down edges of v come from higher ranked sources. A shortcut remembers the
+ * vertex it skips so the route can be unpacked into original edges.
+ *
+ * Saved files (.ch) are little-endian: int magic, int version, int
+ * vertexCount, int edgeCount of the graph, int up edge count, int down edge
+ * count, long RouteCache.fingerprint of the graph, then rank, up offsets,
+ * targets, middles, weights and down offsets, sources, middles, weights. A
+ * file whose fingerprint differs from the graph's is stale and rebuilt.
+ *
+ * @author Hackerry
+ *
+ */
+public class ContractionHierarchy {
+	public static final String EXTENSION = ".ch";
+	static final int MAGIC = 0x48435247, VERSION = 2, HEADER_SIZE = 32;
+	// Witness searches give up after this many vertices, a missed witness only
+	// costs an extra shortcut. Estimating a priority may give up much sooner.
+	private static final int WITNESS_SETTLE_LIMIT = 500, SIMULATE_SETTLE_LIMIT = 15;
+	// Denser graphs take minutes to contract, complete graphs never finish
+	public static final int MAX_AVERAGE_DEGREE = 16;
+
+	private final int vertexCount, graphEdgeCount;
+	private final long graphFingerprint;
+	private final int[] rank;
+	private final int[] upOffsets, upTargets, upMiddles;
+	private final double[] upWeights;
+	private final int[] downOffsets, downSources, downMiddles;
+	private final double[] downWeights;
+
+	private ContractionHierarchy(int graphEdgeCount, long graphFingerprint, int[] rank, int[] upOffsets,
+			int[] upTargets, int[] upMiddles, double[] upWeights, int[] downOffsets, int[] downSources,
+			int[] downMiddles, double[] downWeights) {
+		this.vertexCount = rank.length;
+		this.graphEdgeCount = graphEdgeCount;
+		this.graphFingerprint = graphFingerprint;
+		this.rank = rank;
+		this.upOffsets = upOffsets;
+		this.upTargets = upTargets;
+		this.upMiddles = upMiddles;
+		this.upWeights = upWeights;
+		this.downOffsets = downOffsets;
+		this.downSources = downSources;
+		this.downMiddles = downMiddles;
+		this.downWeights = downWeights;
+	}
+
+	/**
+	 * Contract every vertex of the graph.
+	 *
+	 * @throws IllegalArgumentException if the graph is complete or has more
+	 *                                  than MAX_AVERAGE_DEGREE edges per vertex
+	 */
+	public static ContractionHierarchy build(RouteGraph graph) {
+		int n = graph.vertexCount();
+		if (n > 1 && graph.isImplicit() && graph.edgeCount() == (long) n * (n - 1))
+			throw new IllegalArgumentException("Complete graph is too dense for a contraction hierarchy");
+		if (graph.edgeCount() > (long) MAX_AVERAGE_DEGREE * n)
+			throw new IllegalArgumentException(graph.edgeCount() / n
+					+ " edges per vertex is too dense for a contraction hierarchy, at most " + MAX_AVERAGE_DEGREE);
+		GraphBuildEvent event = new GraphBuildEvent("contraction hierarchy");
+		event.begin();
+		ContractionHierarchy hierarchy = new Contractor(graph).contractAll();
+		event.set(graph.vertexCount(), graph.edgeCount());
+		event.commit();
+		return hierarchy;
+	}
+
+	/**
+	 * Load the hierarchy saved next to a graph file, or build it and try to save
+	 * it there for next time.
+	 *
+	 * @param graphFile file the graph was read from
+	 */
+	public static ContractionHierarchy loadOrBuild(File graphFile, RouteGraph graph) {
+		File file = new File(graphFile.getPath() + EXTENSION);
+		if (file.isFile()) {
+			try {
+				return load(file, graph);
+			} catch (IOException e) {
+				// Stale or broken, build again
+			}
+		}
+
+		ContractionHierarchy hierarchy = build(graph);
+		try {
+			hierarchy.save(file);
+		} catch (IOException e) {
+			// Read only location, keep it in memory only
+		}
+		return hierarchy;
+	}
+
+	public int vertexCount() {
+		return vertexCount;
+	}
+
+	/**
+	 * Number of up and down edges, shortcuts included.
+	 */
+	public int edgeCount() {
+		return upTargets.length + downSources.length;
+	}
+
+	/**
+	 * Position of v in the contraction order.
+	 */
+	public int rank(int v) {
+		return rank[v];
+	}
+
+	public int firstUp(int v) {
+		return upOffsets[v];
+	}
+
+	public int endUp(int v) {
+		return upOffsets[v + 1];
+	}
+
+	public int upTarget(int edge) {
+		return upTargets[edge];
+	}
+
+	public double upWeight(int edge) {
+		return upWeights[edge];
+	}
+
+	public int firstDown(int v) {
+		return downOffsets[v];
+	}
+
+	public int endDown(int v) {
+		return downOffsets[v + 1];
+	}
+
+	public int downSource(int edge) {
+		return downSources[edge];
+	}
+
+	public double downWeight(int edge) {
+		return downWeights[edge];
+	}
+
+	/**
+	 * Replace every shortcut of a route through the hierarchy by the original
+	 * edges it stands for.
+	 *
+	 * @param route vertices joined by up or down edges
+	 * @return vertices joined by original edges
+	 */
+	public int[] unpack(int[] route) {
+		int[] path = new int[Math.max(route.length, 16)];
+		int size = 0;
+		if (route.length == 0)
+			return new int[0];
+		path[size++] = route[0];
+
+		// Pairs still to unpack, in reverse order
+		int[] stack = new int[32];
+		int top = 0, from, to, middle;
+		for (int i = 0; i + 1 < route.length; i++) {
+			stack[top++] = route[i];
+			stack[top++] = route[i + 1];
+			while (top > 0) {
+				to = stack[--top];
+				from = stack[--top];
+				middle = middle(from, to);
+				if (middle < 0) {
+					if (size == path.length)
+						path = Arrays.copyOf(path, size * 2);
+					path[size++] = to;
+					continue;
+				}
+				if (top + 4 > stack.length)
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				stack[top++] = middle;
+				stack[top++] = to;
+				stack[top++] = from;
+				stack[top++] = middle;
+			}
+		}
+		return Arrays.copyOf(path, size);
+	}
+
+	/**
+	 * Vertex skipped by the edge from..to, -1 for an original edge.
+	 */
+	private int middle(int from, int to) {
+		if (rank[from] < rank[to]) {
+			for (int e = upOffsets[from]; e < upOffsets[from + 1]; e++) {
+				if (upTargets[e] == to)
+					return upMiddles[e];
+			}
+		} else {
+			for (int e = downOffsets[to]; e < downOffsets[to + 1]; e++) {
+				if (downSources[e] == from)
+					return downMiddles[e];
+			}
+		}
+		throw new IllegalArgumentException("No hierarchy edge " + from + " -> " + to);
+	}
+
+	/**
+	 * Write the hierarchy to a file.
+	 */
+	public void save(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(vertexCount).putInt(graphEdgeCount)
+					.putInt(upTargets.length).putInt(downSources.length).putLong(graphFingerprint);
+			for (int[] section : new int[][] { rank, upOffsets, upTargets, upMiddles }) {
+				for (int value : section)
+					RGraphFile.ensure(channel, buffer, 4).putInt(value);
+			}
+			for (double value : upWeights)
+				RGraphFile.ensure(channel, buffer, 8).putDouble(value);
+			for (int[] section : new int[][] { downOffsets, downSources, downMiddles }) {
+				for (int value : section)
+					RGraphFile.ensure(channel, buffer, 4).putInt(value);
+			}
+			for (double value : downWeights)
+				RGraphFile.ensure(channel, buffer, 8).putDouble(value);
+
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Read a hierarchy saved for the given graph.
+	 *
+	 * @throws IOException if the file can't be read or belongs to another graph
+	 */
+	public static ContractionHierarchy load(File file, RouteGraph graph) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("Not a hierarchy file: " + file.getName());
+			ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+					.order(ByteOrder.LITTLE_ENDIAN);
+			if (header.getInt() != MAGIC)
+				throw new IOException("Not a hierarchy file: " + file.getName());
+			if (header.getInt() != VERSION)
+				throw new IOException("Unsupported hierarchy file version: " + file.getName());
+			int n = header.getInt(), m = header.getInt(), up = header.getInt(), down = header.getInt();
+			long fingerprint = header.getLong();
+			if (n != graph.vertexCount() || m != graph.edgeCount() || fingerprint != RouteCache.fingerprint(graph))
+				throw new IOException("Hierarchy file belongs to another graph: " + file.getName());
+
+			long[] position = { HEADER_SIZE };
+			int[] rank = readInts(channel, position, n), upOffsets = readInts(channel, position, n + 1),
+					upTargets = readInts(channel, position, up), upMiddles = readInts(channel, position, up);
+			double[] upWeights = readDoubles(channel, position, up);
+			int[] downOffsets = readInts(channel, position, n + 1), downSources = readInts(channel, position, down),
+					downMiddles = readInts(channel, position, down);
+			double[] downWeights = readDoubles(channel, position, down);
+			return new ContractionHierarchy(m, fingerprint, rank, upOffsets, upTargets, upMiddles, upWeights,
+					downOffsets, downSources, downMiddles, downWeights);
+		}
+	}
+
+	private static int[] readInts(FileChannel channel, long[] position, int count) throws IOException {
+		int[] values = new int[count];
+		map(channel, position, 4L * count).asIntBuffer().get(values);
+		return values;
+	}
+
+	private static double[] readDoubles(FileChannel channel, long[] position, int count) throws IOException {
+		double[] values = new double[count];
+		map(channel, position, 8L * count).asDoubleBuffer().get(values);
+		return values;
+	}
+
+	private static ByteBuffer map(FileChannel channel, long[] position, long size) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("Hierarchy section of " + size + " bytes is too large to map");
+		if (position[0] + size > channel.size())
+			throw new IOException("Hierarchy file is truncated");
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position[0], size)
+				.order(ByteOrder.LITTLE_ENDIAN);
+		position[0] += size;
+		return buffer;
+	}
+
+	/**
+	 * Edge lists of every vertex that can grow and shrink during contraction.
+	 */
+	private static class Adjacency {
+		private static final int[] NO_INTS = new int[0];
+		private static final double[] NO_DOUBLES = new double[0];
+
+		final int[][] ends, middles;
+		final double[][] weights;
+		final int[] sizes;
+
+		Adjacency(int n) {
+			ends = new int[n][];
+			middles = new int[n][];
+			weights = new double[n][];
+			sizes = new int[n];
+			Arrays.fill(ends, NO_INTS);
+			Arrays.fill(middles, NO_INTS);
+			Arrays.fill(weights, NO_DOUBLES);
+		}
+
+		int find(int v, int end) {
+			for (int i = 0; i < sizes[v]; i++) {
+				if (ends[v][i] == end)
+					return i;
+			}
+			return -1;
+		}
+
+		void add(int v, int end, double weight, int middle) {
+			int size = sizes[v];
+			if (size == ends[v].length) {
+				int capacity = Math.max(4, size * 2);
+				ends[v] = Arrays.copyOf(ends[v], capacity);
+				middles[v] = Arrays.copyOf(middles[v], capacity);
+				weights[v] = Arrays.copyOf(weights[v], capacity);
+			}
+			ends[v][size] = end;
+			middles[v][size] = middle;
+			weights[v][size] = weight;
+			sizes[v]++;
+		}
+
+		/**
+		 * Add an edge, or shorten the one already there.
+		 */
+		void put(int v, int end, double weight, int middle) {
+			int i = find(v, end);
+			if (i < 0) {
+				add(v, end, weight, middle);
+			} else if (weight < weights[v][i]) {
+				weights[v][i] = weight;
+				middles[v][i] = middle;
+			}
+		}
+
+		void remove(int v, int end) {
+			int i = find(v, end);
+			if (i < 0)
+				return;
+			int last = --sizes[v];
+			ends[v][i] = ends[v][last];
+			middles[v][i] = middles[v][last];
+			weights[v][i] = weights[v][last];
+		}
+
+		void clear(int v) {
+			ends[v] = NO_INTS;
+			middles[v] = NO_INTS;
+			weights[v] = NO_DOUBLES;
+			sizes[v] = 0;
+		}
+
+		int[] offsets() {
+			int[] offsets = new int[sizes.length + 1];
+			for (int v = 0; v < sizes.length; v++)
+				offsets[v + 1] = offsets[v] + sizes[v];
+			return offsets;
+		}
+
+		/**
+		 * Concatenate the ends or middles of every vertex, CSR style.
+		 */
+		int[] pack(int[][] lists) {
+			int[] packed = new int[offsets()[sizes.length]];
+			for (int v = 0, e = 0; v < sizes.length; e += sizes[v++])
+				System.arraycopy(lists[v], 0, packed, e, sizes[v]);
+			return packed;
+		}
+
+		double[] packWeights() {
+			double[] packed = new double[offsets()[sizes.length]];
+			for (int v = 0, e = 0; v < sizes.length; e += sizes[v++])
+				System.arraycopy(weights[v], 0, packed, e, sizes[v]);
+			return packed;
+		}
+	}
+
+	/**
+	 * Contracts the vertices of a graph in order of importance.
+	 */
+	private static class Contractor {
+		private final RouteGraph graph;
+		private final int n;
+		// Edges between vertices not yet contracted
+		private final Adjacency out, in;
+		// Edges of the finished hierarchy
+		private final Adjacency up, down;
+		// Level is one more than the highest contracted neighbor's
+		private final int[] rank, deletedNeighbors, level;
+		// Shortcuts contracting each vertex needed when last simulated
+		private final int[] simulated;
+		private final IndexedHeap queue;
+
+		// Witness search scratch
+		private final double[] dist;
+		private final int[] touched;
+		private int touchedCount = 0;
+		private final IndexedHeap witnessHeap;
+
+		// Neighbors of the vertex just contracted
+		private final int[] marks, neighbors;
+		// Out neighbors of the vertex being checked point back to it
+		private final int[] targets;
+
+		Contractor(RouteGraph graph) {
+			this.graph = graph;
+			n = graph.vertexCount();
+			out = new Adjacency(n);
+			in = new Adjacency(n);
+			up = new Adjacency(n);
+			down = new Adjacency(n);
+			rank = new int[n];
+			deletedNeighbors = new int[n];
+			level = new int[n];
+			simulated = new int[n];
+			queue = new IndexedHeap(n);
+			dist = new double[n];
+			Arrays.fill(dist, Double.MAX_VALUE);
+			touched = new int[n];
+			witnessHeap = new IndexedHeap(n);
+			marks = new int[n];
+			Arrays.fill(marks, -1);
+			neighbors = new int[n];
+			targets = new int[n];
+			Arrays.fill(targets, -1);
+
+			for (int u = 0; u < n; u++) {
+				for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++) {
+					// Closed, see DynamicGraph
+					if (graph.weight(e) == Double.MAX_VALUE)
+						continue;
+					out.add(u, graph.target(e), graph.weight(e), -1);
+					in.add(graph.target(e), u, graph.weight(e), -1);
+				}
+			}
+		}
+
+		ContractionHierarchy contractAll() {
+			for (int v = 0; v < n; v++)
+				queue.insert(v, priority(v));
+
+			int order = 0, v, count;
+			double p;
+			while (!queue.isEmpty()) {
+				// Priorities go stale as neighbors get contracted, check before use
+				v = queue.poll();
+				p = priority(v);
+				if (!queue.isEmpty() && p > queue.peekPriority()) {
+					queue.insert(v, p);
+					continue;
+				}
+
+				rank[v] = order;
+				count = contract(v, order);
+				order++;
+
+				// Only the cheap terms are brought up to date, the shortcut count
+				// is simulated again when the neighbor comes up
+				for (int i = 0; i < count; i++) {
+					deletedNeighbors[neighbors[i]]++;
+					level[neighbors[i]] = Math.max(level[neighbors[i]], level[v] + 1);
+					queue.changeKey(neighbors[i], key(neighbors[i]));
+				}
+			}
+
+			return new ContractionHierarchy(graph.edgeCount(), RouteCache.fingerprint(graph), rank, up.offsets(),
+					up.pack(up.ends), up.pack(up.middles), up.packWeights(), down.offsets(), down.pack(down.ends),
+					down.pack(down.middles), down.packWeights());
+		}
+
+		/**
+		 * Edge difference plus contracted neighbors plus level, smaller is
+		 * contracted sooner. The last two spread contraction evenly over the
+		 * graph.
+		 */
+		private double priority(int v) {
+			simulated[v] = shortcuts(v, false);
+			return key(v);
+		}
+
+		/**
+		 * Priority with the shortcut count of the last simulation.
+		 */
+		private double key(int v) {
+			return simulated[v] - in.sizes[v] - out.sizes[v] + deletedNeighbors[v] + level[v];
+		}
+
+		/**
+		 * Remove v from the graph, adding the shortcuts it needs. Its remaining
+		 * edges all lead to higher ranks and become its up and down edges.
+		 *
+		 * @return number of distinct neighbors, left in neighbors
+		 */
+		private int contract(int v, int order) {
+			for (int i = 0; i < out.sizes[v]; i++)
+				up.add(v, out.ends[v][i], out.weights[v][i], out.middles[v][i]);
+			for (int i = 0; i < in.sizes[v]; i++)
+				down.add(v, in.ends[v][i], in.weights[v][i], in.middles[v][i]);
+
+			shortcuts(v, true);
+
+			int count = 0, w;
+			for (int i = 0; i < out.sizes[v]; i++) {
+				w = out.ends[v][i];
+				in.remove(w, v);
+				if (marks[w] != order) {
+					marks[w] = order;
+					neighbors[count++] = w;
+				}
+			}
+			for (int i = 0; i < in.sizes[v]; i++) {
+				w = in.ends[v][i];
+				out.remove(w, v);
+				if (marks[w] != order) {
+					marks[w] = order;
+					neighbors[count++] = w;
+				}
+			}
+			out.clear(v);
+			in.clear(v);
+			return count;
+		}
+
+		/**
+		 * Find the shortcuts contracting v needs: u -> v -> w for every in
+		 * neighbor u and out neighbor w, unless a witness path avoiding v is as
+		 * short.
+		 *
+		 * @param add whether to add them to the graph or only count them
+		 */
+		private int shortcuts(int v, boolean add) {
+			int limit = add ? WITNESS_SETTLE_LIMIT : SIMULATE_SETTLE_LIMIT;
+			int count = 0, u, w;
+			double toV, maxOut = 0, via;
+			for (int j = 0; j < out.sizes[v]; j++) {
+				maxOut = Math.max(maxOut, out.weights[v][j]);
+				targets[out.ends[v][j]] = v;
+			}
+
+			for (int i = 0; i < in.sizes[v]; i++) {
+				u = in.ends[v][i];
+				toV = in.weights[v][i];
+				witnessSearch(u, v, toV + maxOut, out.sizes[v], limit);
+
+				for (int j = 0; j < out.sizes[v]; j++) {
+					w = out.ends[v][j];
+					if (w == u)
+						continue;
+					via = toV + out.weights[v][j];
+					if (dist[w] <= via)
+						continue;
+
+					count++;
+					if (add) {
+						out.put(u, w, via, v);
+						in.put(w, u, via, v);
+					}
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Limited Dijkstra from source that avoids the vertex being contracted.
+		 * Leaves distances in dist, anything not reached stays infinite.
+		 */
+		private void witnessSearch(int source, int avoid, double maxDist, int targetCount, int limit) {
+			for (int i = 0; i < touchedCount; i++)
+				dist[touched[i]] = Double.MAX_VALUE;
+			touchedCount = 0;
+			witnessHeap.clear();
+
+			dist[source] = 0;
+			touched[touchedCount++] = source;
+			witnessHeap.insert(source, 0);
+			int settled = 0, curr, next;
+			double newDist;
+			while (!witnessHeap.isEmpty() && settled++ < limit) {
+				if (witnessHeap.peekPriority() > maxDist)
+					break;
+				curr = witnessHeap.poll();
+
+				// Every out neighbor of avoid has its final distance
+				if (targets[curr] == avoid && --targetCount == 0)
+					break;
+
+				for (int i = 0; i < out.sizes[curr]; i++) {
+					next = out.ends[curr][i];
+					if (next == avoid)
+						continue;
+					newDist = dist[curr] + out.weights[curr][i];
+					// Too long to be a witness, no use queueing it
+					if (newDist < dist[next] && newDist <= maxDist) {
+						if (dist[next] == Double.MAX_VALUE)
+							touched[touchedCount++] = next;
+						dist[next] = newDist;
+						witnessHeap.insertOrDecrease(next, newDist);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Preprocess a graph file and save its hierarchy next to it.
+	 *
+	 * Usage: ContractionHierarchy graph.tsv|graph.rgraph
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: ContractionHierarchy <graph.tsv|graph.rgraph>");
+			System.exit(1);
+		}
+
+		File graphFile = new File(args[0]);
+		RouteGraph graph = RouteGraph.read(graphFile);
+		long begin = System.nanoTime();
+		ContractionHierarchy hierarchy = build(graph);
+		hierarchy.save(new File(graphFile.getPath() + EXTENSION));
+		System.err.println(graph.vertexCount() + " points contracted into " + hierarchy.edgeCount() + " edges in "
+				+ (System.nanoTime() - begin) / 1000000 + " ms");
+	}
+}
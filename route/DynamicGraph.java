@@ -0,0 +1,248 @@
+package route;
+
+import java.util.Arrays;
+
+/**
+ * RouteGraph whose edge weights can change while it is routed on, for road
+ * closures and re-weighted edges. The vertices and the edges themselves stay
+ * those of the wrapped graph. A closed edge has weight Double.MAX_VALUE,
+ * which the weighted searches treat as no edge, BFS and DFS still take it.
+ *
+ * Every change bumps the version and is logged, so an incremental planner
+ * can repair just what changed since the version it last saw, see
+ * LifelongPlanner. Preprocessed structures (ContractionHierarchy, Landmarks,
+ * AllPairs) are not updated and must be made again after a change.
+ *
+ * @author Hackerry
+ *
+ */
+public class DynamicGraph implements RouteGraph {
+	public static final double CLOSED = Double.MAX_VALUE;
+
+	private final RouteGraph base;
+	private final double[] weights;
+	// Edge changed by each version, changes[v] took the graph to version v + 1
+	private int[] changes = new int[16];
+	private int version = 0;
+	private Reverse reverse;
+
+	public DynamicGraph(RouteGraph base) {
+		this.base = base;
+		weights = new double[base.edgeCount()];
+		for (int e = 0; e < weights.length; e++)
+			weights[e] = base.weight(e);
+	}
+
+	/**
+	 * Number of changes made so far.
+	 */
+	public int version() {
+		return version;
+	}
+
+	/**
+	 * Edge that the change to version + 1 was made to.
+	 */
+	public int changedEdge(int version) {
+		if (version < 0 || version >= this.version)
+			throw new IllegalArgumentException("No change " + version);
+		return changes[version];
+	}
+
+	/**
+	 * Weight the edge had in the wrapped graph.
+	 */
+	public double originalWeight(int edge) {
+		return base.weight(edge);
+	}
+
+	public void setWeight(int edge, double weight) {
+		if (weight < 0 || Double.isNaN(weight))
+			throw new IllegalArgumentException("Invalid weight " + weight);
+		weights[edge] = weight;
+		if (version == changes.length)
+			changes = Arrays.copyOf(changes, version * 2);
+		changes[version++] = edge;
+	}
+
+	/**
+	 * Set the weight of edge from -> to.
+	 *
+	 * @throws IllegalArgumentException if there is no such edge
+	 */
+	public void setWeight(int from, int to, double weight) {
+		int edge = findEdge(from, to);
+		if (edge < 0)
+			throw new IllegalArgumentException("No edge " + from + " -> " + to);
+		setWeight(edge, weight);
+	}
+
+	/**
+	 * Close edge from -> to, the way back stays open.
+	 */
+	public void close(int from, int to) {
+		setWeight(from, to, CLOSED);
+	}
+
+	/**
+	 * Give edge from -> to back its original weight.
+	 */
+	public void reopen(int from, int to) {
+		int edge = findEdge(from, to);
+		if (edge < 0)
+			throw new IllegalArgumentException("No edge " + from + " -> " + to);
+		setWeight(edge, base.weight(edge));
+	}
+
+	public boolean isClosed(int edge) {
+		return weights[edge] == CLOSED;
+	}
+
+	@Override
+	public int vertexCount() {
+		return base.vertexCount();
+	}
+
+	@Override
+	public int edgeCount() {
+		return weights.length;
+	}
+
+	@Override
+	public int firstEdge(int v) {
+		return base.firstEdge(v);
+	}
+
+	@Override
+	public int endEdge(int v) {
+		return base.endEdge(v);
+	}
+
+	@Override
+	public int target(int edge) {
+		return base.target(edge);
+	}
+
+	@Override
+	public double weight(int edge) {
+		return weights[edge];
+	}
+
+	@Override
+	public double x(int v) {
+		return base.x(v);
+	}
+
+	@Override
+	public double y(int v) {
+		return base.y(v);
+	}
+
+	@Override
+	public String label(int v) {
+		return base.label(v);
+	}
+
+	/**
+	 * Weights are set one by one, they are no longer derived from the points.
+	 */
+	@Override
+	public boolean isImplicit() {
+		return false;
+	}
+
+	/**
+	 * A view with every edge turned around that reads the current weights, so
+	 * it never goes stale. Made once, the edges never change.
+	 */
+	@Override
+	public RouteGraph reverse() {
+		if (reverse == null)
+			reverse = new Reverse();
+		return reverse;
+	}
+
+	/**
+	 * Reversed CSR arrays, each reversed edge remembers the edge it mirrors to
+	 * read its weight.
+	 */
+	private class Reverse implements RouteGraph {
+		private final int[] offsets, sources, mirrored;
+
+		Reverse() {
+			int n = base.vertexCount(), m = base.edgeCount();
+			offsets = new int[n + 1];
+			sources = new int[m];
+			mirrored = new int[m];
+			for (int e = 0; e < m; e++)
+				offsets[base.target(e) + 1]++;
+			for (int v = 0; v < n; v++)
+				offsets[v + 1] += offsets[v];
+
+			// Sources come in increasing order, so every list ends up sorted
+			int[] fill = Arrays.copyOf(offsets, n);
+			for (int u = 0; u < n; u++) {
+				for (int e = base.firstEdge(u); e < base.endEdge(u); e++) {
+					int slot = fill[base.target(e)]++;
+					sources[slot] = u;
+					mirrored[slot] = e;
+				}
+			}
+		}
+
+		@Override
+		public int vertexCount() {
+			return DynamicGraph.this.vertexCount();
+		}
+
+		@Override
+		public int edgeCount() {
+			return sources.length;
+		}
+
+		@Override
+		public int firstEdge(int v) {
+			return offsets[v];
+		}
+
+		@Override
+		public int endEdge(int v) {
+			return offsets[v + 1];
+		}
+
+		@Override
+		public int target(int edge) {
+			return sources[edge];
+		}
+
+		@Override
+		public double weight(int edge) {
+			return weights[mirrored[edge]];
+		}
+
+		@Override
+		public double x(int v) {
+			return DynamicGraph.this.x(v);
+		}
+
+		@Override
+		public double y(int v) {
+			return DynamicGraph.this.y(v);
+		}
+
+		@Override
+		public String label(int v) {
+			return DynamicGraph.this.label(v);
+		}
+
+		@Override
+		public boolean isImplicit() {
+			return false;
+		}
+
+		@Override
+		public RouteGraph reverse() {
+			return DynamicGraph.this;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package route;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of building a graph structure: packing edges into
+ * CSR form or preprocessing a graph for the faster searches.
+ *
+ * @author Hackerry
+ *
+ */
+@Name("route.GraphBuild")
+@Label("Graph Build")
+@Category({ "Simulators", "Route" })
+@Description("A graph packed or preprocessed")
+public class GraphBuildEvent extends Event {
+	@Label("Structure")
+	@Description("csr from an edge list, complete, nearest neighbors, within radius, contraction hierarchy, "
+			+ "landmarks or all pairs")
+	String structure;
+
+	@Label("Vertices")
+	int vertexCount;
+
+	@Label("Edges")
+	@Description("Directed edges of the graph built or preprocessed")
+	int edgeCount;
+
+	GraphBuildEvent(String structure) {
+		this.structure = structure;
+	}
+
+	void set(int vertexCount, int edgeCount) {
+		this.vertexCount = vertexCount;
+		this.edgeCount = edgeCount;
+	}
+}
@@ -0,0 +1,46 @@
+package route;
+
+import java.io.File;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of reading a graph or maze file, lasting from the
+ * open to the graph being ready.
+ *
+ * @author Hackerry
+ *
+ */
+@Name("route.GraphLoad")
+@Label("Graph Load")
+@Category({ "Simulators", "Route" })
+@Description("A graph or maze file read")
+public class GraphLoadEvent extends Event {
+	@Label("File")
+	String file;
+
+	@Label("Format")
+	@Description("tsv, rgraph or maze")
+	String format;
+
+	@Label("Vertices")
+	int vertexCount;
+
+	@Label("Edges")
+	@Description("Directed edges, an undirected edge counts twice")
+	long edgeCount;
+
+	/**
+	 * Describe what was read, before committing.
+	 */
+	public void set(File file, String format, int vertexCount, long edgeCount) {
+		this.file = file.getPath();
+		this.format = format;
+		this.vertexCount = vertexCount;
+		this.edgeCount = edgeCount;
+	}
+}
@@ -0,0 +1,228 @@
+package route;
+
+import java.util.Arrays;
+
+/**
+ * Indexed d-ary min heap over int keys in [0, capacity) with double
+ * priorities. Every key is in the heap at most once, so a better priority is
+ * applied in place with decreaseKey instead of inserting a duplicate.
+ *
+ * Pushes, pops, key updates and the largest size are counted for
+ * SearchMetrics until resetCounters.
+ *
+ * @author Hackerry
+ *
+ */
+public class IndexedHeap {
+	public static final int DEFAULT_ARITY = 4;
+
+	private final int arity;
+	private final int[] heap;
+	private final int[] position;
+	private final double[] priority;
+	private int size = 0;
+	private long pushes = 0, pops = 0, keyUpdates = 0;
+	private int peakSize = 0;
+
+	public IndexedHeap(int capacity) {
+		this(capacity, DEFAULT_ARITY);
+	}
+
+	/**
+	 * @param capacity keys must be smaller than this
+	 * @param arity    children per heap node, at least 2
+	 */
+	public IndexedHeap(int capacity, int arity) {
+		if (arity < 2)
+			throw new IllegalArgumentException("Arity must be at least 2");
+		this.arity = arity;
+		heap = new int[capacity];
+		position = new int[capacity];
+		priority = new double[capacity];
+		Arrays.fill(position, -1);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public long pushes() {
+		return pushes;
+	}
+
+	public long pops() {
+		return pops;
+	}
+
+	/**
+	 * Number of decreaseKey and changeKey calls.
+	 */
+	public long keyUpdates() {
+		return keyUpdates;
+	}
+
+	public int peakSize() {
+		return peakSize;
+	}
+
+	/**
+	 * Zero the counters, the largest size starts over from the current one.
+	 */
+	public void resetCounters() {
+		pushes = pops = keyUpdates = 0;
+		peakSize = size;
+	}
+
+	public boolean contains(int key) {
+		return position[key] >= 0;
+	}
+
+	/**
+	 * Priority of a key currently in the heap.
+	 */
+	public double priority(int key) {
+		return priority[key];
+	}
+
+	/**
+	 * Priority of the minimum key.
+	 */
+	public double peekPriority() {
+		return priority[heap[0]];
+	}
+
+	public int peek() {
+		return heap[0];
+	}
+
+	public void insert(int key, double p) {
+		if (position[key] >= 0)
+			throw new IllegalStateException("Key " + key + " already in heap");
+		priority[key] = p;
+		heap[size] = key;
+		position[key] = size;
+		siftUp(size++);
+		pushes++;
+		if (size > peakSize)
+			peakSize = size;
+	}
+
+	/**
+	 * Lower the priority of a key already in the heap.
+	 */
+	public void decreaseKey(int key, double p) {
+		if (p > priority[key])
+			throw new IllegalArgumentException("Priority of " + key + " can only decrease");
+		priority[key] = p;
+		siftUp(position[key]);
+		keyUpdates++;
+	}
+
+	/**
+	 * Move a key already in the heap to any new priority.
+	 */
+	public void changeKey(int key, double p) {
+		double old = priority[key];
+		priority[key] = p;
+		if (p < old)
+			siftUp(position[key]);
+		else
+			siftDown(position[key]);
+		keyUpdates++;
+	}
+
+	/**
+	 * Insert the key, or lower its priority if it is already in the heap.
+	 *
+	 * @return false if the key was already in the heap with a priority no higher
+	 */
+	public boolean insertOrDecrease(int key, double p) {
+		if (position[key] < 0) {
+			insert(key, p);
+			return true;
+		}
+		if (p >= priority[key])
+			return false;
+		decreaseKey(key, p);
+		return true;
+	}
+
+	/**
+	 * Take a key out of the heap wherever it is.
+	 */
+	public void remove(int key) {
+		int pos = position[key], moved;
+		position[key] = -1;
+		if (--size > pos) {
+			moved = heap[size];
+			heap[pos] = moved;
+			position[moved] = pos;
+			siftUp(pos);
+			siftDown(position[moved]);
+		}
+	}
+
+	/**
+	 * Remove and return the key with the smallest priority.
+	 */
+	public int poll() {
+		int min = heap[0];
+		position[min] = -1;
+		if (--size > 0) {
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		pops++;
+		return min;
+	}
+
+	/**
+	 * Remove all keys, in time proportional to the current size.
+	 */
+	public void clear() {
+		for (int i = 0; i < size; i++)
+			position[heap[i]] = -1;
+		size = 0;
+	}
+
+	private void siftUp(int pos) {
+		int key = heap[pos], parent;
+		double p = priority[key];
+		while (pos > 0) {
+			parent = (pos - 1) / arity;
+			if (priority[heap[parent]] <= p)
+				break;
+			heap[pos] = heap[parent];
+			position[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = key;
+		position[key] = pos;
+	}
+
+	private void siftDown(int pos) {
+		int key = heap[pos], child, best, last;
+		double p = priority[key];
+		while ((child = pos * arity + 1) < size) {
+			// Find the smallest child
+			best = child;
+			last = Math.min(child + arity, size);
+			for (int c = child + 1; c < last; c++) {
+				if (priority[heap[c]] < priority[heap[best]])
+					best = c;
+			}
+			if (priority[heap[best]] >= p)
+				break;
+			heap[pos] = heap[best];
+			position[heap[pos]] = pos;
+			pos = best;
+		}
+		heap[pos] = key;
+		position[key] = pos;
+	}
+}
@@ -0,0 +1,83 @@
+package route;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Vertex names kept as UTF-8 bytes in one shared pool. A String is only made
+ * the first time a label is asked for, and is kept for later calls. Once
+ * filled the table may be read from several threads, at worst a String is
+ * made twice.
+ *
+ * @author Hackerry
+ *
+ */
+public class LabelTable {
+	private byte[] pool = new byte[1024];
+	private int[] starts = new int[65];
+	private String[] strings;
+	private int size = 0;
+
+	/**
+	 * Build a table holding the given labels.
+	 */
+	public static LabelTable of(String[] labels) {
+		LabelTable table = new LabelTable();
+		for (String label : labels)
+			table.add(label.getBytes(StandardCharsets.UTF_8));
+		table.strings = Arrays.copyOf(labels, labels.length);
+		return table;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Append bytes from..to of buffer as the next label.
+	 */
+	public void add(ByteBuffer buffer, int from, int to) {
+		int length = to - from;
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++)
+			pool[starts[size] + i] = buffer.get(from + i);
+		starts[size + 1] = starts[size] + length;
+		size++;
+	}
+
+	/**
+	 * Append the next label.
+	 */
+	public void add(byte[] label) {
+		ensureCapacity(label.length);
+		System.arraycopy(label, 0, pool, starts[size], label.length);
+		starts[size + 1] = starts[size] + label.length;
+		size++;
+	}
+
+	/**
+	 * Label number i.
+	 */
+	public String get(int i) {
+		if (i < 0 || i >= size)
+			throw new IndexOutOfBoundsException("No label " + i);
+		if (strings == null)
+			strings = new String[size];
+		else if (strings.length < size)
+			strings = Arrays.copyOf(strings, size);
+		if (strings[i] == null)
+			strings[i] = new String(pool, starts[i], starts[i + 1] - starts[i], StandardCharsets.UTF_8);
+		return strings[i];
+	}
+
+	private void ensureCapacity(int length) {
+		if (size + 1 == starts.length)
+			starts = Arrays.copyOf(starts, starts.length * 2);
+		long needed = (long) starts[size] + length;
+		if (needed > Integer.MAX_VALUE - 8)
+			throw new IllegalStateException("Label table full");
+		if (needed > pool.length)
+			pool = Arrays.copyOf(pool, (int) Math.min(Math.max(needed, pool.length * 2L), Integer.MAX_VALUE - 8));
+	}
+}
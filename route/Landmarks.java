@@ -0,0 +1,151 @@
+package route;
+
+import java.util.Arrays;
+
+/**
+ * Landmark distance tables for the ALT heuristic (A*, landmarks, triangle
+ * inequality). For every landmark L the distances d(L, v) and d(v, L) to
+ * every vertex v are stored, vertex by vertex so one vertex's distances share
+ * a cache line. By the triangle inequality
+ *
+ * <pre>
+ * d(v, t) >= d(v, L) - d(t, L)    and    d(v, t) >= d(L, t) - d(L, v)
+ * </pre>
+ *
+ * and the largest of these over all landmarks is a consistent lower bound, so
+ * A* with it still finds shortest routes.
+ *
+ * Landmarks are picked by farthest selection: each one is the vertex farthest
+ * from those picked so far, which spreads them around the edge of the graph.
+ *
+ * @author Hackerry
+ *
+ */
+public class Landmarks {
+	public static final int DEFAULT_COUNT = 16;
+	static final double UNREACHABLE = Double.MAX_VALUE;
+
+	private final int count;
+	private final int[] landmarks;
+	// from[v * count + l] = d(landmark l, v), to[v * count + l] = d(v, landmark l)
+	private final double[] from, to;
+
+	private Landmarks(int[] landmarks, double[] from, double[] to) {
+		this.count = landmarks.length;
+		this.landmarks = landmarks;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Pick landmarks and compute their distance tables.
+	 *
+	 * @param count number of landmarks, fewer if the graph is smaller
+	 */
+	public static Landmarks select(RouteGraph graph, int count) {
+		GraphBuildEvent event = new GraphBuildEvent("landmarks");
+		event.begin();
+		int n = graph.vertexCount();
+		count = Math.min(count, n);
+		RouteGraph reverse = graph.reverse();
+		int[] landmarks = new int[count];
+		double[] from = new double[n * count], to = new double[n * count];
+		if (count == 0)
+			return new Landmarks(landmarks, from, to);
+
+		double[] dist = new double[n];
+		// Distance from the closest landmark picked so far
+		double[] nearest = new double[n];
+		IndexedHeap heap = new IndexedHeap(n);
+
+		// Start from the vertex farthest from vertex 0
+		shortestDistances(graph, 0, dist, heap);
+		int next = farthest(dist, landmarks, 0);
+		Arrays.fill(nearest, UNREACHABLE);
+		for (int l = 0; l < count; l++) {
+			landmarks[l] = next;
+			shortestDistances(graph, next, dist, heap);
+			for (int v = 0; v < n; v++) {
+				from[v * count + l] = dist[v];
+				nearest[v] = Math.min(nearest[v], dist[v]);
+			}
+			if (reverse != graph)
+				shortestDistances(reverse, next, dist, heap);
+			for (int v = 0; v < n; v++)
+				to[v * count + l] = dist[v];
+
+			next = farthest(nearest, landmarks, l + 1);
+		}
+		event.set(n, graph.edgeCount());
+		event.commit();
+		return new Landmarks(landmarks, from, to);
+	}
+
+	public int count() {
+		return count;
+	}
+
+	public int landmark(int l) {
+		return landmarks[l];
+	}
+
+	/**
+	 * Lower bound on the distance from v to t, the largest triangle bound of
+	 * all landmarks.
+	 */
+	public double lowerBound(int v, int t) {
+		int vRow = v * count, tRow = t * count;
+		double bound = 0, d;
+		for (int l = 0; l < count; l++) {
+			d = to[vRow + l] - to[tRow + l];
+			if (d > bound)
+				bound = d;
+			d = from[tRow + l] - from[vRow + l];
+			if (d > bound)
+				bound = d;
+		}
+		return bound;
+	}
+
+	/**
+	 * Plain Dijkstra from source, unreachable vertices get UNREACHABLE.
+	 */
+	private static void shortestDistances(RouteGraph graph, int source, double[] dist, IndexedHeap heap) {
+		Arrays.fill(dist, UNREACHABLE);
+		heap.clear();
+		dist[source] = 0;
+		heap.insert(source, 0);
+		int curr, neighbor;
+		double newDist;
+		while (!heap.isEmpty()) {
+			curr = heap.poll();
+			for (int e = graph.firstEdge(curr); e < graph.endEdge(curr); e++) {
+				neighbor = graph.target(e);
+				newDist = dist[curr] + graph.weight(e);
+				if (newDist < dist[neighbor]) {
+					dist[neighbor] = newDist;
+					heap.insertOrDecrease(neighbor, newDist);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Vertex with the largest distance that is not a landmark yet. An
+	 * unreachable vertex counts as farthest, so a landmark lands in every
+	 * component while there are landmarks left.
+	 */
+	private static int farthest(double[] dist, int[] picked, int pickedCount) {
+		int best = -1;
+		outer: for (int v = 0; v < dist.length; v++) {
+			if (best >= 0 && dist[v] <= dist[best])
+				continue;
+			for (int i = 0; i < pickedCount; i++) {
+				if (picked[i] == v)
+					continue outer;
+			}
+			best = v;
+		}
+		return best < 0 ? 0 : best;
+	}
+}
@@ -0,0 +1,325 @@
+package route;
+
+import java.util.Arrays;
+
+/**
+ * Lifelong Planning A* (LPA*): A* that keeps its search between queries on
+ * the same start and end, and after edge weights change only repairs the
+ * vertices whose distance the change affects. Replanning after a small change
+ * costs in proportion to the region it touches, not to the graph.
+ *
+ * Every vertex keeps g, its distance as last expanded, and rhs, the best
+ * distance its predecessors offer. The two differ only for vertices in the
+ * queue. A change to edge u -> v recomputes rhs(v) and the queue settles
+ * the difference outwards.
+ *
+ * Changes are picked up from a DynamicGraph by its version, on any other
+ * graph the planner only saves the search on a repeated query.
+ *
+ * The estimate must never overshoot an edge, or the repair stops before the
+ * route is shortest. It is the straight line distance scaled down to the
+ * lowest weight per distance of any edge, and a change below that scale
+ * starts the search over with the lower one.
+ *
+ * @author Hackerry
+ *
+ */
+public class LifelongPlanner {
+	private static final double UNREACHABLE = Double.MAX_VALUE;
+	private static final RouteListener NO_LISTENER = new RouteListener() {
+	};
+
+	private final RouteGraph graph, reverse;
+	private final DynamicGraph dynamic;
+	private final double[] g, rhs;
+	// Breadth first walk back from the end, see extractPath
+	private final int[] order, next;
+	private final boolean[] onWalk;
+	private final IndexedHeap queue;
+	private int start = -1, end = -1, seenVersion;
+	private double constant, estimateConstant;
+	// Lowest weight per straight line distance of any edge, at most 1
+	private double scale = 1;
+	// Counts of the last plan, for SearchMetrics
+	private long settled, relaxed;
+
+	/**
+	 * @param graph graph to plan on, a DynamicGraph to have weight changes
+	 *              repaired
+	 */
+	public LifelongPlanner(RouteGraph graph) {
+		this.graph = graph;
+		reverse = graph.reverse();
+		dynamic = graph instanceof DynamicGraph ? (DynamicGraph) graph : null;
+		int n = graph.vertexCount();
+		g = new double[n];
+		rhs = new double[n];
+		order = new int[n];
+		next = new int[n];
+		onWalk = new boolean[n];
+		queue = new IndexedHeap(n);
+		for (int u = 0; u < n; u++) {
+			for (int e = graph.firstEdge(u); e < graph.endEdge(u); e++)
+				scale = Math.min(scale, weightPerDistance(u, e));
+		}
+	}
+
+	/**
+	 * Plan a route, repairing the last plan if start, end and constant are the
+	 * same as last time.
+	 *
+	 * @param constant multiplier of the A* distance estimate, capped at the
+	 *                 lowest weight per distance of the edges
+	 * @param listener receives a probe for every successor updated and a cycle
+	 *                 end for every vertex expanded, may be null
+	 * @return the route, or null if end is unreachable or the thread got
+	 *         interrupted. An interrupted plan is resumed by the next call.
+	 */
+	public RouteResult plan(int start, int end, double constant, RouteListener listener) {
+		settled = relaxed = 0;
+		queue.resetCounters();
+		if (start != this.start || end != this.end || constant != this.constant)
+			reset(start, end, constant);
+		else
+			applyChanges();
+
+		int cycles = computeShortestPath(listener);
+		if (cycles < 0 || g[end] == UNREACHABLE)
+			return null;
+		int[] path = extractPath();
+		return path == null ? null : new RouteResult(path, g[end], cycles);
+	}
+
+	/**
+	 * Distance from start to v as far as the last plan settled it.
+	 */
+	public double distance(int v) {
+		return g[v];
+	}
+
+	/**
+	 * Vertices expanded by the last plan.
+	 */
+	long settled() {
+		return settled;
+	}
+
+	/**
+	 * Edges the last plan looked at while expanding.
+	 */
+	long relaxed() {
+		return relaxed;
+	}
+
+	IndexedHeap queue() {
+		return queue;
+	}
+
+	/**
+	 * Forget the old search and queue just the start.
+	 */
+	private void reset(int start, int end, double constant) {
+		this.start = start;
+		this.end = end;
+		this.constant = constant;
+		estimateConstant = Math.min(constant, scale);
+		Arrays.fill(g, UNREACHABLE);
+		Arrays.fill(rhs, UNREACHABLE);
+		queue.clear();
+		rhs[start] = 0;
+		queue.insert(start, key(start));
+		if (dynamic != null)
+			seenVersion = dynamic.version();
+	}
+
+	/**
+	 * Recompute rhs of the target of every edge changed since the last plan.
+	 * If a change makes the estimate overshoot, every key is off and the
+	 * search starts over instead.
+	 */
+	private void applyChanges() {
+		if (dynamic == null)
+			return;
+		int version = dynamic.version(), edge;
+		for (int v = seenVersion; v < version; v++) {
+			edge = dynamic.changedEdge(v);
+			scale = Math.min(scale, weightPerDistance(source(edge), edge));
+		}
+		if (scale < estimateConstant) {
+			reset(start, end, constant);
+			return;
+		}
+		for (; seenVersion < version; seenVersion++)
+			updateVertex(graph.target(dynamic.changedEdge(seenVersion)));
+	}
+
+	/**
+	 * Weight of an edge over the straight line distance it spans.
+	 */
+	private double weightPerDistance(int u, int edge) {
+		int v = graph.target(edge);
+		double dist = CSRGraph.euclideanDist(graph.x(u), graph.y(u), graph.x(v), graph.y(v));
+		return dist > 0 ? graph.weight(edge) / dist : Double.MAX_VALUE;
+	}
+
+	/**
+	 * Vertex an edge leaves from, the last one whose edges start at or before
+	 * it.
+	 */
+	private int source(int edge) {
+		int low = 0, high = graph.vertexCount() - 1, mid;
+		while (low < high) {
+			mid = (low + high + 1) >>> 1;
+			if (graph.firstEdge(mid) <= edge)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Expand queued vertices until the end is consistent and nothing left in
+	 * the queue can improve it.
+	 *
+	 * @return cycles taken or -1 if interrupted
+	 */
+	private int computeShortestPath(RouteListener listener) {
+		if (listener == null)
+			listener = NO_LISTENER;
+		int curr, neighbor;
+		double cost;
+		boolean discovered;
+		int cycle = 0;
+
+		while (!queue.isEmpty() && (isBefore(queue.peek(), end) || rhs[end] != g[end])) {
+			curr = queue.poll();
+			settled++;
+			relaxed += graph.endEdge(curr) - graph.firstEdge(curr);
+			if (g[curr] > rhs[curr]) {
+				// Overconsistent, settle it and offer the lower distance onwards
+				g[curr] = rhs[curr];
+				for (int e = graph.firstEdge(curr); e < graph.endEdge(curr); e++) {
+					neighbor = graph.target(e);
+					cost = add(g[curr], graph.weight(e));
+					discovered = false;
+					if (neighbor != start && cost < rhs[neighbor]) {
+						discovered = rhs[neighbor] == UNREACHABLE;
+						rhs[neighbor] = cost;
+						requeue(neighbor);
+					}
+					listener.onProbe(curr, neighbor, discovered);
+				}
+			} else {
+				// Underconsistent, its old distance no longer holds
+				g[curr] = UNREACHABLE;
+				updateVertex(curr);
+				for (int e = graph.firstEdge(curr); e < graph.endEdge(curr); e++) {
+					neighbor = graph.target(e);
+					updateVertex(neighbor);
+					listener.onProbe(curr, neighbor, false);
+				}
+			}
+
+			cycle++;
+			listener.onCycleEnd(cycle);
+			if (Thread.currentThread().isInterrupted())
+				return -1;
+		}
+		return cycle;
+	}
+
+	/**
+	 * Recompute rhs of v from its predecessors and fix its place in the queue.
+	 */
+	private void updateVertex(int v) {
+		if (v != start) {
+			double best = UNREACHABLE;
+			for (int e = reverse.firstEdge(v); e < reverse.endEdge(v); e++)
+				best = Math.min(best, add(g[reverse.target(e)], reverse.weight(e)));
+			rhs[v] = best;
+		}
+		requeue(v);
+	}
+
+	/**
+	 * Queue v with its current key if inconsistent, take it out if not.
+	 */
+	private void requeue(int v) {
+		if (g[v] != rhs[v]) {
+			if (queue.contains(v))
+				queue.changeKey(v, key(v));
+			else
+				queue.insert(v, key(v));
+		} else if (queue.contains(v)) {
+			queue.remove(v);
+		}
+	}
+
+	/**
+	 * Primary key, min(g, rhs) plus the estimate to the end. Ties are broken
+	 * by min(g, rhs), see isBefore.
+	 */
+	private double key(int v) {
+		return add(Math.min(g[v], rhs[v]), estimate(v));
+	}
+
+	/**
+	 * Whether u comes before v in the lexicographic (key, min(g, rhs)) order.
+	 */
+	private boolean isBefore(int u, int v) {
+		double ku = key(u), kv = key(v);
+		return ku < kv || (ku == kv && Math.min(g[u], rhs[u]) < Math.min(g[v], rhs[v]));
+	}
+
+	private double estimate(int v) {
+		return estimateConstant * CSRGraph.euclideanDist(graph.x(v), graph.y(v), graph.x(end), graph.y(end));
+	}
+
+	/**
+	 * Sum that stays UNREACHABLE instead of overflowing.
+	 */
+	private static double add(double a, double b) {
+		double sum = a + b;
+		return sum >= UNREACHABLE ? UNREACHABLE : sum;
+	}
+
+	/**
+	 * Walk back from the end along edges that give exactly the distance of
+	 * their target, breadth first so that edges of weight 0 can't lead the
+	 * walk round in circles.
+	 *
+	 * @return the route, or null if no such walk reaches the start, which only
+	 *         a search cut short by an overshooting estimate leaves behind
+	 */
+	private int[] extractPath() {
+		int head = 0, tail = 0, v, u;
+		order[tail++] = end;
+		onWalk[end] = true;
+		while (head < tail && !onWalk[start]) {
+			v = order[head++];
+			for (int e = reverse.firstEdge(v); e < reverse.endEdge(v); e++) {
+				u = reverse.target(e);
+				if (!onWalk[u] && g[u] != UNREACHABLE && add(g[u], reverse.weight(e)) == g[v]) {
+					onWalk[u] = true;
+					next[u] = v;
+					order[tail++] = u;
+				}
+			}
+		}
+		boolean found = onWalk[start];
+		for (int i = 0; i < tail; i++)
+			onWalk[order[i]] = false;
+		if (!found)
+			return null;
+
+		int hops = 0;
+		for (v = start; v != end; v = next[v])
+			hops++;
+		int[] route = new int[hops + 1];
+		route[0] = v = start;
+		for (int i = 1; i <= hops; i++)
+			route[i] = v = next[v];
+		return route;
+	}
+}
@@ -0,0 +1,94 @@
+package route;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * RouteGraph read directly from the memory mapped sections of an .rgraph
+ * file. Nothing is loaded up front, pages come in as they are touched.
+ *
+ * @author Hackerry
+ *
+ */
+class MappedGraph implements RouteGraph {
+	private final int vertexCount, edgeCount;
+	private final boolean implicit;
+	private final DoubleBuffer x, y, weights;
+	private final IntBuffer offsets, targets, labelStarts;
+	private final ByteBuffer labelBytes;
+
+	MappedGraph(int vertexCount, int edgeCount, boolean implicit, DoubleBuffer x, DoubleBuffer y,
+			IntBuffer offsets, IntBuffer targets, DoubleBuffer weights, IntBuffer labelStarts, ByteBuffer labelBytes) {
+		this.vertexCount = vertexCount;
+		this.edgeCount = edgeCount;
+		this.implicit = implicit;
+		this.x = x;
+		this.y = y;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.labelStarts = labelStarts;
+		this.labelBytes = labelBytes;
+	}
+
+	@Override
+	public int vertexCount() {
+		return vertexCount;
+	}
+
+	@Override
+	public int edgeCount() {
+		return edgeCount;
+	}
+
+	@Override
+	public int firstEdge(int v) {
+		return offsets.get(v);
+	}
+
+	@Override
+	public int endEdge(int v) {
+		return offsets.get(v + 1);
+	}
+
+	@Override
+	public int target(int edge) {
+		return targets.get(edge);
+	}
+
+	@Override
+	public double weight(int edge) {
+		return weights.get(edge);
+	}
+
+	@Override
+	public double x(int v) {
+		return x.get(v);
+	}
+
+	@Override
+	public double y(int v) {
+		return y.get(v);
+	}
+
+	@Override
+	public boolean isImplicit() {
+		return implicit;
+	}
+
+	/**
+	 * Name of vertex v, decoded from the file on every call. Its index if the
+	 * file has no labels.
+	 */
+	@Override
+	public String label(int v) {
+		if (labelStarts == null)
+			return String.valueOf(v);
+		int start = labelStarts.get(v);
+		byte[] bytes = new byte[labelStarts.get(v + 1) - start];
+		labelBytes.get(start, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,210 @@
+package route;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary graph file (.rgraph). Everything is little-endian. A fixed header is
+ * followed by primitive sections, each starting on an 8 byte boundary:
+ *
+ * <pre>
+ * header   int magic, int version, int vertexCount, int edgeCount, int flags,
+ *          int unused, then a long file offset for every section below and
+ *          the long byte length of the label bytes
+ * x, y     double[vertexCount] each
+ * offsets  int[vertexCount + 1], CSR row starts
+ * targets  int[edgeCount]
+ * weights  double[edgeCount]
+ * labels   int[vertexCount + 1] starts into the UTF-8 label bytes, then the
+ *          bytes (only if the labels flag is set)
+ * </pre>
+ *
+ * Opening maps the sections and reads straight from them, so nothing is
+ * parsed or copied no matter how big the graph is. Every section must stay
+ * below 2 GB.
+ *
+ * @author Hackerry
+ *
+ */
+public class RGraphFile {
+	public static final String EXTENSION = ".rgraph";
+	static final int MAGIC = 0x48505247, VERSION = 1, FLAG_IMPLICIT = 1, FLAG_LABELS = 2;
+	static final int HEADER_SIZE = 88;
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private RGraphFile() {
+	}
+
+	/**
+	 * Map a graph file.
+	 *
+	 * @throws IOException if the file can't be read, is not a graph file or its
+	 *                     counts don't fit its size
+	 */
+	public static RouteGraph open(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("Not a graph file: " + file.getName());
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header) >= 0)
+				;
+			header.flip();
+			if (header.getInt() != MAGIC)
+				throw new IOException("Not a graph file: " + file.getName());
+			if (header.getInt() != VERSION)
+				throw new IOException("Unsupported graph file version: " + file.getName());
+
+			int n = header.getInt(), m = header.getInt(), flags = header.getInt();
+			header.getInt();
+			long x = header.getLong(), y = header.getLong(), offsets = header.getLong(), targets = header.getLong(),
+					weights = header.getLong(), labelStarts = header.getLong(), labelBytes = header.getLong(),
+					labelLength = header.getLong();
+			// Coordinates and a row start per vertex, a target and a weight per edge
+			if (n < 0 || m < 0 || HEADER_SIZE + 20L * n + 4 + 12L * m > channel.size())
+				throw new IOException("Invalid vertex or edge count " + n + ", " + m + ": " + file.getName());
+
+			boolean labels = (flags & FLAG_LABELS) != 0;
+			IntBuffer rows = map(channel, offsets, 4L * n + 4).asIntBuffer();
+			if (rows.get(0) != 0 || rows.get(n) != m)
+				throw new IOException("Edge offsets don't match the edge count: " + file.getName());
+			return new MappedGraph(n, m, (flags & FLAG_IMPLICIT) != 0, map(channel, x, 8L * n).asDoubleBuffer(),
+					map(channel, y, 8L * n).asDoubleBuffer(), rows, map(channel, targets, 4L * m).asIntBuffer(),
+					map(channel, weights, 8L * m).asDoubleBuffer(),
+					labels ? map(channel, labelStarts, 4L * n + 4).asIntBuffer() : null,
+					labels ? map(channel, labelBytes, labelLength) : null);
+		}
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new IOException("Graph section of " + size + " bytes is too large to map");
+		if (position < HEADER_SIZE || size < 0 || position + size > channel.size())
+			throw new IOException("Graph file is truncated");
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Write a graph file.
+	 *
+	 * @param graph  graph to save
+	 * @param labels whether to save vertex labels
+	 */
+	public static void write(RouteGraph graph, File file, boolean labels) throws IOException {
+		int n = graph.vertexCount(), m = graph.edgeCount();
+
+		// Label bytes are needed up front for the header
+		byte[][] labelBytes = null;
+		long labelLength = 0;
+		if (labels) {
+			labelBytes = new byte[n][];
+			for (int v = 0; v < n; v++) {
+				labelBytes[v] = graph.label(v).getBytes(StandardCharsets.UTF_8);
+				labelLength += labelBytes[v].length;
+			}
+			if (labelLength > Integer.MAX_VALUE)
+				throw new IOException("Labels too large for a graph file");
+		}
+
+		long x = HEADER_SIZE;
+		long y = align(x + 8L * n);
+		long offsets = align(y + 8L * n);
+		long targets = align(offsets + 4L * (n + 1));
+		long weights = align(targets + 4L * m);
+		long labelStarts = align(weights + 8L * m);
+		long labelStart = align(labelStarts + (labels ? 4L * (n + 1) : 0));
+
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(m);
+			buffer.putInt((graph.isImplicit() ? FLAG_IMPLICIT : 0) | (labels ? FLAG_LABELS : 0)).putInt(0);
+			buffer.putLong(x).putLong(y).putLong(offsets).putLong(targets).putLong(weights).putLong(labelStarts)
+					.putLong(labelStart).putLong(labelLength);
+
+			for (int v = 0; v < n; v++)
+				ensure(channel, buffer, 8).putDouble(graph.x(v));
+			pad(channel, buffer, y);
+			for (int v = 0; v < n; v++)
+				ensure(channel, buffer, 8).putDouble(graph.y(v));
+			pad(channel, buffer, offsets);
+			for (int v = 0; v < n; v++)
+				ensure(channel, buffer, 4).putInt(graph.firstEdge(v));
+			ensure(channel, buffer, 4).putInt(m);
+			pad(channel, buffer, targets);
+			for (int e = 0; e < m; e++)
+				ensure(channel, buffer, 4).putInt(graph.target(e));
+			pad(channel, buffer, weights);
+			for (int e = 0; e < m; e++)
+				ensure(channel, buffer, 8).putDouble(graph.weight(e));
+
+			if (labels) {
+				pad(channel, buffer, labelStarts);
+				int start = 0;
+				for (int v = 0; v < n; v++) {
+					ensure(channel, buffer, 4).putInt(start);
+					start += labelBytes[v].length;
+				}
+				ensure(channel, buffer, 4).putInt(start);
+				pad(channel, buffer, labelStart);
+				for (int v = 0; v < n; v++) {
+					for (byte b : labelBytes[v])
+						ensure(channel, buffer, 1).put(b);
+				}
+			}
+
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+		}
+	}
+
+	private static long align(long position) {
+		return (position + 7) & ~7L;
+	}
+
+	/**
+	 * Make room for size more bytes, writing out the buffer if full.
+	 */
+	static ByteBuffer ensure(FileChannel channel, ByteBuffer buffer, int size) throws IOException {
+		if (buffer.remaining() < size) {
+			buffer.flip();
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			buffer.clear();
+		}
+		return buffer;
+	}
+
+	/**
+	 * Write zeros up to the file position a section starts at.
+	 */
+	private static void pad(FileChannel channel, ByteBuffer buffer, long sectionStart) throws IOException {
+		long written = channel.position() + buffer.position();
+		for (; written < sectionStart; written++)
+			ensure(channel, buffer, 1).put((byte) 0);
+	}
+
+	/**
+	 * Convert a point file to a graph file.
+	 *
+	 * Usage: RGraphFile input.tsv output.rgraph
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: RGraphFile <input.tsv> <output.rgraph>");
+			System.exit(1);
+		}
+
+		long begin = System.nanoTime();
+		RouteGraph graph = TsvGraphReader.read(new File(args[0]));
+		write(graph, new File(args[1]), true);
+		System.err.println(graph.vertexCount() + " points and " + graph.edgeCount() + " edges converted in "
+				+ (System.nanoTime() - begin) / 1000000 + " ms");
+	}
+}
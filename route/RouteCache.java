@@ -0,0 +1,147 @@
+package route;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used cache of route results, keyed by graph fingerprint,
+ * algorithm, endpoints and A* constant. Bounded both by number of entries and
+ * by an estimate of the memory the cached paths take. Only routes that were
+ * found are cached, a null result may just mean the search got interrupted.
+ *
+ * Methods are synchronized so engines on several threads can share one cache.
+ *
+ * @author Hackerry
+ *
+ */
+public class RouteCache {
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+	public static final long DEFAULT_MAX_BYTES = 16L << 20;
+	// Rough size of a key, a result and their map entry without the path
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private final int maxEntries;
+	private final long maxBytes;
+	private final LinkedHashMap<Key, RouteResult> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes = 0, hits = 0, misses = 0;
+
+	public RouteCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * @param maxEntries most results kept
+	 * @param maxBytes   most memory the kept results may take, estimated
+	 */
+	public RouteCache(int maxEntries, long maxBytes) {
+		this.maxEntries = maxEntries;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Look up a result, counting a hit or a miss.
+	 *
+	 * @param fingerprint fingerprint of the graph routed on
+	 * @return the cached result or null
+	 */
+	public synchronized RouteResult get(long fingerprint, int algorithm, int start, int end, double constant) {
+		RouteResult result = entries.get(new Key(fingerprint, algorithm, start, end, constant));
+		if (result == null)
+			misses++;
+		else
+			hits++;
+		return result;
+	}
+
+	/**
+	 * Keep a result, evicting the least recently used ones over the bounds.
+	 */
+	public synchronized void put(long fingerprint, int algorithm, int start, int end, double constant,
+			RouteResult result) {
+		RouteResult old = entries.put(new Key(fingerprint, algorithm, start, end, constant), result);
+		if (old != null)
+			bytes -= sizeOf(old);
+		bytes += sizeOf(result);
+
+		Iterator<Map.Entry<Key, RouteResult>> eldest = entries.entrySet().iterator();
+		while (entries.size() > maxEntries || (bytes > maxBytes && entries.size() > 1)) {
+			bytes -= sizeOf(eldest.next().getValue());
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Drop every result, the counters are kept.
+	 */
+	public synchronized void invalidate() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * Hash of the vertex positions and every edge, so results are never
+	 * shared between different graphs.
+	 */
+	public static long fingerprint(RouteGraph graph) {
+		long hash = graph.vertexCount() * 31L + graph.edgeCount();
+		for (int v = 0; v < graph.vertexCount(); v++) {
+			hash = mix(hash, Double.doubleToLongBits(graph.x(v)));
+			hash = mix(hash, Double.doubleToLongBits(graph.y(v)));
+			for (int e = graph.firstEdge(v); e < graph.endEdge(v); e++) {
+				hash = mix(hash, graph.target(e));
+				hash = mix(hash, Double.doubleToLongBits(graph.weight(e)));
+			}
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, long value) {
+		hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 29);
+	}
+
+	private static long sizeOf(RouteResult result) {
+		return ENTRY_OVERHEAD + 4L * result.getPath().length;
+	}
+
+	private static final class Key {
+		private final long fingerprint, constantBits;
+		private final int algorithm, start, end;
+
+		Key(long fingerprint, int algorithm, int start, int end, double constant) {
+			this.fingerprint = fingerprint;
+			this.algorithm = algorithm;
+			this.start = start;
+			this.end = end;
+			this.constantBits = Double.doubleToLongBits(constant);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return fingerprint == other.fingerprint && constantBits == other.constantBits
+					&& algorithm == other.algorithm && start == other.start && end == other.end;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = mix(mix(mix(fingerprint, constantBits), algorithm), ((long) start << 32) | end);
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+}
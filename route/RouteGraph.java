@@ -0,0 +1,139 @@
+package route;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Read only view of a directed, weighted graph of points in CSR layout. The
+ * edges leaving vertex v are numbered firstEdge(v) .. endEdge(v) - 1 and are
+ * sorted by target.
+ *
+ * @author Hackerry
+ *
+ */
+public interface RouteGraph {
+	int vertexCount();
+
+	/**
+	 * Number of directed edges, an undirected edge counts twice.
+	 */
+	int edgeCount();
+
+	/**
+	 * Index of the first edge leaving vertex v.
+	 */
+	int firstEdge(int v);
+
+	/**
+	 * One past the index of the last edge leaving vertex v.
+	 */
+	int endEdge(int v);
+
+	int target(int edge);
+
+	double weight(int edge);
+
+	double x(int v);
+
+	double y(int v);
+
+	/**
+	 * Name of vertex v.
+	 */
+	String label(int v);
+
+	/**
+	 * Whether the edges were derived from the point coordinates rather than
+	 * listed one by one.
+	 */
+	boolean isImplicit();
+
+	default int degree(int v) {
+		return endEdge(v) - firstEdge(v);
+	}
+
+	/**
+	 * Look up the weight of edge from -> to.
+	 *
+	 * @return the weight or Double.MAX_VALUE if there is no such edge
+	 */
+	default double weight(int from, int to) {
+		int edge = findEdge(from, to);
+		return edge < 0 ? Double.MAX_VALUE : weight(edge);
+	}
+
+	/**
+	 * Binary search the sorted neighbor list of from for to.
+	 *
+	 * @return the edge index or -1 if the two vertices are not adjacent
+	 */
+	default int findEdge(int from, int to) {
+		int lo = firstEdge(from), hi = endEdge(from) - 1, mid, target;
+		while (lo <= hi) {
+			mid = (lo + hi) >>> 1;
+			target = target(mid);
+			if (target < to)
+				lo = mid + 1;
+			else if (target > to)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -1;
+	}
+
+	/**
+	 * Whether every edge has a twin of the same weight going the other way.
+	 */
+	default boolean isSymmetric() {
+		int twin;
+		for (int u = 0; u < vertexCount(); u++) {
+			for (int e = firstEdge(u); e < endEdge(u); e++) {
+				twin = findEdge(target(e), u);
+				if (twin < 0 || weight(twin) != weight(e))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The graph with every edge turned around, for searching backwards from a
+	 * target. A symmetric graph is its own reverse.
+	 */
+	default RouteGraph reverse() {
+		if (isSymmetric())
+			return this;
+
+		int n = vertexCount();
+		double[] x = new double[n], y = new double[n];
+		for (int v = 0; v < n; v++) {
+			x[v] = x(v);
+			y[v] = y(v);
+		}
+		CSRGraph.Builder builder = new CSRGraph.Builder(x, y);
+		for (int u = 0; u < n; u++) {
+			for (int e = firstEdge(u); e < endEdge(u); e++)
+				builder.addEdge(target(e), u, weight(e));
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Open a graph file, .rgraph files are mapped, anything else is read as a
+	 * tab separated point file.
+	 *
+	 * @throws IOException if the file can't be read or is malformed
+	 */
+	static RouteGraph read(File file) throws IOException {
+		GraphLoadEvent event = new GraphLoadEvent();
+		event.begin();
+		boolean mapped = file.getName().endsWith(RGraphFile.EXTENSION);
+		RouteGraph graph = mapped ? RGraphFile.open(file) : TsvGraphReader.read(file);
+		if (event.shouldCommit()) {
+			event.set(file, mapped ? "rgraph" : "tsv", graph.vertexCount(), graph.edgeCount());
+			event.commit();
+		}
+		return graph;
+	}
+}
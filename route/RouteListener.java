@@ -0,0 +1,43 @@
+package route;
+
+/**
+ * Subscriber of the step events a RoutingEngine emits while searching. All
+ * callbacks run on the searching thread and default to doing nothing.
+ *
+ * @author Hackerry
+ *
+ */
+public interface RouteListener {
+	/**
+	 * A vertex was taken off the frontier (A* and Dijkstra only).
+	 *
+	 * @param vertex the vertex taken
+	 * @param prev   current predecessor of every vertex, -1 if none. Read only.
+	 */
+	default void onExpand(int vertex, int[] prev) {
+	}
+
+	/**
+	 * An edge out of the expanded vertex was examined.
+	 *
+	 * @param from       the expanded vertex
+	 * @param to         the neighbor examined
+	 * @param discovered whether this reached the neighbor for the first time
+	 */
+	default void onProbe(int from, int to, boolean discovered) {
+	}
+
+	/**
+	 * Greedy search committed to the edge from -> to.
+	 */
+	default void onAdvance(int from, int to) {
+	}
+
+	/**
+	 * One main loop iteration finished.
+	 *
+	 * @param cycle number of iterations finished so far
+	 */
+	default void onCycleEnd(int cycle) {
+	}
+}
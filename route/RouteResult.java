@@ -0,0 +1,43 @@
+package route;
+
+/**
+ * Outcome of a single route query.
+ *
+ * @author Hackerry
+ *
+ */
+public class RouteResult {
+	private final int[] path;
+	private final double weight;
+	private final int cycles;
+
+	/**
+	 * @param path   vertices from start to end
+	 * @param weight sum of edge weights along the path
+	 * @param cycles main loop iterations the search took
+	 */
+	public RouteResult(int[] path, double weight, int cycles) {
+		this.path = path;
+		this.weight = weight;
+		this.cycles = cycles;
+	}
+
+	public int[] getPath() {
+		return path;
+	}
+
+	public double getWeight() {
+		return weight;
+	}
+
+	/**
+	 * Number of edges on the path.
+	 */
+	public int getHops() {
+		return path.length - 1;
+	}
+
+	public int getCycles() {
+		return cycles;
+	}
+}
@@ -0,0 +1,912 @@
+package route;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Headless route search over a RouteGraph. Runs at full speed without any UI,
+ * step events go to an optional RouteListener.
+ *
+ * An engine keeps per-query scratch arrays, so it is not thread safe. Use one
+ * engine per thread, engines may share the same graph.
+ *
+ * With SearchStats set, every run's SearchMetrics are recorded there. The
+ * counts are kept either way, timing a run is what costs.
+ *
+ * @author Hackerry
+ *
+ */
+public class RoutingEngine {
+	public static final int ASTAR = 0, DIJKSTRA = 1, GREEDY = 2, BFS = 3, DFS = 4, BI_DIJKSTRA = 5, BI_ASTAR = 6,
+			CH = 7, ALT = 8, ALL_PAIRS = 9, LPA_STAR = 10;
+	public static final double A_STAR_CONSTANT = 100;
+	private static final RouteListener NO_LISTENER = new RouteListener() {
+	};
+	private static final String[] NAMES = { "astar", "dijkstra", "greedy", "bfs", "dfs", "bidijkstra", "biastar",
+			"ch", "alt", "allpairs", "lpastar" };
+
+	private final RouteGraph graph;
+	private final boolean[] visited;
+	private final int[] prev;
+	private final double[] weight;
+	private final int[] frontier;
+	private final IndexedHeap heap;
+	private final boolean complete;
+	private SpatialGrid grid;
+	private int end, greedyCurrent;
+	private double constant;
+	private final IntPredicate greedyCandidate;
+
+	// Backward search of the bidirectional algorithms, made on first use
+	private boolean[] backVisited;
+	private int[] next;
+	private double[] backWeight;
+	private IndexedHeap backHeap;
+	private int heapArity;
+	// Graph with edges turned around, the graph itself if symmetric
+	private RouteGraph reverse;
+	private double potentialConstant;
+	private int start;
+	private ContractionHierarchy hierarchy;
+	private Landmarks landmarks;
+	private boolean useLandmarks;
+	private AllPairs allPairs;
+	// Keeps its search between LPA* queries, made on first use
+	private LifelongPlanner planner;
+	// Vertices a CH query reached, the only scratch entries it leaves dirty
+	private int[] touched;
+	private int touchedCount = 0;
+	private boolean scratchDirty = true;
+	// Counts of the current run besides those the heaps keep
+	private long settled, relaxed, pushes, pops;
+	private int peakFrontier;
+	private SearchStats stats;
+	private SearchMetrics lastMetrics;
+
+	public RoutingEngine(RouteGraph graph) {
+		this(graph, IndexedHeap.DEFAULT_ARITY);
+	}
+
+	/**
+	 * @param heapArity children per node of the Dijkstra and A* priority queue
+	 */
+	public RoutingEngine(RouteGraph graph, int heapArity) {
+		this.graph = graph;
+		int n = graph.vertexCount();
+		visited = new boolean[n];
+		prev = new int[n];
+		weight = new double[n];
+		frontier = new int[n];
+		heap = new IndexedHeap(n, heapArity);
+		this.heapArity = heapArity;
+		complete = graph.isImplicit() && graph.edgeCount() == (long) n * (n - 1);
+		greedyCandidate = v -> v != greedyCurrent && !visited[v];
+	}
+
+	public RouteGraph getGraph() {
+		return graph;
+	}
+
+	public ContractionHierarchy getHierarchy() {
+		return hierarchy;
+	}
+
+	public Landmarks getLandmarks() {
+		return landmarks;
+	}
+
+	/**
+	 * Set the landmark tables ALT queries estimate with, engines may share
+	 * them.
+	 */
+	public void setLandmarks(Landmarks landmarks) {
+		this.landmarks = landmarks;
+	}
+
+	public SearchStats getStats() {
+		return stats;
+	}
+
+	/**
+	 * Record the metrics of every run from now on, engines may share the
+	 * stats. Null stops recording.
+	 */
+	public void setStats(SearchStats stats) {
+		this.stats = stats;
+	}
+
+	/**
+	 * Metrics of the last run while stats were set, null if none.
+	 */
+	public SearchMetrics getLastMetrics() {
+		return lastMetrics;
+	}
+
+	public AllPairs getAllPairs() {
+		return allPairs;
+	}
+
+	/**
+	 * Set the tables ALL_PAIRS queries look routes up in, engines may share
+	 * them.
+	 */
+	public void setAllPairs(AllPairs allPairs) {
+		if (allPairs != null && allPairs.vertexCount() != graph.vertexCount())
+			throw new IllegalArgumentException("All pairs tables belong to another graph");
+		this.allPairs = allPairs;
+	}
+
+	/**
+	 * Set the contraction hierarchy CH queries run on, engines may share it.
+	 */
+	public void setHierarchy(ContractionHierarchy hierarchy) {
+		if (hierarchy != null && hierarchy.vertexCount() != graph.vertexCount())
+			throw new IllegalArgumentException("Hierarchy is for another graph");
+		this.hierarchy = hierarchy;
+	}
+
+	/**
+	 * Name of an algorithm constant, as parseAlgorithm takes it.
+	 */
+	public static String algorithmName(int algorithm) {
+		if (algorithm < 0 || algorithm >= NAMES.length)
+			throw new IllegalArgumentException("Unknown algorithm " + algorithm);
+		return NAMES[algorithm];
+	}
+
+	/**
+	 * Look up an algorithm constant by name, case insensitive.
+	 *
+	 * @param name one of astar, dijkstra, greedy, bfs, dfs, bidijkstra, biastar,
+	 *             ch, alt, allpairs, lpastar
+	 */
+	public static int parseAlgorithm(String name) {
+		switch (name.toUpperCase()) {
+		case "ASTAR":
+			return ASTAR;
+		case "DIJKSTRA":
+			return DIJKSTRA;
+		case "GREEDY":
+			return GREEDY;
+		case "BFS":
+			return BFS;
+		case "DFS":
+			return DFS;
+		case "BIDIJKSTRA":
+			return BI_DIJKSTRA;
+		case "BIASTAR":
+			return BI_ASTAR;
+		case "CH":
+			return CH;
+		case "ALT":
+			return ALT;
+		case "ALLPAIRS":
+			return ALL_PAIRS;
+		case "LPASTAR":
+			return LPA_STAR;
+		default:
+			throw new IllegalArgumentException("Unknown algorithm " + name);
+		}
+	}
+
+	/**
+	 * Find a route without listening to the steps.
+	 *
+	 * @see #route(int, int, int, double, RouteListener)
+	 */
+	public RouteResult route(int algorithm, int start, int end) {
+		return route(algorithm, start, end, A_STAR_CONSTANT, null);
+	}
+
+	/**
+	 * Find a route from start to end.
+	 *
+	 * @param algorithm one of ASTAR, DIJKSTRA, GREEDY, BFS, DFS, BI_DIJKSTRA,
+	 *                  BI_ASTAR, CH (needs a hierarchy set), ALT (needs
+	 *                  landmarks set), ALL_PAIRS (needs tables set),
+	 *                  LPA_STAR (repairs the last LPA* search on the same
+	 *                  endpoints after DynamicGraph weight changes)
+	 * @param start     start vertex
+	 * @param end       end vertex
+	 * @param constant  multiplier of the A* distance estimate
+	 * @param listener  receives step events, may be null
+	 * @return the route, or null if end is unreachable as far as the algorithm
+	 *         can tell or the thread got interrupted
+	 */
+	public RouteResult route(int algorithm, int start, int end, double constant, RouteListener listener) {
+		if (start < 0 || start >= graph.vertexCount() || end < 0 || end >= graph.vertexCount())
+			throw new IllegalArgumentException("Invalid endpoints " + start + " -> " + end);
+		if (listener == null)
+			listener = NO_LISTENER;
+		SearchEvent event = new SearchEvent();
+		if (stats == null && !event.isEnabled())
+			return search(algorithm, start, end, constant, listener);
+
+		event.begin();
+		long begin = System.nanoTime(), allocated = SearchMetrics.allocatedBytes();
+		RouteResult result = search(algorithm, start, end, constant, listener);
+		long wallNanos = System.nanoTime() - begin, allocatedAfter = SearchMetrics.allocatedBytes();
+		event.end();
+		SearchMetrics metrics = metrics(algorithm, start, end, result != null, wallNanos,
+				allocated < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocated);
+		if (stats != null) {
+			lastMetrics = metrics;
+			stats.record(metrics);
+		}
+		if (event.shouldCommit()) {
+			event.set(metrics, graph.vertexCount(), graph.edgeCount());
+			event.commit();
+		}
+		return result;
+	}
+
+	/**
+	 * Gather the counts of the run just finished.
+	 */
+	private SearchMetrics metrics(int algorithm, int start, int end, boolean found, long wallNanos,
+			long allocatedBytes) {
+		long settled = this.settled, relaxed = this.relaxed, pushes = this.pushes, pops = this.pops, keyUpdates;
+		int peak = peakFrontier;
+		IndexedHeap[] heaps;
+		if (algorithm == LPA_STAR) {
+			settled = planner.settled();
+			relaxed = planner.relaxed();
+			heaps = new IndexedHeap[] { planner.queue() };
+			peak = 0;
+		} else {
+			heaps = new IndexedHeap[] { heap, backHeap };
+		}
+
+		keyUpdates = 0;
+		int heapPeak = 0;
+		for (IndexedHeap h : heaps) {
+			if (h == null)
+				continue;
+			pushes += h.pushes();
+			pops += h.pops();
+			keyUpdates += h.keyUpdates();
+			heapPeak += h.peakSize();
+		}
+		return new SearchMetrics(algorithmName(algorithm), start, end, found, settled, relaxed, pushes, pops,
+				keyUpdates, 0, Math.max(peak, heapPeak), wallNanos, allocatedBytes);
+	}
+
+	/**
+	 * Run the search of route(), counting as it goes.
+	 */
+	private RouteResult search(int algorithm, int start, int end, double constant, RouteListener listener) {
+		settled = relaxed = pushes = pops = 0;
+		peakFrontier = 0;
+		// Emptied first so the peak sizes start from nothing
+		heap.clear();
+		heap.resetCounters();
+		if (backHeap != null) {
+			backHeap.clear();
+			backHeap.resetCounters();
+		}
+
+		// A table lookup, no search to listen to
+		if (algorithm == ALL_PAIRS) {
+			if (allPairs == null)
+				throw new IllegalStateException("No all pairs tables set");
+			return allPairs.route(start, end);
+		}
+		if (algorithm == LPA_STAR) {
+			if (planner == null)
+				planner = new LifelongPlanner(graph);
+			return planner.plan(start, end, constant, listener);
+		}
+
+		this.start = start;
+		this.end = end;
+		this.constant = constant;
+		if (algorithm != CH) {
+			Arrays.fill(visited, false);
+			Arrays.fill(prev, -1);
+			Arrays.fill(weight, Double.MAX_VALUE);
+			scratchDirty = true;
+		}
+
+		int cycles;
+		useLandmarks = algorithm == ALT;
+		switch (algorithm) {
+		case ASTAR:
+		case DIJKSTRA:
+			cycles = runBestFirst(algorithm == ASTAR, start, listener);
+			break;
+		case ALT:
+			if (landmarks == null)
+				throw new IllegalStateException("No landmarks set");
+			cycles = runBestFirst(true, start, listener);
+			break;
+		case GREEDY:
+			cycles = runGreedy(start, listener);
+			break;
+		case BFS:
+			cycles = runBFS(start, listener);
+			break;
+		case DFS:
+			cycles = runDFS(start, listener);
+			break;
+		case BI_DIJKSTRA:
+		case BI_ASTAR:
+			cycles = runBidirectional(algorithm == BI_ASTAR, listener);
+			break;
+		case CH:
+			cycles = runHierarchy(listener);
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown algorithm " + algorithm);
+		}
+
+		if (cycles < 0)
+			return null;
+		return buildResult(start, cycles);
+	}
+
+	/**
+	 * Greedy walk to the closest unvisited neighbor, no back tracking. On a
+	 * complete graph every other point is a neighbor, so the closest unvisited
+	 * one is looked up in a spatial grid instead of scanning them all.
+	 *
+	 * @return cycles taken or -1 if stuck or interrupted
+	 */
+	private int runGreedy(int start, RouteListener listener) {
+		int curr = start, index, next;
+		double minL;
+		int cycle = 0;
+		if (complete && grid == null)
+			grid = new SpatialGrid(graph);
+
+		// Main loop
+		while (curr != end) {
+			if (complete) {
+				greedyCurrent = curr;
+				index = grid.nearest(graph.x(curr), graph.y(curr), greedyCandidate);
+			} else {
+				index = -1;
+				minL = Double.MAX_VALUE;
+				for (int e = graph.firstEdge(curr); e < graph.endEdge(curr); e++) {
+					next = graph.target(e);
+					if (!visited[next] && graph.weight(e) < minL) {
+						minL = graph.weight(e);
+						index = next;
+					}
+				}
+			}
+
+			settled++;
+			if (!complete)
+				relaxed += graph.endEdge(curr) - graph.firstEdge(curr);
+
+			// Unconnected graph
+			if (index == -1)
+				return -1;
+
+			visited[curr] = true;
+			prev[index] = curr;
+			listener.onAdvance(curr, index);
+			curr = index;
+
+			cycle++;
+			listener.onCycleEnd(cycle);
+			if (Thread.currentThread().isInterrupted())
+				return -1;
+		}
+
+		return cycle;
+	}
+
+	/**
+	 * Dijkstra, or A* when estimate is set.
+	 *
+	 * @return cycles taken or -1 if unreachable or interrupted
+	 */
+	private int runBestFirst(boolean estimate, int start, RouteListener listener) {
+		int curr, neighbor;
+		double newWeight;
+		int cycle = 0;
+
+		// Initialize starting point
+		heap.clear();
+		weight[start] = 0;
+		heap.insert(start, estimate ? estimate(start) : 0);
+
+		// Main loop
+		while (!heap.isEmpty()) {
+			curr = heap.poll();
+			settled++;
+			listener.onExpand(curr, prev);
+
+			// Reach goal
+			if (curr == end)
+				return cycle;
+
+			// Every vertex leaves the heap once, it is done now
+			visited[curr] = true;
+			relaxed += graph.endEdge(curr) - graph.firstEdge(curr);
+
+			// Add neighbors to queue if weight can be reduced
+			for (int e = graph.firstEdge(curr); e < graph.endEdge(curr); e++) {
+				neighbor = graph.target(e);
+				if (visited[neighbor])
+					continue;
+
+				newWeight = weight[curr] + graph.weight(e);
+				boolean discovered = false;
+				if (newWeight < weight[neighbor]) {
+					discovered = weight[neighbor] == Double.MAX_VALUE;
+					prev[neighbor] = curr;
+					weight[neighbor] = newWeight;
+					if (discovered)
+						heap.insert(neighbor, estimate ? newWeight + estimate(neighbor) : newWeight);
+					else
+						heap.decreaseKey(neighbor, estimate ? newWeight + estimate(neighbor) : newWeight);
+				}
+				listener.onProbe(curr, neighbor, discovered);
+			}
+
+			cycle++;
+			listener.onCycleEnd(cycle);
+			if (Thread.currentThread().isInterrupted())
+				return -1;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Dijkstra, or A* when estimate is set, from both ends at once. The side
+	 * with the smaller queue is expanded next. Both searches stop once the
+	 * smallest keys of the two queues add up to at least the shortest route
+	 * seen where they met.
+	 *
+	 * A* uses the average of the forward and backward estimates as potential,
+	 * so both searches see the same consistent reduced edge weights. The
+	 * estimate is capped at the straight line distance since a larger one
+	 * breaks the stopping rule.
+	 *
+	 * @return cycles taken or -1 if unreachable or interrupted
+	 */
+	private int runBidirectional(boolean estimate, RouteListener listener) {
+		int curr, neighbor, meet = -1;
+		double newWeight, best = Double.MAX_VALUE;
+		boolean discovered;
+		int cycle = 0;
+		prepareBackward();
+		if (reverse == null)
+			reverse = graph.reverse();
+		potentialConstant = estimate ? Math.min(constant, 1) : 0;
+
+		if (start == end)
+			return 0;
+
+		// Initialize both ends
+		heap.clear();
+		backHeap.clear();
+		weight[start] = 0;
+		backWeight[end] = 0;
+		heap.insert(start, potential(start));
+		backHeap.insert(end, -potential(end));
+
+		// Main loop
+		while (!heap.isEmpty() && !backHeap.isEmpty()) {
+			// No unsettled vertex can lie on a shorter route
+			if (heap.peekPriority() + backHeap.peekPriority() >= best)
+				break;
+
+			if (heap.size() <= backHeap.size()) {
+				curr = heap.poll();
+				listener.onExpand(curr, prev);
+				visited[curr] = true;
+				settled++;
+				relaxed += graph.endEdge(curr) - graph.firstEdge(curr);
+
+				for (int e = graph.firstEdge(curr); e < graph.endEdge(curr); e++) {
+					neighbor = graph.target(e);
+					if (visited[neighbor])
+						continue;
+
+					newWeight = weight[curr] + graph.weight(e);
+					discovered = false;
+					if (newWeight < weight[neighbor]) {
+						discovered = weight[neighbor] == Double.MAX_VALUE;
+						prev[neighbor] = curr;
+						weight[neighbor] = newWeight;
+						if (discovered)
+							heap.insert(neighbor, newWeight + potential(neighbor));
+						else
+							heap.decreaseKey(neighbor, newWeight + potential(neighbor));
+					}
+					listener.onProbe(curr, neighbor, discovered);
+
+					// Meet the backward search
+					if (backWeight[neighbor] != Double.MAX_VALUE && weight[neighbor] + backWeight[neighbor] < best) {
+						best = weight[neighbor] + backWeight[neighbor];
+						meet = neighbor;
+					}
+				}
+			} else {
+				curr = backHeap.poll();
+				listener.onExpand(curr, next);
+				backVisited[curr] = true;
+				settled++;
+				relaxed += reverse.endEdge(curr) - reverse.firstEdge(curr);
+
+				// Follow incoming edges
+				for (int e = reverse.firstEdge(curr); e < reverse.endEdge(curr); e++) {
+					neighbor = reverse.target(e);
+					if (backVisited[neighbor])
+						continue;
+
+					newWeight = backWeight[curr] + reverse.weight(e);
+					discovered = false;
+					if (newWeight < backWeight[neighbor]) {
+						discovered = backWeight[neighbor] == Double.MAX_VALUE;
+						next[neighbor] = curr;
+						backWeight[neighbor] = newWeight;
+						if (discovered)
+							backHeap.insert(neighbor, newWeight - potential(neighbor));
+						else
+							backHeap.decreaseKey(neighbor, newWeight - potential(neighbor));
+					}
+					listener.onProbe(curr, neighbor, discovered);
+
+					// Meet the forward search
+					if (weight[neighbor] != Double.MAX_VALUE && weight[neighbor] + backWeight[neighbor] < best) {
+						best = weight[neighbor] + backWeight[neighbor];
+						meet = neighbor;
+					}
+				}
+			}
+
+			cycle++;
+			listener.onCycleEnd(cycle);
+			if (Thread.currentThread().isInterrupted())
+				return -1;
+		}
+
+		if (meet == -1)
+			return -1;
+
+		// Hang the backward half of the route onto prev
+		for (int v = meet; v != end; v = next[v])
+			prev[next[v]] = v;
+		return cycle;
+	}
+
+	/**
+	 * Query the contraction hierarchy: Dijkstra from both ends that only climbs
+	 * to higher ranked vertices. Each side stops once its smallest key reaches
+	 * the shortest route seen where they met. Probes follow hierarchy edges, so
+	 * a shortcut shows as one straight line.
+	 *
+	 * @return cycles taken or -1 if unreachable or interrupted
+	 */
+	private int runHierarchy(RouteListener listener) {
+		if (hierarchy == null)
+			throw new IllegalStateException("No contraction hierarchy set");
+		int curr, neighbor, first, meet = -1;
+		double newWeight, best = Double.MAX_VALUE;
+		boolean forward, backward, discovered;
+		int cycle = 0;
+		prepareHierarchy();
+
+		// Initialize both ends
+		heap.clear();
+		backHeap.clear();
+		weight[start] = 0;
+		backWeight[end] = 0;
+		heap.insert(start, 0);
+		backHeap.insert(end, 0);
+		touched[touchedCount++] = start;
+		if (end != start)
+			touched[touchedCount++] = end;
+
+		// Main loop
+		while (true) {
+			forward = !heap.isEmpty() && heap.peekPriority() < best;
+			backward = !backHeap.isEmpty() && backHeap.peekPriority() < best;
+			if (!forward && !backward)
+				break;
+
+			if (forward && (!backward || heap.peekPriority() <= backHeap.peekPriority())) {
+				curr = heap.poll();
+				listener.onExpand(curr, prev);
+				if (backWeight[curr] != Double.MAX_VALUE && weight[curr] + backWeight[curr] < best) {
+					best = weight[curr] + backWeight[curr];
+					meet = curr;
+				}
+
+				// Reached cheaper from above, nothing found from here can be shortest
+				first = isStalled(curr, true) ? hierarchy.endUp(curr) : hierarchy.firstUp(curr);
+				settled++;
+				relaxed += hierarchy.endUp(curr) - first;
+				for (int e = first; e < hierarchy.endUp(curr); e++) {
+					neighbor = hierarchy.upTarget(e);
+					newWeight = weight[curr] + hierarchy.upWeight(e);
+					discovered = false;
+					if (newWeight < weight[neighbor]) {
+						discovered = weight[neighbor] == Double.MAX_VALUE;
+						prev[neighbor] = curr;
+						weight[neighbor] = newWeight;
+						if (discovered && backWeight[neighbor] == Double.MAX_VALUE)
+							touched[touchedCount++] = neighbor;
+						if (discovered)
+							heap.insert(neighbor, newWeight);
+						else
+							heap.decreaseKey(neighbor, newWeight);
+					}
+					listener.onProbe(curr, neighbor, discovered);
+				}
+			} else {
+				curr = backHeap.poll();
+				listener.onExpand(curr, next);
+				if (weight[curr] != Double.MAX_VALUE && weight[curr] + backWeight[curr] < best) {
+					best = weight[curr] + backWeight[curr];
+					meet = curr;
+				}
+
+				first = isStalled(curr, false) ? hierarchy.endDown(curr) : hierarchy.firstDown(curr);
+				settled++;
+				relaxed += hierarchy.endDown(curr) - first;
+				for (int e = first; e < hierarchy.endDown(curr); e++) {
+					neighbor = hierarchy.downSource(e);
+					newWeight = backWeight[curr] + hierarchy.downWeight(e);
+					discovered = false;
+					if (newWeight < backWeight[neighbor]) {
+						discovered = backWeight[neighbor] == Double.MAX_VALUE;
+						next[neighbor] = curr;
+						backWeight[neighbor] = newWeight;
+						if (discovered && weight[neighbor] == Double.MAX_VALUE)
+							touched[touchedCount++] = neighbor;
+						if (discovered)
+							backHeap.insert(neighbor, newWeight);
+						else
+							backHeap.decreaseKey(neighbor, newWeight);
+					}
+					listener.onProbe(curr, neighbor, discovered);
+				}
+			}
+
+			cycle++;
+			listener.onCycleEnd(cycle);
+			if (Thread.currentThread().isInterrupted())
+				return -1;
+		}
+
+		if (meet == -1)
+			return -1;
+
+		// Route through the hierarchy, then expand its shortcuts onto prev
+		int hops = 0;
+		for (int v = meet; v != start; v = prev[v])
+			hops++;
+		for (int v = meet; v != end; v = next[v])
+			hops++;
+		int[] route = new int[hops + 1];
+		int i = 0;
+		for (int v = meet; v != start; v = prev[v])
+			route[i++] = v;
+		route[i++] = start;
+		for (int l = 0, r = i - 1; l < r; l++, r--) {
+			int t = route[l];
+			route[l] = route[r];
+			route[r] = t;
+		}
+		for (int v = meet; v != end; v = next[v])
+			route[i++] = next[v];
+
+		int[] path = hierarchy.unpack(route);
+		for (int k = 1; k < path.length; k++) {
+			// Skipped by a shortcut, never reached
+			if (weight[path[k]] == Double.MAX_VALUE && backWeight[path[k]] == Double.MAX_VALUE && prev[path[k]] == -1)
+				touched[touchedCount++] = path[k];
+			prev[path[k]] = path[k - 1];
+		}
+		return cycle;
+	}
+
+	/**
+	 * Stall on demand: whether a higher ranked vertex already reached gives v a
+	 * shorter distance than the one it was settled with.
+	 */
+	private boolean isStalled(int v, boolean forward) {
+		if (forward) {
+			for (int e = hierarchy.firstDown(v); e < hierarchy.endDown(v); e++) {
+				if (weight[hierarchy.downSource(e)] + hierarchy.downWeight(e) < weight[v])
+					return true;
+			}
+		} else {
+			for (int e = hierarchy.firstUp(v); e < hierarchy.endUp(v); e++) {
+				if (backWeight[hierarchy.upTarget(e)] + hierarchy.upWeight(e) < backWeight[v])
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the scratch arrays ready for a CH query. After another CH query only
+	 * the vertices it reached are reset, so a query costs in proportion to its
+	 * search space and not to the graph.
+	 */
+	private void prepareHierarchy() {
+		if (backHeap == null || touched == null) {
+			prepareBackward();
+			touched = new int[graph.vertexCount()];
+			scratchDirty = true;
+		}
+
+		if (scratchDirty) {
+			Arrays.fill(prev, -1);
+			Arrays.fill(weight, Double.MAX_VALUE);
+			Arrays.fill(next, -1);
+			Arrays.fill(backWeight, Double.MAX_VALUE);
+			scratchDirty = false;
+		} else {
+			for (int i = 0, v; i < touchedCount; i++) {
+				v = touched[i];
+				prev[v] = -1;
+				weight[v] = Double.MAX_VALUE;
+				next[v] = -1;
+				backWeight[v] = Double.MAX_VALUE;
+			}
+		}
+		touchedCount = 0;
+	}
+
+	/**
+	 * Reset the backward search, allocating it on first use.
+	 */
+	private void prepareBackward() {
+		int n = graph.vertexCount();
+		if (backHeap == null) {
+			backVisited = new boolean[n];
+			next = new int[n];
+			backWeight = new double[n];
+			backHeap = new IndexedHeap(n, heapArity);
+		}
+		Arrays.fill(backVisited, false);
+		Arrays.fill(next, -1);
+		Arrays.fill(backWeight, Double.MAX_VALUE);
+	}
+
+	/**
+	 * Forward potential of v, the backward one is its negation.
+	 */
+	private double potential(int v) {
+		if (potentialConstant == 0)
+			return 0;
+		double toEnd = CSRGraph.euclideanDist(graph.x(v), graph.y(v), graph.x(end), graph.y(end));
+		double fromStart = CSRGraph.euclideanDist(graph.x(start), graph.y(start), graph.x(v), graph.y(v));
+		return potentialConstant * (toEnd - fromStart) / 2;
+	}
+
+	/**
+	 * @return cycles taken or -1 if unreachable or interrupted
+	 */
+	private int runBFS(int start, RouteListener listener) {
+		int head = 0, tail = 0, curr, neighbor;
+		int cycle = 0;
+
+		// Enqueue first node
+		frontier[tail++] = start;
+		visited[start] = true;
+		pushes++;
+		peakFrontier = 1;
+
+		// Main loop
+		while (head < tail) {
+			curr = frontier[head++];
+			pops++;
+			settled++;
+
+			// Reach goal
+			if (curr == end)
+				return cycle;
+			relaxed += graph.endEdge(curr) - graph.firstEdge(curr);
+
+			// Add all unvisited neighbors to queue
+			for (int e = graph.firstEdge(curr); e < graph.endEdge(curr); e++) {
+				neighbor = graph.target(e);
+				if (!visited[neighbor]) {
+					// To ensure every node is enqueued only once
+					visited[neighbor] = true;
+					prev[neighbor] = curr;
+					frontier[tail++] = neighbor;
+					pushes++;
+					listener.onProbe(curr, neighbor, true);
+				}
+			}
+			if (tail - head > peakFrontier)
+				peakFrontier = tail - head;
+
+			cycle++;
+			listener.onCycleEnd(cycle);
+			if (Thread.currentThread().isInterrupted())
+				return -1;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return cycles taken or -1 if unreachable or interrupted
+	 */
+	private int runDFS(int start, RouteListener listener) {
+		int top = 0, curr, neighbor;
+		int cycle = 0;
+
+		// Push first node
+		frontier[top++] = start;
+		visited[start] = true;
+		pushes++;
+		peakFrontier = 1;
+
+		// Main loop
+		while (top > 0) {
+			curr = frontier[--top];
+			pops++;
+			settled++;
+
+			// Reach goal
+			if (curr == end)
+				return cycle;
+			relaxed += graph.endEdge(curr) - graph.firstEdge(curr);
+
+			// Add all unvisited neighbors to stack
+			for (int e = graph.firstEdge(curr); e < graph.endEdge(curr); e++) {
+				neighbor = graph.target(e);
+				if (!visited[neighbor]) {
+					// To ensure every node is pushed only once
+					visited[neighbor] = true;
+					prev[neighbor] = curr;
+					frontier[top++] = neighbor;
+					pushes++;
+					listener.onProbe(curr, neighbor, true);
+				}
+			}
+			if (top > peakFrontier)
+				peakFrontier = top;
+
+			cycle++;
+			listener.onCycleEnd(cycle);
+			if (Thread.currentThread().isInterrupted())
+				return -1;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * A* estimate of the distance from v to the end point, the landmark bound
+	 * for ALT.
+	 */
+	private double estimate(int v) {
+		if (useLandmarks)
+			return landmarks.lowerBound(v, end);
+		return constant * CSRGraph.euclideanDist(graph.x(v), graph.y(v), graph.x(end), graph.y(end));
+	}
+
+	/**
+	 * Walk predecessors back from the end point.
+	 */
+	private RouteResult buildResult(int start, int cycles) {
+		int hops = 0;
+		for (int v = end; v != start; v = prev[v])
+			hops++;
+
+		int[] path = new int[hops + 1];
+		double total = 0;
+		int v = end;
+		for (int i = hops; i > 0; i--) {
+			path[i] = v;
+			total += graph.weight(prev[v], v);
+			v = prev[v];
+		}
+		path[0] = start;
+
+		return new RouteResult(path, total, cycles);
+	}
+}
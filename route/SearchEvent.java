@@ -0,0 +1,65 @@
+package route;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of one search run, with the work it did. Its
+ * duration includes any pauses of a visualization listening to it.
+ *
+ * @author Hackerry
+ *
+ */
+@Name("route.Search")
+@Label("Search")
+@Category({ "Simulators", "Route" })
+@Description("One search run")
+public class SearchEvent extends Event {
+	@Label("Algorithm")
+	String algorithm;
+
+	@Label("Start")
+	int start;
+
+	@Label("End")
+	int end;
+
+	@Label("Found")
+	boolean found;
+
+	@Label("Vertices")
+	int vertexCount;
+
+	@Label("Edges")
+	long edgeCount;
+
+	@Label("Settled")
+	long settled;
+
+	@Label("Relaxed")
+	long relaxed;
+
+	@Label("Peak Frontier")
+	int peakFrontier;
+
+	/**
+	 * Describe the run, before committing.
+	 *
+	 * @param vertexCount vertices of the graph searched
+	 * @param edgeCount   directed edges of the graph searched
+	 */
+	public void set(SearchMetrics metrics, int vertexCount, long edgeCount) {
+		algorithm = metrics.getAlgorithm();
+		start = metrics.getStart();
+		end = metrics.getEnd();
+		found = metrics.isFound();
+		this.vertexCount = vertexCount;
+		this.edgeCount = edgeCount;
+		settled = metrics.getSettled();
+		relaxed = metrics.getRelaxed();
+		peakFrontier = metrics.getPeakFrontier();
+	}
+}
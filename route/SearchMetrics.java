@@ -0,0 +1,139 @@
+package route;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * What one search run cost. Frontier pushes and pops are those of the
+ * priority queue, or of the queue or stack for BFS and DFS. Skipped pops
+ * count entries popped for an already settled vertex; the searches here
+ * update keys in place so never skip, but lazy-deletion searches do and are
+ * compared by it.
+ *
+ * @author Hackerry
+ *
+ */
+public class SearchMetrics {
+	public static final String CSV_HEADER = "algorithm,start,end,found,settled,relaxed,pushes,pops,keyUpdates,"
+			+ "skippedPops,peakFrontier,wallNanos,allocatedBytes";
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private final String algorithm;
+	private final int start, end;
+	private final boolean found;
+	private final long settled, relaxed, pushes, pops, keyUpdates, skippedPops;
+	private final int peakFrontier;
+	private final long wallNanos, allocatedBytes;
+
+	/**
+	 * @param allocatedBytes bytes the searching thread allocated, -1 if the JVM
+	 *                       can't tell
+	 */
+	public SearchMetrics(String algorithm, int start, int end, boolean found, long settled, long relaxed,
+			long pushes, long pops, long keyUpdates, long skippedPops, int peakFrontier, long wallNanos,
+			long allocatedBytes) {
+		this.algorithm = algorithm;
+		this.start = start;
+		this.end = end;
+		this.found = found;
+		this.settled = settled;
+		this.relaxed = relaxed;
+		this.pushes = pushes;
+		this.pops = pops;
+		this.keyUpdates = keyUpdates;
+		this.skippedPops = skippedPops;
+		this.peakFrontier = peakFrontier;
+		this.wallNanos = wallNanos;
+		this.allocatedBytes = allocatedBytes;
+	}
+
+	/**
+	 * Bytes the current thread allocated so far, -1 if the JVM can't tell.
+	 * The difference over a run is its allocatedBytes.
+	 */
+	public static long allocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	public int getStart() {
+		return start;
+	}
+
+	public int getEnd() {
+		return end;
+	}
+
+	public boolean isFound() {
+		return found;
+	}
+
+	/**
+	 * Vertices taken off the frontier and expanded.
+	 */
+	public long getSettled() {
+		return settled;
+	}
+
+	/**
+	 * Edges examined out of the expanded vertices.
+	 */
+	public long getRelaxed() {
+		return relaxed;
+	}
+
+	public long getPushes() {
+		return pushes;
+	}
+
+	public long getPops() {
+		return pops;
+	}
+
+	/**
+	 * Priorities lowered or changed in place.
+	 */
+	public long getKeyUpdates() {
+		return keyUpdates;
+	}
+
+	public long getSkippedPops() {
+		return skippedPops;
+	}
+
+	/**
+	 * Largest frontier, of both sides added up for bidirectional searches.
+	 */
+	public int getPeakFrontier() {
+		return peakFrontier;
+	}
+
+	public long getWallNanos() {
+		return wallNanos;
+	}
+
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * One row under CSV_HEADER.
+	 */
+	public String toCsv() {
+		return algorithm + ',' + start + ',' + end + ',' + found + ',' + settled + ',' + relaxed + ',' + pushes + ','
+				+ pops + ',' + keyUpdates + ',' + skippedPops + ',' + peakFrontier + ',' + wallNanos + ','
+				+ allocatedBytes;
+	}
+
+	@Override
+	public String toString() {
+		return "Settled: " + settled + "\nRelaxed: " + relaxed + "\nPushes/pops: " + pushes + "/" + pops
+				+ "\nKey updates: " + keyUpdates + "\nPeak frontier: " + peakFrontier + "\nTime: "
+				+ wallNanos / 1000 + " us" + (allocatedBytes < 0 ? "" : "\nAllocated: " + allocatedBytes + " B");
+	}
+}
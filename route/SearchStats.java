@@ -0,0 +1,238 @@
+package route;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Collects the SearchMetrics of every run of the engines it is set on,
+ * shown over JMX under route:type=SearchStats,name=... and optionally
+ * appended to a CSV file. Engines on several threads may share one, the
+ * totals are striped counters so recording doesn't make them wait on each
+ * other unless logging.
+ *
+ * @author Hackerry
+ *
+ */
+public class SearchStats implements SearchStatsMXBean {
+	/**
+	 * System property naming the CSV file create() logs to.
+	 */
+	public static final String LOG_PROPERTY = "route.metricsLog";
+	// Log lines are written out at least this often
+	private static final long FLUSH_NANOS = 1000000000L;
+	private static final Logger log = Logger.getLogger(SearchStats.class.getName());
+
+	private final String name;
+	private final LongAdder runs = new LongAdder(), found = new LongAdder(), settled = new LongAdder(),
+			relaxed = new LongAdder(), pushes = new LongAdder(), pops = new LongAdder(), keyUpdates = new LongAdder(),
+			skippedPops = new LongAdder(), wallNanos = new LongAdder(), allocatedBytes = new LongAdder();
+	private final AtomicInteger maxPeakFrontier = new AtomicInteger();
+	private volatile SearchMetrics lastRun;
+	private volatile File logFile;
+	// Guarded by this
+	private Writer csv;
+	private long lastFlush;
+
+	public SearchStats(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Stats registered over JMX and logged to the file named by the
+	 * route.metricsLog property, if set. A failure to do either is logged and
+	 * the stats still collect.
+	 */
+	public static SearchStats create(String name) {
+		SearchStats stats = new SearchStats(name);
+		try {
+			stats.register();
+		} catch (JMException e) {
+			log.warning("Search stats not registered: " + e.getMessage());
+		}
+		String file = System.getProperty(LOG_PROPERTY);
+		if (file != null) {
+			try {
+				stats.logTo(new File(file));
+			} catch (IOException e) {
+				log.warning("Search stats not logged: " + e.getMessage());
+			}
+		}
+		return stats;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Register with the platform MBean server, replacing stats registered
+	 * under the same name.
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("route:type=SearchStats,name=" + ObjectName.quote(name));
+		if (server.isRegistered(objectName))
+			server.unregisterMBean(objectName);
+		server.registerMBean(this, objectName);
+	}
+
+	/**
+	 * Append a CSV row for every run from now on, with a header if the file
+	 * is new.
+	 */
+	public synchronized void logTo(File file) throws IOException {
+		closeLog();
+		boolean fresh = !file.exists() || file.length() == 0;
+		csv = new BufferedWriter(new FileWriter(file, true));
+		logFile = file;
+		if (fresh)
+			csv.write(SearchMetrics.CSV_HEADER + "\n");
+		lastFlush = System.nanoTime();
+	}
+
+	/**
+	 * Add a run to the totals, and to the log if any.
+	 */
+	public void record(SearchMetrics metrics) {
+		runs.increment();
+		if (metrics.isFound())
+			found.increment();
+		settled.add(metrics.getSettled());
+		relaxed.add(metrics.getRelaxed());
+		pushes.add(metrics.getPushes());
+		pops.add(metrics.getPops());
+		keyUpdates.add(metrics.getKeyUpdates());
+		skippedPops.add(metrics.getSkippedPops());
+		maxPeakFrontier.accumulateAndGet(metrics.getPeakFrontier(), Math::max);
+		wallNanos.add(metrics.getWallNanos());
+		if (metrics.getAllocatedBytes() > 0)
+			allocatedBytes.add(metrics.getAllocatedBytes());
+		lastRun = metrics;
+
+		if (logFile != null)
+			append(metrics);
+	}
+
+	private synchronized void append(SearchMetrics metrics) {
+		if (csv != null) {
+			try {
+				csv.write(metrics.toCsv() + "\n");
+				long now = System.nanoTime();
+				if (now - lastFlush >= FLUSH_NANOS) {
+					csv.flush();
+					lastFlush = now;
+				}
+			} catch (IOException e) {
+				log.warning("Search stats log stopped: " + e.getMessage());
+				closeLog();
+			}
+		}
+	}
+
+	/**
+	 * Write out and close the CSV log, if any.
+	 */
+	public synchronized void closeLog() {
+		if (csv == null)
+			return;
+		try {
+			csv.close();
+		} catch (IOException e) {
+			log.warning("Search stats log not closed: " + e.getMessage());
+		}
+		csv = null;
+		logFile = null;
+	}
+
+	@Override
+	public long getRuns() {
+		return runs.sum();
+	}
+
+	@Override
+	public long getFound() {
+		return found.sum();
+	}
+
+	@Override
+	public long getSettled() {
+		return settled.sum();
+	}
+
+	@Override
+	public long getRelaxed() {
+		return relaxed.sum();
+	}
+
+	@Override
+	public long getPushes() {
+		return pushes.sum();
+	}
+
+	@Override
+	public long getPops() {
+		return pops.sum();
+	}
+
+	@Override
+	public long getKeyUpdates() {
+		return keyUpdates.sum();
+	}
+
+	@Override
+	public long getSkippedPops() {
+		return skippedPops.sum();
+	}
+
+	@Override
+	public int getMaxPeakFrontier() {
+		return maxPeakFrontier.get();
+	}
+
+	@Override
+	public long getWallNanos() {
+		return wallNanos.sum();
+	}
+
+	@Override
+	public long getAllocatedBytes() {
+		return allocatedBytes.sum();
+	}
+
+	@Override
+	public double getMeanWallMicros() {
+		long count = runs.sum();
+		return count == 0 ? 0 : wallNanos.sum() / 1000.0 / count;
+	}
+
+	@Override
+	public SearchMetrics getLastRun() {
+		return lastRun;
+	}
+
+	@Override
+	public String getLogFile() {
+		File file = logFile;
+		return file == null ? null : file.getPath();
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder total : new LongAdder[] { runs, found, settled, relaxed, pushes, pops, keyUpdates,
+				skippedPops, wallNanos, allocatedBytes })
+			total.reset();
+		maxPeakFrontier.set(0);
+		lastRun = null;
+	}
+}
@@ -0,0 +1,52 @@
+package route;
+
+/**
+ * Management interface of SearchStats, totals over every run recorded since
+ * the last reset.
+ *
+ * @author Hackerry
+ *
+ */
+public interface SearchStatsMXBean {
+	long getRuns();
+
+	/**
+	 * Runs that found a route.
+	 */
+	long getFound();
+
+	long getSettled();
+
+	long getRelaxed();
+
+	long getPushes();
+
+	long getPops();
+
+	long getKeyUpdates();
+
+	long getSkippedPops();
+
+	/**
+	 * Largest peak frontier of any run.
+	 */
+	int getMaxPeakFrontier();
+
+	long getWallNanos();
+
+	/**
+	 * Bytes allocated by the runs, only counted if the JVM can tell.
+	 */
+	long getAllocatedBytes();
+
+	double getMeanWallMicros();
+
+	SearchMetrics getLastRun();
+
+	/**
+	 * CSV file every run is appended to, null if none.
+	 */
+	String getLogFile();
+
+	void reset();
+}
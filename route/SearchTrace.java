@@ -0,0 +1,446 @@
+package route;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Recorded trace of a search, read back to show the search as it was after
+ * any number of steps without running it again. A Recorder is a
+ * RouteListener, so a route search is recorded by passing one to the engine.
+ * Maze searches record cells by their index.
+ *
+ * Each event is a type and two vertices:
+ * <ul>
+ * <li>SETTLE v, prev: v was taken off the frontier, reached from prev.</li>
+ * <li>ENQUEUE from, v: v was reached for the first time, from from.</li>
+ * <li>RELAX from, v: the edge from -> v was examined again.</li>
+ * <li>PATH from, v: the edge is on the path found, or taken by greedy.</li>
+ * </ul>
+ * Replaying them gives every vertex a status and a parent. After every
+ * keyframe interval events the state so far is written as a keyframe, so a
+ * seek loads the keyframe before the step and replays less than one interval
+ * of events. Keyframes are evenly spaced, so the one before a step is found
+ * by division. Loading it reads every vertex though, so a seek costs
+ * O(interval + vertexCount), not O(log n) in the number of events. Moving
+ * ahead within an interval costs only the events in between.
+ *
+ * Files (.trace) are little-endian: int magic, int version, int vertexCount,
+ * int keyframe interval, long event count, long index offset. Then the events
+ * of 9 bytes (byte type, int, int) with a keyframe after every interval of
+ * them (status bytes, parent ints, int current vertex), then the index, the
+ * file offset of every keyframe as a long.
+ *
+ * @author Hackerry
+ *
+ */
+public class SearchTrace implements Closeable {
+	public static final String EXTENSION = ".trace";
+	public static final byte SETTLE = 0, ENQUEUE = 1, RELAX = 2, PATH = 3;
+	// Vertex status, ON_PATH is a flag on top of the others
+	public static final byte UNSEEN = 0, QUEUED = 1, SETTLED = 2, ON_PATH = 4;
+	// Keyframes are made no more often than this many events, and not before
+	// there are as many events as vertices, so they at most double the file
+	public static final int MIN_KEYFRAME_INTERVAL = 4096;
+	static final int MAGIC = 0x45435254, VERSION = 1, HEADER_SIZE = 32, EVENT_SIZE = 9;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final String name;
+	private final int vertexCount, interval;
+	private final long eventCount;
+	private final long[] keyframes;
+	private final State state;
+	// Number of events the state has had applied
+	private long step = 0;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+	private SearchTrace(FileChannel channel, String name, int vertexCount, int interval, long eventCount,
+			long[] keyframes) {
+		this.channel = channel;
+		this.name = name;
+		this.vertexCount = vertexCount;
+		this.interval = interval;
+		this.eventCount = eventCount;
+		this.keyframes = keyframes;
+		state = new State(vertexCount);
+	}
+
+	/**
+	 * Open a trace for reading, positioned before its first event.
+	 *
+	 * @throws IOException if the file can't be read or is not a whole trace
+	 */
+	public static SearchTrace open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			if (channel.size() < HEADER_SIZE)
+				throw new IOException("Not a trace file: " + file.getName());
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(channel, header, 0);
+			if (header.getInt() != MAGIC)
+				throw new IOException("Not a trace file: " + file.getName());
+			if (header.getInt() != VERSION)
+				throw new IOException("Unsupported trace file version: " + file.getName());
+			int n = header.getInt(), interval = header.getInt();
+			long events = header.getLong(), indexOffset = header.getLong();
+			// An unclosed recording has no index
+			if (n < 0 || interval <= 0 || indexOffset < HEADER_SIZE
+					|| channel.size() != indexOffset + 8L * (events / interval))
+				throw new IOException("Trace file is truncated: " + file.getName());
+
+			long[] keyframes = new long[(int) (events / interval)];
+			if (keyframes.length > 0) {
+				ByteBuffer index = ByteBuffer.allocate(8 * keyframes.length).order(ByteOrder.LITTLE_ENDIAN);
+				readFully(channel, index, indexOffset);
+				index.asLongBuffer().get(keyframes);
+			}
+			return new SearchTrace(channel, file.getName(), n, interval, events, keyframes);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	public int vertexCount() {
+		return vertexCount;
+	}
+
+	public long eventCount() {
+		return eventCount;
+	}
+
+	/**
+	 * Number of events applied, as set by the last seek.
+	 */
+	public long step() {
+		return step;
+	}
+
+	/**
+	 * Show the search as it was after the given number of events. Moving ahead
+	 * within a keyframe interval only applies the events in between, anything
+	 * else loads a keyframe and costs O(interval + vertexCount).
+	 */
+	public void seek(long step) throws IOException {
+		if (step < 0 || step > eventCount)
+			throw new IllegalArgumentException("Step " + step + " out of 0.." + eventCount);
+		int keyframe = (int) (step / interval);
+		long from;
+		if (step >= this.step && keyframe == this.step / interval) {
+			from = this.step;
+		} else if (keyframe == 0) {
+			state.clear();
+			from = 0;
+		} else {
+			readKeyframe(keyframe);
+			from = (long) keyframe * interval;
+		}
+		applyEvents(from, step);
+		this.step = step;
+	}
+
+	/**
+	 * Status of a vertex, UNSEEN, QUEUED or SETTLED, with ON_PATH set if on the
+	 * path.
+	 */
+	public byte status(int v) {
+		return state.status[v];
+	}
+
+	/**
+	 * Vertex v was last reached from, -1 if none.
+	 */
+	public int parent(int v) {
+		return state.parent[v];
+	}
+
+	/**
+	 * Vertex settled last, -1 if none yet.
+	 */
+	public int current() {
+		return state.current;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * Load the state after keyframe * interval events.
+	 */
+	private void readKeyframe(int keyframe) throws IOException {
+		ByteBuffer snapshot = ByteBuffer.allocate(5 * vertexCount + 4).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, snapshot, keyframes[keyframe - 1]);
+		snapshot.get(state.status);
+		snapshot.asIntBuffer().get(state.parent);
+		snapshot.position(snapshot.position() + 4 * vertexCount);
+		state.current = snapshot.getInt();
+	}
+
+	/**
+	 * Apply events from..to, which lie within one keyframe interval.
+	 */
+	private void applyEvents(long from, long to) throws IOException {
+		if (from == to)
+			return;
+		int keyframe = (int) (from / interval);
+		long position = (keyframe == 0 ? HEADER_SIZE : keyframes[keyframe - 1] + 5L * vertexCount + 4)
+				+ EVENT_SIZE * (from - (long) keyframe * interval);
+		long remaining = to - from;
+		while (remaining > 0) {
+			int count = (int) Math.min(remaining, BUFFER_SIZE / EVENT_SIZE);
+			buffer.clear().limit(count * EVENT_SIZE);
+			readFully(channel, buffer, position);
+			for (int i = 0; i < count; i++)
+				state.apply(buffer.get(), buffer.getInt(), buffer.getInt());
+			position += count * EVENT_SIZE;
+			remaining -= count;
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if (read < 0)
+				throw new IOException("Trace file is truncated");
+			position += read;
+		}
+		buffer.flip();
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + vertexCount + " vertices, " + eventCount + " events";
+	}
+
+	/**
+	 * Status and parent of every vertex, changed by the events one by one.
+	 */
+	private static final class State {
+		final byte[] status;
+		final int[] parent;
+		int current = -1;
+
+		State(int vertexCount) {
+			status = new byte[vertexCount];
+			parent = new int[vertexCount];
+			Arrays.fill(parent, -1);
+		}
+
+		void clear() {
+			Arrays.fill(status, UNSEEN);
+			Arrays.fill(parent, -1);
+			current = -1;
+		}
+
+		void apply(byte type, int a, int b) {
+			switch (type) {
+			case SETTLE:
+				status[a] = (byte) ((status[a] & ON_PATH) | SETTLED);
+				if (b >= 0)
+					parent[a] = b;
+				current = a;
+				break;
+			case ENQUEUE:
+				if ((status[b] & ~ON_PATH) == UNSEEN)
+					status[b] |= QUEUED;
+				parent[b] = a;
+				break;
+			case PATH:
+				status[a] |= ON_PATH;
+				status[b] |= ON_PATH;
+				parent[b] = a;
+				break;
+			default:
+				// RELAX leaves the state as it is
+			}
+		}
+	}
+
+	/**
+	 * Writes the events of one search to a trace file. Only the searching
+	 * thread may use it, and the file is only readable once closed.
+	 */
+	public static class Recorder implements RouteListener, Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private final int interval;
+		private final State state;
+		private long events = 0;
+		private long[] keyframes = new long[16];
+		private int keyframeCount = 0;
+
+		/**
+		 * Record with keyframes every max(MIN_KEYFRAME_INTERVAL, vertexCount)
+		 * events.
+		 */
+		public Recorder(File file, int vertexCount) throws IOException {
+			this(file, vertexCount, Math.max(MIN_KEYFRAME_INTERVAL, vertexCount));
+		}
+
+		public Recorder(File file, int vertexCount, int keyframeInterval) throws IOException {
+			if (keyframeInterval <= 0)
+				throw new IllegalArgumentException("Invalid keyframe interval " + keyframeInterval);
+			interval = keyframeInterval;
+			state = new State(vertexCount);
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			// The counts are filled in on close
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(vertexCount).putInt(interval).putLong(0).putLong(0);
+		}
+
+		public long eventCount() {
+			return events;
+		}
+
+		public void settle(int v, int prev) throws IOException {
+			event(SETTLE, v, prev);
+		}
+
+		public void enqueue(int from, int v) throws IOException {
+			event(ENQUEUE, from, v);
+		}
+
+		public void relax(int from, int v) throws IOException {
+			event(RELAX, from, v);
+		}
+
+		/**
+		 * Record every edge of a path found.
+		 */
+		public void pathFound(int[] path) throws IOException {
+			for (int i = 0; i < path.length - 1; i++)
+				event(PATH, path[i], path[i + 1]);
+		}
+
+		private void event(byte type, int a, int b) throws IOException {
+			RGraphFile.ensure(channel, buffer, EVENT_SIZE).put(type).putInt(a).putInt(b);
+			state.apply(type, a, b);
+			if (++events % interval == 0)
+				writeKeyframe();
+		}
+
+		private void writeKeyframe() throws IOException {
+			if (keyframeCount == keyframes.length)
+				keyframes = Arrays.copyOf(keyframes, keyframeCount * 2);
+			keyframes[keyframeCount++] = channel.position() + buffer.position();
+			for (byte s : state.status)
+				RGraphFile.ensure(channel, buffer, 1).put(s);
+			for (int p : state.parent)
+				RGraphFile.ensure(channel, buffer, 4).putInt(p);
+			RGraphFile.ensure(channel, buffer, 4).putInt(state.current);
+		}
+
+		// RouteListener events, an I/O error stops the recording with an
+		// unchecked exception
+
+		@Override
+		public void onExpand(int vertex, int[] prev) {
+			try {
+				settle(vertex, prev[vertex]);
+			} catch (IOException e) {
+				throw new IllegalStateException("Trace recording failed", e);
+			}
+		}
+
+		@Override
+		public void onProbe(int from, int to, boolean discovered) {
+			try {
+				if (discovered)
+					enqueue(from, to);
+				else
+					relax(from, to);
+			} catch (IOException e) {
+				throw new IllegalStateException("Trace recording failed", e);
+			}
+		}
+
+		@Override
+		public void onAdvance(int from, int to) {
+			try {
+				event(PATH, from, to);
+			} catch (IOException e) {
+				throw new IllegalStateException("Trace recording failed", e);
+			}
+		}
+
+		/**
+		 * Write the index and the counts, making the trace readable.
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				long indexOffset = channel.position() + buffer.position();
+				for (int i = 0; i < keyframeCount; i++)
+					RGraphFile.ensure(channel, buffer, 8).putLong(keyframes[i]);
+				buffer.flip();
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+
+				ByteBuffer counts = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+				counts.putLong(events).putLong(indexOffset).flip();
+				while (counts.hasRemaining())
+					channel.write(counts, HEADER_SIZE - 16 + counts.position());
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Driver method, records one search of a graph file at full speed.
+	 *
+	 * Usage: SearchTrace graph.tsv|graph.rgraph start end output.trace
+	 * [algorithm]. Start and end are point labels or indices.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 4) {
+			System.err.println("Usage: SearchTrace <graph.tsv|graph.rgraph> <start> <end> <output.trace>"
+					+ " [astar|dijkstra|greedy|bfs|dfs|bidijkstra|biastar|ch|alt|lpastar]");
+			System.exit(1);
+		}
+
+		File graphFile = new File(args[0]);
+		RouteGraph graph = RouteGraph.read(graphFile);
+		int start = find(graph, args[1]), end = find(graph, args[2]);
+		int algorithm = args.length > 4 ? RoutingEngine.parseAlgorithm(args[4]) : RoutingEngine.DIJKSTRA;
+		RoutingEngine engine = new RoutingEngine(graph);
+		if (algorithm == RoutingEngine.CH)
+			engine.setHierarchy(ContractionHierarchy.loadOrBuild(graphFile, graph));
+		if (algorithm == RoutingEngine.ALT)
+			engine.setLandmarks(Landmarks.select(graph, Landmarks.DEFAULT_COUNT));
+
+		long begin = System.nanoTime();
+		RouteResult result;
+		long events;
+		try (Recorder recorder = new Recorder(new File(args[3]), graph.vertexCount())) {
+			result = engine.route(algorithm, start, end, RoutingEngine.A_STAR_CONSTANT, recorder);
+			if (result != null)
+				recorder.pathFound(result.getPath());
+			events = recorder.eventCount();
+		}
+		System.err.println((result == null ? "No route, " : "Route of " + result.getHops() + " stops, ") + events
+				+ " events in " + (System.nanoTime() - begin) / 1000000 + " ms");
+	}
+
+	/**
+	 * Point with the given label, or failing that the given index.
+	 */
+	private static int find(RouteGraph graph, String token) {
+		for (int v = 0; v < graph.vertexCount(); v++) {
+			if (token.equals(graph.label(v)))
+				return v;
+		}
+		int v = Integer.parseInt(token);
+		if (v < 0 || v >= graph.vertexCount())
+			throw new IllegalArgumentException("No point " + token);
+		return v;
+	}
+}
@@ -0,0 +1,242 @@
+package route;
+
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Uniform grid over a set of points, about two points to a cell. Nearest
+ * point queries search rings of cells outwards from the query and stop once
+ * no closer point can be left.
+ *
+ * @author Hackerry
+ *
+ */
+public class SpatialGrid {
+	private static final int POINTS_PER_CELL = 2;
+
+	private final double[] x, y;
+	private final double minX, minY, cellSize;
+	private final int cols, rows;
+	private final int[] cellStart, members;
+
+	/**
+	 * @param x x coordinate of every point
+	 * @param y y coordinate of every point
+	 */
+	public SpatialGrid(double[] x, double[] y) {
+		this.x = x;
+		this.y = y;
+		int n = x.length;
+
+		double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+		for (int i = 0; i < n; i++) {
+			minX = Math.min(minX, x[i]);
+			maxX = Math.max(maxX, x[i]);
+			minY = Math.min(minY, y[i]);
+			maxY = Math.max(maxY, y[i]);
+		}
+		if (n == 0)
+			minX = minY = maxX = maxY = 0;
+		this.minX = minX;
+		this.minY = minY;
+
+		// Square cells holding about POINTS_PER_CELL points each
+		double width = Math.max(maxX - minX, Double.MIN_NORMAL), height = Math.max(maxY - minY, Double.MIN_NORMAL);
+		double cells = Math.max(1, n / POINTS_PER_CELL);
+		// A flat point set gets a single row or column instead of empty cells
+		double size = Math.max(Math.sqrt(width * height / cells), Math.max(width, height) / cells);
+		cols = (int) Math.max(1, Math.ceil(width / size));
+		rows = (int) Math.max(1, Math.ceil(height / size));
+		cellSize = Math.max(width / cols, height / rows);
+
+		// Bucket points by cell
+		cellStart = new int[cols * rows + 1];
+		int[] cellOf = new int[n];
+		for (int i = 0; i < n; i++) {
+			cellOf[i] = col(x[i]) * rows + row(y[i]);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < cols * rows; c++)
+			cellStart[c + 1] += cellStart[c];
+		int[] fill = new int[cols * rows];
+		System.arraycopy(cellStart, 0, fill, 0, fill.length);
+		members = new int[n];
+		for (int i = 0; i < n; i++)
+			members[fill[cellOf[i]]++] = i;
+	}
+
+	public SpatialGrid(RouteGraph graph) {
+		this(xs(graph), ys(graph));
+	}
+
+	/**
+	 * Find the closest accepted point, the lowest index among equally close
+	 * ones.
+	 *
+	 * @param accept which points may be returned
+	 * @return the point or -1 if none is accepted
+	 */
+	public int nearest(double qx, double qy, IntPredicate accept) {
+		int qc = col(qx), qr = row(qy), best = -1;
+		double bestDist = Double.MAX_VALUE, dist;
+		int maxRing = Math.max(cols, rows);
+		for (int ring = 0; ring <= maxRing; ring++) {
+			for (int c = qc - ring; c <= qc + ring; c++) {
+				if (c < 0 || c >= cols)
+					continue;
+				// Whole column on the ring's sides, only top and bottom cells otherwise
+				int step = c == qc - ring || c == qc + ring ? 1 : Math.max(2 * ring, 1);
+				for (int r = qr - ring; r <= qr + ring; r += step) {
+					if (r < 0 || r >= rows)
+						continue;
+					for (int k = cellStart[c * rows + r]; k < cellStart[c * rows + r + 1]; k++) {
+						int p = members[k];
+						dist = squaredDist(qx, qy, p);
+						if ((dist < bestDist || (dist == bestDist && p < best)) && accept.test(p)) {
+							bestDist = dist;
+							best = p;
+						}
+					}
+				}
+			}
+
+			// Points in the next ring are at least ring cells away
+			if (best >= 0 && Math.sqrt(bestDist) < ring * cellSize)
+				break;
+		}
+		return best;
+	}
+
+	/**
+	 * Find the k closest accepted points.
+	 *
+	 * @return the points, closest first, fewer than k if not enough accepted
+	 */
+	public int[] nearest(double qx, double qy, int k, IntPredicate accept) {
+		// Max heap of the best k so far, worst on top
+		int[] heap = new int[k];
+		double[] heapDist = new double[k];
+		int size = 0;
+		int qc = col(qx), qr = row(qy);
+		double dist;
+		int maxRing = Math.max(cols, rows);
+		for (int ring = 0; ring <= maxRing && k > 0; ring++) {
+			for (int c = qc - ring; c <= qc + ring; c++) {
+				if (c < 0 || c >= cols)
+					continue;
+				int step = c == qc - ring || c == qc + ring ? 1 : Math.max(2 * ring, 1);
+				for (int r = qr - ring; r <= qr + ring; r += step) {
+					if (r < 0 || r >= rows)
+						continue;
+					for (int j = cellStart[c * rows + r]; j < cellStart[c * rows + r + 1]; j++) {
+						int p = members[j];
+						dist = squaredDist(qx, qy, p);
+						if (size < k) {
+							if (accept.test(p)) {
+								heap[size] = p;
+								heapDist[size] = dist;
+								siftUp(heap, heapDist, size++);
+							}
+						} else if (worse(heapDist[0], heap[0], dist, p) && accept.test(p)) {
+							heap[0] = p;
+							heapDist[0] = dist;
+							siftDown(heap, heapDist, size);
+						}
+					}
+				}
+			}
+
+			if (size == k && Math.sqrt(heapDist[0]) < ring * cellSize)
+				break;
+		}
+
+		// Pop worst first into the back of the result
+		int[] result = new int[size];
+		for (int i = size - 1; i >= 0; i--) {
+			result[i] = heap[0];
+			heap[0] = heap[i];
+			heapDist[0] = heapDist[i];
+			siftDown(heap, heapDist, i);
+		}
+		return result;
+	}
+
+	/**
+	 * Visit every point within radius of (qx, qy).
+	 */
+	public void forEachWithin(double qx, double qy, double radius, IntConsumer action) {
+		double radius2 = radius * radius;
+		int c0 = col(qx - radius), c1 = col(qx + radius), r0 = row(qy - radius), r1 = row(qy + radius);
+		for (int c = c0; c <= c1; c++) {
+			for (int r = r0; r <= r1; r++) {
+				for (int k = cellStart[c * rows + r]; k < cellStart[c * rows + r + 1]; k++) {
+					if (squaredDist(qx, qy, members[k]) <= radius2)
+						action.accept(members[k]);
+				}
+			}
+		}
+	}
+
+	private double squaredDist(double qx, double qy, int p) {
+		double dx = x[p] - qx, dy = y[p] - qy;
+		return dx * dx + dy * dy;
+	}
+
+	private int col(double px) {
+		return (int) Math.min(Math.max((px - minX) / cellSize, 0), cols - 1);
+	}
+
+	private int row(double py) {
+		return (int) Math.min(Math.max((py - minY) / cellSize, 0), rows - 1);
+	}
+
+	/**
+	 * Whether (dist1, p1) ranks after (dist2, p2).
+	 */
+	private static boolean worse(double dist1, int p1, double dist2, int p2) {
+		return dist1 > dist2 || (dist1 == dist2 && p1 > p2);
+	}
+
+	private static void siftUp(int[] heap, double[] dist, int pos) {
+		int parent;
+		while (pos > 0 && worse(dist[pos], heap[pos], dist[parent = (pos - 1) / 2], heap[parent])) {
+			swap(heap, dist, pos, parent);
+			pos = parent;
+		}
+	}
+
+	private static void siftDown(int[] heap, double[] dist, int size) {
+		int pos = 0, child;
+		while ((child = 2 * pos + 1) < size) {
+			if (child + 1 < size && worse(dist[child + 1], heap[child + 1], dist[child], heap[child]))
+				child++;
+			if (!worse(dist[child], heap[child], dist[pos], heap[pos]))
+				break;
+			swap(heap, dist, pos, child);
+			pos = child;
+		}
+	}
+
+	private static void swap(int[] heap, double[] dist, int i, int j) {
+		int p = heap[i];
+		heap[i] = heap[j];
+		heap[j] = p;
+		double d = dist[i];
+		dist[i] = dist[j];
+		dist[j] = d;
+	}
+
+	private static double[] xs(RouteGraph graph) {
+		double[] x = new double[graph.vertexCount()];
+		for (int v = 0; v < x.length; v++)
+			x[v] = graph.x(v);
+		return x;
+	}
+
+	private static double[] ys(RouteGraph graph) {
+		double[] y = new double[graph.vertexCount()];
+		for (int v = 0; v < y.length; v++)
+			y[v] = graph.y(v);
+		return y;
+	}
+}
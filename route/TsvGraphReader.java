@@ -0,0 +1,248 @@
+package route;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a point file without any UI. Every line holds a tab separated label, x
+ * and y. An optional edge section follows after an empty line, one pair of
+ * point indices per line. Without edges every pair of points is connected, or
+ * for more than COMPLETE_LIMIT points each point to its closest neighbors.
+ *
+ * The file is memory mapped window by window and parsed in place: no line
+ * Strings or split arrays are made, coordinates go straight into primitive
+ * arrays and labels into a LabelTable.
+ *
+ * @author Hackerry
+ *
+ */
+public class TsvGraphReader {
+	/** Most points connected as a complete graph when a file has no edges */
+	public static final int COMPLETE_LIMIT = 2000;
+	/** Closest points connected to each point past COMPLETE_LIMIT */
+	public static final int DEFAULT_NEIGHBORS = 8;
+	private static final int WINDOW = 1 << 28;
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+			1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final FileChannel channel;
+	private final long fileSize;
+	private MappedByteBuffer buffer;
+	private long base = 0;
+	private int position = 0, lineStart, lineEnd;
+
+	private final int neighbors;
+
+	private TsvGraphReader(FileChannel channel, int neighbors) throws IOException {
+		this.neighbors = neighbors;
+		this.channel = channel;
+		fileSize = channel.size();
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(WINDOW, fileSize));
+	}
+
+	/**
+	 * Read the file into a labeled graph weighted by euclidean distance.
+	 *
+	 * @param file file to read in
+	 * @throws IOException if the file can't be read or is malformed
+	 */
+	public static CSRGraph read(File file) throws IOException {
+		return read(file, -1);
+	}
+
+	/**
+	 * Read the file into a labeled graph weighted by euclidean distance.
+	 *
+	 * @param file      file to read in
+	 * @param neighbors closest points to connect each point to if the file has
+	 *                  no edges, 0 for a complete graph, negative to decide by
+	 *                  point count
+	 * @throws IOException if the file can't be read or is malformed
+	 */
+	public static CSRGraph read(File file, int neighbors) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return new TsvGraphReader(channel, neighbors).readGraph();
+		}
+	}
+
+	private CSRGraph readGraph() throws IOException {
+		LabelTable labels = new LabelTable();
+		double[] x = new double[1024], y = new double[1024];
+		boolean customizeEdge = false;
+		int lineNum = 0, n = 0, tab1, tab2;
+		while (nextLine()) {
+			// There are edge entries at the end
+			if (lineStart == lineEnd) {
+				customizeEdge = true;
+				break;
+			}
+
+			tab1 = indexOfTab(lineStart, lineEnd);
+			tab2 = tab1 < 0 ? -1 : indexOfTab(tab1 + 1, lineEnd);
+			if (tab2 < 0 || indexOfTab(tab2 + 1, lineEnd) >= 0)
+				throw new IOException("3 input expected on line " + lineNum);
+
+			if (n == x.length) {
+				x = Arrays.copyOf(x, n * 2);
+				y = Arrays.copyOf(y, n * 2);
+			}
+			labels.add(buffer, lineStart, tab1);
+			x[n] = parseDouble(tab1 + 1, tab2, lineNum);
+			y[n] = parseDouble(tab2 + 1, lineEnd, lineNum);
+			n++;
+			lineNum++;
+		}
+		x = Arrays.copyOf(x, n);
+		y = Arrays.copyOf(y, n);
+
+		CSRGraph graph;
+		if (customizeEdge) {
+			CSRGraph.Builder builder = new CSRGraph.Builder(x, y);
+			lineNum++;
+			int point1, point2;
+			while (nextLine()) {
+				tab1 = indexOfTab(lineStart, lineEnd);
+				if (tab1 < 0 || indexOfTab(tab1 + 1, lineEnd) >= 0)
+					throw new IOException("2 input expected on line " + lineNum);
+				point1 = parseInt(lineStart, tab1, lineNum);
+				point2 = parseInt(tab1 + 1, lineEnd, lineNum);
+				if (point1 < 0 || point1 >= n || point2 < 0 || point2 >= n)
+					throw new IOException("Invalid index on line: " + lineNum);
+				if (point1 == point2)
+					throw new IOException("No self loop on line: " + lineNum);
+
+				builder.addUndirectedEdge(point1, point2,
+						CSRGraph.euclideanDist(x[point1], y[point1], x[point2], y[point2]));
+				lineNum++;
+			}
+			graph = builder.build();
+		} else {
+			int k = neighbors < 0 ? (n <= COMPLETE_LIMIT ? 0 : DEFAULT_NEIGHBORS) : neighbors;
+			graph = k == 0 ? CSRGraph.complete(x, y) : CSRGraph.nearestNeighbors(x, y, k);
+		}
+
+		graph.setLabels(labels);
+		return graph;
+	}
+
+	/**
+	 * Move to the next line, mapping the next window when the line crosses the
+	 * end of the current one. Sets lineStart and lineEnd without the line break.
+	 *
+	 * @return false at the end of the file
+	 */
+	private boolean nextLine() throws IOException {
+		while (true) {
+			int limit = buffer.limit();
+			for (int i = position; i < limit; i++) {
+				if (buffer.get(i) == '\n') {
+					setLine(position, i);
+					position = i + 1;
+					return true;
+				}
+			}
+
+			// Last line without a line break
+			if (base + limit == fileSize) {
+				if (position == limit)
+					return false;
+				setLine(position, limit);
+				position = limit;
+				return true;
+			}
+
+			// Line continues past this window, map the next one from its start
+			if (position == 0)
+				throw new IOException("Line longer than " + WINDOW + " bytes at byte " + base);
+			base += position;
+			position = 0;
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(WINDOW, fileSize - base));
+		}
+	}
+
+	private void setLine(int start, int end) {
+		lineStart = start;
+		lineEnd = end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+	}
+
+	private int indexOfTab(int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (buffer.get(i) == '\t')
+				return i;
+		}
+		return -1;
+	}
+
+	private int parseInt(int from, int to, int lineNum) throws IOException {
+		boolean negative = from < to && buffer.get(from) == '-';
+		int i = negative ? from + 1 : from;
+		if (i == to || to - i > 10)
+			throw new IOException("Invalid index on line: " + lineNum);
+
+		long value = 0;
+		byte b;
+		for (; i < to; i++) {
+			b = buffer.get(i);
+			if (b < '0' || b > '9')
+				throw new IOException("Invalid index on line: " + lineNum);
+			value = value * 10 + (b - '0');
+		}
+		value = negative ? -value : value;
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw new IOException("Invalid index on line: " + lineNum);
+		return (int) value;
+	}
+
+	/**
+	 * Parse a plain decimal in place. Up to 15 significant digits and 22
+	 * fraction digits the result is exactly what Double.parseDouble gives, since
+	 * both mantissa and power of ten are exact doubles. Anything else falls back
+	 * to Double.parseDouble.
+	 */
+	private double parseDouble(int from, int to, int lineNum) throws IOException {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+'))
+			negative = buffer.get(i++) == '-';
+
+		long mantissa = 0;
+		int digits = 0, fraction = -1;
+		boolean anyDigit = false;
+		byte b;
+		for (; i < to; i++) {
+			b = buffer.get(i);
+			if (b >= '0' && b <= '9') {
+				anyDigit = true;
+				mantissa = mantissa * 10 + (b - '0');
+				if (mantissa != 0)
+					digits++;
+				if (fraction >= 0)
+					fraction++;
+			} else if (b == '.' && fraction < 0) {
+				fraction = 0;
+			} else {
+				break;
+			}
+		}
+
+		if (i == to && anyDigit && digits <= 15 && fraction <= 22) {
+			double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+			return negative ? -value : value;
+		}
+
+		// Exponents, long mantissas, bad input
+		byte[] bytes = new byte[to - from];
+		for (int k = 0; k < bytes.length; k++)
+			bytes[k] = buffer.get(from + k);
+		try {
+			return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid number on line " + lineNum);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package route;
+
+import java.util.Random;
+
+/**
+ * Regression test of LifelongPlanner: replanning after weights drop below
+ * the straight line distance, or with an A* constant above 1, must still end
+ * and give shortest routes. Both used to give longer routes or walk the
+ * predecessors in circles until memory ran out. Run from the repository
+ * root:
+ * <pre>
+ * javac -d test-classes route/*.java tests/route/*.java
+ * java -cp test-classes route.LifelongPlannerTest
+ * </pre>
+ *
+ * @author Hackerry
+ *
+ */
+public class LifelongPlannerTest {
+	private static final int VERTICES = 400, NEIGHBORS = 6, QUERIES = 200;
+	private static final double EPSILON = 1e-6;
+
+	public static void main(String[] args) throws InterruptedException {
+		// A planner going round in circles never returns, so it runs aside
+		Throwable[] failure = new Throwable[1];
+		Thread test = new Thread(() -> {
+			try {
+				largeConstant();
+				lowerWeights();
+			} catch (Throwable e) {
+				failure[0] = e;
+			}
+		});
+		test.setDaemon(true);
+		test.start();
+		test.join(60000);
+		if (test.isAlive())
+			throw new AssertionError("Planner did not finish within a minute");
+		if (failure[0] != null)
+			throw new AssertionError("LifelongPlannerTest failed", failure[0]);
+		System.out.println("LifelongPlannerTest passed");
+	}
+
+	/**
+	 * The simulator's default constant of 100 must not give longer routes
+	 * than Dijkstra.
+	 */
+	private static void largeConstant() {
+		DynamicGraph graph = new DynamicGraph(randomGraph(1));
+		LifelongPlanner planner = new LifelongPlanner(graph);
+		RoutingEngine engine = new RoutingEngine(graph);
+		Random random = new Random(2);
+		for (int i = 0; i < QUERIES; i++) {
+			int start = random.nextInt(VERTICES), end = random.nextInt(VERTICES);
+			check(graph, start, end, planner.plan(start, end, RoutingEngine.A_STAR_CONSTANT, null),
+					engine.route(RoutingEngine.DIJKSTRA, start, end));
+		}
+	}
+
+	/**
+	 * Edges made far shorter than the distance between their ends, some of
+	 * weight 0, then the same query planned again after each change.
+	 */
+	private static void lowerWeights() {
+		DynamicGraph graph = new DynamicGraph(randomGraph(3));
+		LifelongPlanner planner = new LifelongPlanner(graph);
+		RoutingEngine engine = new RoutingEngine(graph);
+		Random random = new Random(4);
+		for (int i = 0; i < QUERIES; i++) {
+			int start = random.nextInt(VERTICES), end = random.nextInt(VERTICES);
+			planner.plan(start, end, 1, null);
+			for (int change = 0; change < 5; change++) {
+				int edge = random.nextInt(graph.edgeCount());
+				graph.setWeight(edge, random.nextBoolean() ? 0 : graph.weight(edge) * random.nextDouble() * 0.1);
+				check(graph, start, end, planner.plan(start, end, 1, null),
+						engine.route(RoutingEngine.DIJKSTRA, start, end));
+			}
+		}
+	}
+
+	private static CSRGraph randomGraph(long seed) {
+		Random random = new Random(seed);
+		double[] x = new double[VERTICES], y = new double[VERTICES];
+		for (int i = 0; i < VERTICES; i++) {
+			x[i] = random.nextDouble() * 1000;
+			y[i] = random.nextDouble() * 1000;
+		}
+		return CSRGraph.nearestNeighbors(x, y, NEIGHBORS);
+	}
+
+	private static void check(RouteGraph graph, int start, int end, RouteResult planned, RouteResult expected) {
+		if (expected == null) {
+			if (planned != null)
+				throw new AssertionError("Route " + start + " -> " + end + " found but none exists");
+			return;
+		}
+		if (planned == null)
+			throw new AssertionError("No route " + start + " -> " + end + " found");
+		if (Math.abs(planned.getWeight() - expected.getWeight()) > EPSILON)
+			throw new AssertionError("Route " + start + " -> " + end + " weighs " + planned.getWeight()
+					+ ", shortest " + expected.getWeight());
+		checkPath(graph, start, end, planned);
+	}
+
+	/**
+	 * The path must run from start to end along edges and weigh what the
+	 * result says.
+	 */
+	private static void checkPath(RouteGraph graph, int start, int end, RouteResult planned) {
+		int[] path = planned.getPath();
+		if (path[0] != start || path[path.length - 1] != end)
+			throw new AssertionError("Path doesn't join " + start + " and " + end);
+		double weight = 0;
+		for (int i = 1; i < path.length; i++) {
+			int edge = -1;
+			for (int e = graph.firstEdge(path[i - 1]); e < graph.endEdge(path[i - 1]); e++) {
+				if (graph.target(e) == path[i])
+					edge = e;
+			}
+			if (edge < 0)
+				throw new AssertionError("No edge " + path[i - 1] + " -> " + path[i]);
+			weight += graph.weight(edge);
+		}
+		if (Math.abs(weight - planned.getWeight()) > EPSILON)
+			throw new AssertionError("Path " + start + " -> " + end + " weighs " + weight + ", result says "
+					+ planned.getWeight());
+	}
+}